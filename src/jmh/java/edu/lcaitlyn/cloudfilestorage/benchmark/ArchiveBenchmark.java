@@ -0,0 +1,58 @@
+package edu.lcaitlyn.cloudfilestorage.benchmark;
+
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
+import edu.lcaitlyn.cloudfilestorage.service.InMemoryStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Сборка архива папки ({@code StorageManagerImpl.downloadDirectory}): read-ahead, запись записей архива и сжатие.
+ * Скорость в байтах исходных файлов: {@code files * fileSize * ops/s}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveBenchmark {
+
+	private static final String DIRECTORY = "photos/";
+
+	@Param({"ZIP_STORE", "ZIP_DEFLATE", "TAR_GZ"})
+	ArchiveFormat format;
+
+	@Param({"1000"})
+	int files;
+
+	@Param({"16384"})
+	int fileSize;
+
+	@Param({"memory", "filesystem"})
+	String backend;
+
+	private Backend opened;
+
+	private InMemoryStorage storage;
+
+	@Setup
+	public void setUp() {
+		opened = Backend.open(backend);
+		storage = opened.storage;
+		SyntheticTree.flatDirectory(storage.s3, DIRECTORY, files, fileSize);
+	}
+
+	@TearDown
+	public void tearDown() {
+		opened.close();
+	}
+
+	@Benchmark
+	public void downloadDirectory() {
+		storage.storageManager.downloadDirectory(SyntheticTree.ROOT + DIRECTORY, "photos", format,
+				Deflater.DEFAULT_COMPRESSION, OutputStream.nullOutputStream());
+	}
+}
@@ -0,0 +1,52 @@
+package edu.lcaitlyn.cloudfilestorage.benchmark;
+
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.impl.FileSystemS3Repository;
+import edu.lcaitlyn.cloudfilestorage.service.InMemoryStorage;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Хранилище объектов под бенчмарком: {@code memory} — {@link FakeS3Repository},
+ * {@code filesystem} — {@link FileSystemS3Repository} во временной папке (реальные вызовы файловой системы).
+ */
+final class Backend implements AutoCloseable {
+
+	final InMemoryStorage storage;
+
+	private final Path root;
+
+	private Backend(InMemoryStorage storage, Path root) {
+		this.storage = storage;
+		this.root = root;
+	}
+
+	static Backend open(String name) {
+		if (name.equals("memory")) {
+			return new Backend(new InMemoryStorage(), null);
+		}
+
+		try {
+			Path root = Files.createTempDirectory("storage-benchmark-");
+			return new Backend(new InMemoryStorage(new FileSystemS3Repository(root)), root);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		storage.close();
+		if (root != null) {
+			try {
+				FileSystemUtils.deleteRecursively(root);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package edu.lcaitlyn.cloudfilestorage.benchmark;
+
+import edu.lcaitlyn.cloudfilestorage.utils.FileServiceUtils;
+import edu.lcaitlyn.cloudfilestorage.utils.PathValidationUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор путей и ключей, через который проходит каждый запрос ({@link FileServiceUtils}, {@link PathValidationUtils}).
+ * Каждая операция обрабатывает {@value #PATHS} разных путей.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyHandlingBenchmark {
+
+	private static final int PATHS = 1024;
+
+	private final String[] paths = new String[PATHS];
+
+	private final String[] directories = new String[PATHS];
+
+	private final String[] keys = new String[PATHS];
+
+	@Setup
+	public void setUp() {
+		for (int i = 0; i < PATHS; i++) {
+			directories[i] = "/projects/p" + (i % 17) + "/2024/q" + (i % 4) + "/";
+			paths[i] = directories[i] + "report-" + i + ".pdf";
+			keys[i] = FileServiceUtils.createKey((long) (i % 100), paths[i]);
+		}
+	}
+
+	@Benchmark
+	public void createKey(Blackhole blackhole) {
+		for (int i = 0; i < PATHS; i++) {
+			blackhole.consume(FileServiceUtils.createKey((long) i, paths[i]));
+		}
+	}
+
+	@Benchmark
+	public void extractNameAndPath(Blackhole blackhole) {
+		for (String key : keys) {
+			blackhole.consume(FileServiceUtils.extractNameFromKey(key));
+			blackhole.consume(FileServiceUtils.extractPathFromKey(key));
+		}
+	}
+
+	@Benchmark
+	public void directoriesOf(Blackhole blackhole) {
+		for (String key : keys) {
+			blackhole.consume(FileServiceUtils.directoriesOf(key));
+		}
+	}
+
+	@Benchmark
+	public void validateResourcePath(Blackhole blackhole) {
+		for (String path : paths) {
+			blackhole.consume(PathValidationUtils.validateResourcePath(path));
+		}
+	}
+
+	@Benchmark
+	public void validateDirectoryPath(Blackhole blackhole) {
+		for (String directory : directories) {
+			blackhole.consume(PathValidationUtils.validateDirectoryPath(directory));
+		}
+	}
+}
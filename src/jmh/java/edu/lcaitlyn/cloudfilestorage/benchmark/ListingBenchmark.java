@@ -0,0 +1,54 @@
+package edu.lcaitlyn.cloudfilestorage.benchmark;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.service.InMemoryStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Листинг S3 и преобразование в DTO: содержимое одной папки ({@code getDirectory}) и всё поддерево
+ * ({@code getFullDirectory}), без каталога и кэша листингов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+
+	@Param({"100", "10000"})
+	int entries;
+
+	@Param({"memory", "filesystem"})
+	String backend;
+
+	private Backend opened;
+
+	private InMemoryStorage storage;
+
+	@Setup
+	public void setUp() {
+		opened = Backend.open(backend);
+		storage = opened.storage;
+		SyntheticTree.flatDirectory(storage.s3, "flat/", entries, 0);
+		SyntheticTree.deepTree(storage.s3, entries, 10);
+	}
+
+	@TearDown
+	public void tearDown() {
+		opened.close();
+	}
+
+	@Benchmark
+	public List<StorageDTO> getDirectory() {
+		return storage.storageManager.getDirectory(SyntheticTree.ROOT + "flat/");
+	}
+
+	@Benchmark
+	public List<StorageDTO> getFullDirectory() {
+		return storage.storageManager.getFullDirectory(SyntheticTree.ROOT + "d1/");
+	}
+}
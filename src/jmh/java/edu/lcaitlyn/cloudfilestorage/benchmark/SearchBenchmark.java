@@ -0,0 +1,64 @@
+package edu.lcaitlyn.cloudfilestorage.benchmark;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.models.User;
+import edu.lcaitlyn.cloudfilestorage.service.InMemoryStorage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск по имени ({@code FileServiceImpl.findResource}) сканированием S3, как до готовности каталога.
+ * {@code rare} совпадает с одним файлом, поэтому просматривается всё дерево; {@code common} набирает
+ * лимит в начале листинга и показывает выигрыш раннего завершения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	@Param({"10000", "100000"})
+	int files;
+
+	@Param({"rare", "common"})
+	String query;
+
+	@Param({"false", "true"})
+	boolean prefix;
+
+	private InMemoryStorage storage;
+
+	private ResourceRequestDTO request;
+
+	private String text;
+
+	@Setup
+	public void setUp() {
+		storage = new InMemoryStorage();
+		SyntheticTree.deepTree(storage.s3, files, 20);
+
+		User user = new User("user", "password");
+		user.setId(1L);
+		request = ResourceRequestDTO.builder()
+				.user(user)
+				.path("/")
+				.limit(100)
+				.build();
+		text = query.equals("rare") ? "report-" + (files - 1) + "." : "report-";
+	}
+
+	@TearDown
+	public void tearDown() {
+		storage.close();
+	}
+
+	@Benchmark
+	public List<ResourceResponseDTO> findResource() {
+		return storage.fileService.findResource(request, text, prefix);
+	}
+}
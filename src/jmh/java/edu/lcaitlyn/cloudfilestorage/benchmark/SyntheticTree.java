@@ -0,0 +1,53 @@
+package edu.lcaitlyn.cloudfilestorage.benchmark;
+
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+/**
+ * Синтетические деревья пользователя 1, записанные через {@link S3Repository}.
+ */
+final class SyntheticTree {
+
+	static final String ROOT = "user-1-files/";
+
+	private SyntheticTree() {
+	}
+
+	/**
+	 * Папка с {@code count} файлами по {@code size} байт; содержимое наполовину случайное,
+	 * чтобы DEFLATE сжимал его примерно как реальные документы.
+	 */
+	static void flatDirectory(S3Repository s3, String directory, int count, int size) {
+		Random random = new Random(42);
+		s3.createDirectory(ROOT);
+		s3.createDirectory(ROOT + directory);
+
+		for (int i = 0; i < count; i++) {
+			byte[] data = new byte[size];
+			for (int j = 0; j < size; j += 2) {
+				data[j] = (byte) random.nextInt();
+			}
+			put(s3, ROOT + directory + "file-" + i + ".bin", data);
+		}
+	}
+
+	/**
+	 * {@code count} пустых файлов, разложенных по папкам с разветвлением {@code fanout} на каждом уровне:
+	 * {@code d3/d17/report-1234.txt}.
+	 */
+	static void deepTree(S3Repository s3, int count, int fanout) {
+		s3.createDirectory(ROOT);
+		for (int i = 0; i < count; i++) {
+			String directory = ROOT + "d" + (i % fanout) + "/d" + (i / fanout % fanout) + "/";
+			s3.createDirectory(directory.substring(0, directory.indexOf('/', ROOT.length()) + 1));
+			s3.createDirectory(directory);
+			put(s3, directory + "report-" + i + ".txt", new byte[0]);
+		}
+	}
+
+	private static void put(S3Repository s3, String key, byte[] data) {
+		s3.putObject(key, new ByteArrayInputStream(data), data.length, "application/octet-stream");
+	}
+}
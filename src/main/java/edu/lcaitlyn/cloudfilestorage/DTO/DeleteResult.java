@@ -0,0 +1,16 @@
+package edu.lcaitlyn.cloudfilestorage.DTO;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+public class DeleteResult {
+    private final long deleted;
+    /**
+     * Ключи, которые не удалось удалить, и причина от S3.
+     */
+    private final Map<String, String> failures;
+}
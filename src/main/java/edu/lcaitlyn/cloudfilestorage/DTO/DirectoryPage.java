@@ -0,0 +1,17 @@
+package edu.lcaitlyn.cloudfilestorage.DTO;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Страница содержимого папки или результатов поиска, отсортированная по ключу.
+ * {@code nextCursor} — непрозрачный курсор следующей страницы или {@code null}, если страница последняя.
+ */
+@Data
+@Builder
+public class DirectoryPage {
+    private final List<StorageDTO> items;
+    private final String nextCursor;
+}
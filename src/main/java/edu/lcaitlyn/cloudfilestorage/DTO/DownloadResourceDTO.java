@@ -3,12 +3,25 @@ package edu.lcaitlyn.cloudfilestorage.DTO;
 import edu.lcaitlyn.cloudfilestorage.enums.Type;
 import lombok.Builder;
 import lombok.Data;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.file.Path;
+import java.time.Instant;
 
 @Data
 @Builder
 public class DownloadResourceDTO {
     String filename;
     String key;
-    byte[] data;
     Type type;
+    Long contentLength;
+    String contentRange;
+    String etag;
+    Instant lastModified;
+    StreamingResponseBody body;
+    // тело лежит в локальном файле с этого смещения: контейнер может отдать его через sendfile вместо body
+    Path file;
+    long fileOffset;
+    // вызывается, когда file отдан: body делает это сам, sendfile — контроллер
+    Runnable release;
 }
@@ -0,0 +1,19 @@
+package edu.lcaitlyn.cloudfilestorage.DTO;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.InputStream;
+
+@Data
+@Builder
+public class FetchedObject {
+    private final String key;
+    private final long size;
+    private final String contentType;
+    /**
+     * Содержимое объекта, если он был скачан заранее; {@code null}, если объект читается потоком из {@link #data}.
+     */
+    private final byte[] bytes;
+    private final InputStream data;
+}
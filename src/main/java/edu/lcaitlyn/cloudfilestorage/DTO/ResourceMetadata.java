@@ -3,10 +3,19 @@ package edu.lcaitlyn.cloudfilestorage.DTO;
 import lombok.Builder;
 import lombok.Data;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+
 @Data
 @Builder
 public class ResourceMetadata {
     private final Long contentLength;
     private final String contentType;
-    private final byte[] data;
+    private final String contentRange;
+    private final InputStream data;
+    // вместо data: диапазон локального файла, начиная с fileOffset (объект из DownloadCache)
+    private final Path file;
+    private final long fileOffset;
+    // снимает закрепление file в DownloadCache, когда ответ отдан
+    private final Runnable release;
 }
@@ -4,10 +4,14 @@ import edu.lcaitlyn.cloudfilestorage.enums.Type;
 import lombok.Builder;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Data
 @Builder
 public class StorageDTO {
     private final String key;
     private final Type type;
     private final long size;
+    private final String etag;
+    private final Instant lastModified;
 }
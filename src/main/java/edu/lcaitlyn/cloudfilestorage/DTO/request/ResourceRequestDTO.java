@@ -1,5 +1,6 @@
 package edu.lcaitlyn.cloudfilestorage.DTO.request;
 
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
 import edu.lcaitlyn.cloudfilestorage.models.User;
 import lombok.Builder;
 import lombok.Data;
@@ -11,4 +12,10 @@ public class ResourceRequestDTO {
     User user;
     MultipartFile[] files;
     String path;
+    String range;
+    String ifRange;
+    ArchiveFormat format;
+    Integer level;
+    Integer limit;
+    String cursor;
 }
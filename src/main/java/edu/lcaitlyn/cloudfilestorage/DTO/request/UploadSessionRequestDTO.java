@@ -0,0 +1,23 @@
+package edu.lcaitlyn.cloudfilestorage.DTO.request;
+
+import edu.lcaitlyn.cloudfilestorage.models.User;
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.InputStream;
+
+@Data
+@Builder
+public class UploadSessionRequestDTO {
+    User user;
+    String sessionId;
+    // создание сессии
+    String path;
+    String name;
+    Long size;
+    String contentType;
+    // передача фрагмента
+    Integer chunk;
+    InputStream data;
+    Long contentLength;
+}
@@ -0,0 +1,13 @@
+package edu.lcaitlyn.cloudfilestorage.DTO.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class DirectoryResponseDTO {
+    List<ResourceResponseDTO> items;
+    String nextCursor;
+}
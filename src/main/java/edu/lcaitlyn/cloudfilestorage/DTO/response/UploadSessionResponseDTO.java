@@ -0,0 +1,23 @@
+package edu.lcaitlyn.cloudfilestorage.DTO.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Фрагмент {@code n} — байты с {@code n * chunkSize} длиной {@code chunkSize} (последний короче).
+ */
+@Data
+@Builder
+public class UploadSessionResponseDTO {
+    String id;
+    String path;
+    String name;
+    Long size;
+    Long chunkSize;
+    Integer chunkCount;
+    List<Integer> receivedChunks;
+    Instant expiresAt;
+}
@@ -1,5 +1,6 @@
 package edu.lcaitlyn.cloudfilestorage.config;
 
+import edu.lcaitlyn.cloudfilestorage.controller.impl.DirectoryControllerImpl;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
@@ -16,6 +17,7 @@ public class CorsConfig {
                         .allowedOrigins("http://localhost:3000") // твой фронт
                         .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders(DirectoryControllerImpl.NEXT_CURSOR_HEADER, S3TraceFilter.S3_CALLS_HEADER)
                         .allowCredentials(true);
             }
         };
@@ -0,0 +1,45 @@
+package edu.lcaitlyn.cloudfilestorage.config;
+
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.impl.BlobIndex;
+import edu.lcaitlyn.cloudfilestorage.repository.impl.DeduplicatingS3Repository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Дедупликация содержимого: репозиторий S3 оборачивается в {@link DeduplicatingS3Repository}.
+ * Обёртка применяется после {@link S3InstrumentationConfig}, поэтому метрики и трассы S3 видят только
+ * реальные обращения к бакету.
+ */
+@Configuration
+@ConditionalOnProperty(name = "storage.dedup.enabled", havingValue = "true")
+public class DedupConfig {
+
+    @Bean
+    public static BeanPostProcessor s3RepositoryDeduplication(ObjectProvider<JdbcTemplate> jdbcTemplate,
+                                                              ObjectProvider<PlatformTransactionManager> transactionManager,
+                                                              ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof S3Repository s3Repository)) {
+                    return bean;
+                }
+
+                DeduplicatingS3Repository repository = new DeduplicatingS3Repository(s3Repository,
+                        new BlobIndex(jdbcTemplate.getObject()),
+                        new TransactionTemplate(transactionManager.getObject()),
+                        meterRegistry.getObject());
+                repository.importExisting();
+                return repository;
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package edu.lcaitlyn.cloudfilestorage.config;
+
+import edu.lcaitlyn.cloudfilestorage.repository.trace.TracePropagatingExecutor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * В режиме виртуальных потоков каждая задача получает свой поток; параллелизм операций
+     * по-прежнему ограничивают их собственные настройки (read-ahead, delete/copy parallelism).
+     * Задачи выполняются с трассой вызовов S3 отправившего их запроса.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService storageExecutor(StorageProperties storageProperties) {
+        if (storageProperties.isExecutorVirtual()) {
+            return new TracePropagatingExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("storage-", 0).factory()));
+        }
+
+        return new TracePropagatingExecutor(Executors.newFixedThreadPool(
+                storageProperties.getExecutorThreads(),
+                new CustomizableThreadFactory("storage-")
+        ));
+    }
+}
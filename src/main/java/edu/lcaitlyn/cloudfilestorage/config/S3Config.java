@@ -2,13 +2,17 @@ package edu.lcaitlyn.cloudfilestorage.config;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
 
 import java.net.URI;
 
@@ -46,16 +50,35 @@ public class S3Config {
         return s3Client;
     }
 
-    @Bean
-    public S3Client s3Client() {
-        AwsCredentialsProvider credentialsProvider = StaticCredentialsProvider
+    private S3AsyncClient createS3Bucket(S3AsyncClient s3AsyncClient) {
+        try {
+            boolean found = s3AsyncClient.listBuckets().join().buckets().stream().anyMatch(
+                    b -> b.name().equals(bucketName));
+
+            if (!found) {
+                s3AsyncClient.createBucket(b -> b.bucket(bucketName)).join();
+                log.info("S3Config: created bucket: " + bucketName);
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage());
+        }
+        return s3AsyncClient;
+    }
+
+    private AwsCredentialsProvider credentialsProvider() {
+        return StaticCredentialsProvider
                 .create(AwsBasicCredentials
                         .create(
                                 accessKey, secretKey
                         ));
+    }
 
+    @Bean
+    @ConditionalOnProperty(name = "aws.s3.client", havingValue = "sync", matchIfMissing = true)
+    public S3Client s3Client(S3Properties s3Properties) {
         S3Client s3Client = S3Client.builder()
-                .credentialsProvider(credentialsProvider)
+                .httpClientBuilder(ApacheHttpClient.builder().maxConnections(s3Properties.getMaxConnections()))
+                .credentialsProvider(credentialsProvider())
                 .endpointOverride(URI.create(endpoint))
                 .region(Region.of(region))
                 .forcePathStyle(true)
@@ -63,4 +86,48 @@ public class S3Config {
 
         return createS3Bucket(s3Client);
     }
+
+    /**
+     * Клиент на AWS CRT сам делит большие PUT/GET/COPY на части и передаёт их параллельно.
+     * Если нативная библиотека CRT недоступна на платформе, используется Java-клиент со встроенным multipart.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "aws.s3.client", havingValue = "async")
+    public S3AsyncClient s3AsyncClient(S3Properties s3Properties) {
+        long partSize = s3Properties.getPartSize().toBytes();
+
+        if (s3Properties.isCrt()) {
+            try {
+                return createS3Bucket(S3AsyncClient.crtBuilder()
+                        .credentialsProvider(credentialsProvider())
+                        .endpointOverride(URI.create(endpoint))
+                        .region(Region.of(region))
+                        .forcePathStyle(true)
+                        .minimumPartSizeInBytes(partSize)
+                        .targetThroughputInGbps(s3Properties.getTargetThroughputGbps())
+                        .build());
+            } catch (RuntimeException | LinkageError e) {
+                log.warn("S3Config: CRT client is not available, using Java async client: " + e.getMessage());
+            }
+        }
+
+        return createS3Bucket(S3AsyncClient.builder()
+                .credentialsProvider(credentialsProvider())
+                .endpointOverride(URI.create(endpoint))
+                .region(Region.of(region))
+                .forcePathStyle(true)
+                .multipartEnabled(true)
+                .multipartConfiguration(c -> c
+                        .minimumPartSizeInBytes(partSize)
+                        .thresholdInBytes(partSize))
+                .build());
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "aws.s3.client", havingValue = "async")
+    public S3TransferManager s3TransferManager(S3AsyncClient s3AsyncClient) {
+        return S3TransferManager.builder()
+                .s3Client(s3AsyncClient)
+                .build();
+    }
 }
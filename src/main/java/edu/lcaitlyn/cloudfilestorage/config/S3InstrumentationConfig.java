@@ -0,0 +1,56 @@
+package edu.lcaitlyn.cloudfilestorage.config;
+
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.trace.S3CallTracing;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Учёт вызовов S3: репозиторий S3 оборачивается в прокси, который пишет метрики каждого вызова
+ * и трассу текущего запроса. Трассы открывает {@link S3TraceFilter}, если включён {@code storage.trace.enabled}.
+ */
+@Configuration
+public class S3InstrumentationConfig {
+
+    @Bean
+    public static S3RepositoryInstrumentation s3RepositoryInstrumentation(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new S3RepositoryInstrumentation(meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.trace.enabled", havingValue = "true")
+    public FilterRegistrationBean<S3TraceFilter> s3TraceFilter() {
+        FilterRegistrationBean<S3TraceFilter> registration = new FilterRegistrationBean<>(new S3TraceFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Упорядочен, поэтому применяется раньше обёрток без порядка (см. {@link DedupConfig}):
+     * прокси считает вызовы самого S3, а не операции над ключами пользователей.
+     */
+    static class S3RepositoryInstrumentation implements BeanPostProcessor, Ordered {
+
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+
+        S3RepositoryInstrumentation(ObjectProvider<MeterRegistry> meterRegistry) {
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            return (bean instanceof S3Repository) ? S3CallTracing.trace(bean, meterRegistry.getObject()) : bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
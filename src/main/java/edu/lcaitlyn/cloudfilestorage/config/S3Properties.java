@@ -3,10 +3,29 @@ package edu.lcaitlyn.cloudfilestorage.config;
 import lombok.Data;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
 @Data
 @Component
 public class S3Properties {
     @Value("${aws.s3.bucket}")
     String bucket;
+
+    @Value("${aws.s3.multipart.part-size}")
+    DataSize partSize;
+
+    @Value("${aws.s3.multipart.copy-part-size}")
+    DataSize copyPartSize;
+
+    @Value("${aws.s3.max-connections}")
+    int maxConnections;
+
+    @Value("${aws.s3.async.crt}")
+    boolean crt;
+
+    @Value("${aws.s3.async.target-throughput-gbps}")
+    double targetThroughputGbps;
+
+    @Value("${aws.s3.filesystem.root}")
+    String filesystemRoot;
 }
@@ -0,0 +1,87 @@
+package edu.lcaitlyn.cloudfilestorage.config;
+
+import edu.lcaitlyn.cloudfilestorage.repository.trace.S3CallTrace;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Отслеживает вызовы S3 каждого запроса. Сводка ({@link S3CallTrace#toString()}) отдаётся в заголовке
+ * {@value #S3_CALLS_HEADER} и пишется в лог после завершения запроса.
+ * <p>
+ * Заголовок выставляется, когда обработчик начинает писать тело: к этому моменту обычный запрос уже сделал
+ * все вызовы, а у потоковых ответов (скачивание, NDJSON) в нём только вызовы до начала передачи.
+ */
+@Slf4j
+public class S3TraceFilter extends OncePerRequestFilter {
+
+    public static final String S3_CALLS_HEADER = "X-S3-Calls";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        S3CallTrace trace = S3CallTrace.begin();
+        try {
+            filterChain.doFilter(request, new TracedResponse(response, trace));
+        } finally {
+            S3CallTrace.end();
+            if (!response.isCommitted()) {
+                response.setHeader(S3_CALLS_HEADER, trace.toString());
+            }
+            log.debug("{} {}: S3 {}", request.getMethod(), request.getRequestURI(), trace);
+        }
+    }
+
+    private static class TracedResponse extends HttpServletResponseWrapper {
+
+        private final S3CallTrace trace;
+
+        TracedResponse(HttpServletResponse response, S3CallTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        private void beforeBody() {
+            if (!isCommitted()) {
+                setHeader(S3_CALLS_HEADER, trace.toString());
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            beforeBody();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            beforeBody();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            beforeBody();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            beforeBody();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            beforeBody();
+            super.sendError(sc);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package edu.lcaitlyn.cloudfilestorage.config;
 import edu.lcaitlyn.cloudfilestorage.config.handler.CustomAccessDeniedHandler;
 import edu.lcaitlyn.cloudfilestorage.config.handler.CustomAuthenticationEntryPoint;
 import lombok.AllArgsConstructor;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementServerProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -15,6 +17,8 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 @EnableWebSecurity
 @Configuration
@@ -27,6 +31,8 @@ public class SecurityConfig {
 
     private final CustomAccessDeniedHandler accessDeniedHandler;
 
+    private final ManagementServerProperties managementServerProperties;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -44,6 +50,7 @@ public class SecurityConfig {
                                 "/v3/api-docs/**",
                                 "/swagger-resources/**"
                         ).permitAll()
+                        .requestMatchers(managementEndpoints()).permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(sess -> sess
@@ -57,6 +64,16 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * Actuator (health, prometheus) открыт без входа только на отдельном порту {@code management.server.port},
+     * который не публикуется наружу. Если порт не задан, эндпоинты доступны только после входа.
+     */
+    private RequestMatcher managementEndpoints() {
+        RequestMatcher managementPort = request -> managementServerProperties.getPort() != null
+                && request.getLocalPort() == managementServerProperties.getPort();
+        return new AndRequestMatcher(managementPort, EndpointRequest.toAnyEndpoint());
+    }
+
     @Bean
     public AuthenticationManager authenticationManager(HttpSecurity http) throws Exception {
         AuthenticationManagerBuilder builder = http.getSharedObject(AuthenticationManagerBuilder.class);
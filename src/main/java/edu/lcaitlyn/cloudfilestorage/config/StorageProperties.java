@@ -0,0 +1,84 @@
+package edu.lcaitlyn.cloudfilestorage.config;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@Component
+public class StorageProperties {
+    @Value("${storage.executor.threads}")
+    int executorThreads;
+
+    @Value("${storage.executor.virtual}")
+    boolean executorVirtual;
+
+    @Value("${storage.download.read-ahead.objects}")
+    int readAheadObjects;
+
+    @Value("${storage.download.read-ahead.budget}")
+    DataSize readAheadBudget;
+
+    @Value("${storage.download.read-ahead.max-object-size}")
+    DataSize readAheadMaxObjectSize;
+
+    @Value("${storage.delete.parallelism}")
+    int deleteParallelism;
+
+    @Value("${storage.copy.parallelism}")
+    int copyParallelism;
+
+    @Value("${storage.upload.parallelism}")
+    int uploadParallelism;
+
+    @Value("${storage.metadata-cache.max-size}")
+    DataSize metadataCacheMaxSize;
+
+    @Value("${storage.metadata-cache.ttl}")
+    Duration metadataCacheTtl;
+
+    @Value("${storage.listing-cache.enabled}")
+    boolean listingCacheEnabled;
+
+    @Value("${storage.listing-cache.ttl}")
+    Duration listingCacheTtl;
+
+    @Value("${storage.download-cache.enabled}")
+    boolean downloadCacheEnabled;
+
+    @Value("${storage.download-cache.directory}")
+    String downloadCacheDirectory;
+
+    @Value("${storage.download-cache.budget}")
+    DataSize downloadCacheBudget;
+
+    @Value("${storage.download-cache.max-object-size}")
+    DataSize downloadCacheMaxObjectSize;
+
+    @Value("${storage.download-cache.admit-after}")
+    int downloadCacheAdmitAfter;
+
+    @Value("${storage.download-cache.admission-window}")
+    Duration downloadCacheAdmissionWindow;
+
+    @Value("${storage.catalog.enabled}")
+    boolean catalogEnabled;
+
+    @Value("${storage.catalog.reconcile-on-startup}")
+    boolean catalogReconcileOnStartup;
+
+    @Value("${storage.dedup.enabled}")
+    boolean dedupEnabled;
+
+    @Value("${storage.dedup.gc-grace}")
+    Duration dedupGcGrace;
+
+    @Value("${storage.upload-session.chunk-size}")
+    DataSize uploadSessionChunkSize;
+
+    @Value("${storage.upload-session.ttl}")
+    Duration uploadSessionTtl;
+}
@@ -1,15 +1,32 @@
 package edu.lcaitlyn.cloudfilestorage.controller.api;
 
 import edu.lcaitlyn.cloudfilestorage.models.AuthUserDetails;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/directory")
 public interface DirectoryController {
     @GetMapping
-    ResponseEntity<?> getDirectory(@RequestParam String path, @AuthenticationPrincipal AuthUserDetails userDetails);
+    ResponseEntity<?> getDirectory(
+            @RequestParam String path,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthUserDetails userDetails
+    );
+
+    /**
+     * То же содержимое папки построчно в NDJSON, для {@code Accept: application/x-ndjson}.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<StreamingResponseBody> streamDirectory(
+            @RequestParam String path,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthUserDetails userDetails
+    );
 
     @PostMapping
     ResponseEntity<?> createDirectory(@RequestParam String path, @AuthenticationPrincipal AuthUserDetails userDetails);
@@ -1,6 +1,8 @@
 package edu.lcaitlyn.cloudfilestorage.controller.api;
 
 import edu.lcaitlyn.cloudfilestorage.models.AuthUserDetails;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -32,6 +34,19 @@ public interface ResourceController {
     @GetMapping("/search")
     ResponseEntity<?> searchResource(
             @RequestParam String query,
+            @RequestParam(required = false, defaultValue = "contains") String match,
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal AuthUserDetails userDetails
+    );
+
+    /**
+     * Результаты поиска построчно в NDJSON, для {@code Accept: application/x-ndjson}; {@code limit} не ограничен сверху.
+     */
+    @GetMapping(value = "/search", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    ResponseEntity<?> streamSearchResource(
+            @RequestParam String query,
+            @RequestParam(required = false, defaultValue = "contains") String match,
+            @RequestParam(required = false) Integer limit,
             @AuthenticationPrincipal AuthUserDetails userDetails
     );
 
@@ -45,6 +60,11 @@ public interface ResourceController {
     @GetMapping("/download")
     ResponseEntity<?> downloadResource(
             @RequestParam String path,
-            @AuthenticationPrincipal AuthUserDetails userDetails
+            @RequestParam(required = false, defaultValue = "zip-deflate") String format,
+            @RequestParam(required = false) Integer level,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @AuthenticationPrincipal AuthUserDetails userDetails,
+            HttpServletRequest request
     );
 }
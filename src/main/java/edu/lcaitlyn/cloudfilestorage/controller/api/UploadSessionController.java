@@ -0,0 +1,53 @@
+package edu.lcaitlyn.cloudfilestorage.controller.api;
+
+import edu.lcaitlyn.cloudfilestorage.models.AuthUserDetails;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Загрузка одного файла фрагментами: создать сессию, передать фрагменты {@code PUT .../chunks/{n}}
+ * (в любом порядке, параллельно, с повтором при обрыве), узнать полученные фрагменты, завершить.
+ */
+@RestController
+@RequestMapping("/api/resource/uploads")
+public interface UploadSessionController {
+    @PostMapping
+    ResponseEntity<?> createUploadSession(
+            @RequestParam String path,
+            @RequestParam String name,
+            @RequestParam long size,
+            @RequestParam(required = false) String contentType,
+            @AuthenticationPrincipal AuthUserDetails userDetails
+    );
+
+    @GetMapping("/{id}")
+    ResponseEntity<?> getUploadSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthUserDetails userDetails
+    );
+
+    /**
+     * Тело запроса — байты фрагмента, {@code Content-Length} обязателен.
+     */
+    @PutMapping("/{id}/chunks/{chunk}")
+    ResponseEntity<?> uploadChunk(
+            @PathVariable String id,
+            @PathVariable int chunk,
+            @AuthenticationPrincipal AuthUserDetails userDetails,
+            HttpServletRequest request
+    );
+
+    @PostMapping("/{id}/complete")
+    ResponseEntity<?> completeUploadSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthUserDetails userDetails
+    );
+
+    @DeleteMapping("/{id}")
+    ResponseEntity<?> abortUploadSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthUserDetails userDetails
+    );
+}
@@ -1,10 +1,14 @@
 package edu.lcaitlyn.cloudfilestorage.controller.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.DirectoryResponseDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
 import edu.lcaitlyn.cloudfilestorage.controller.api.DirectoryController;
 import edu.lcaitlyn.cloudfilestorage.models.AuthUserDetails;
 import edu.lcaitlyn.cloudfilestorage.service.FileService;
+import edu.lcaitlyn.cloudfilestorage.utils.ErrorResponseUtils;
+import edu.lcaitlyn.cloudfilestorage.utils.NdjsonUtils;
 import edu.lcaitlyn.cloudfilestorage.utils.PathValidationUtils;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -12,29 +16,65 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
-import java.util.List;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @AllArgsConstructor
 public class DirectoryControllerImpl implements DirectoryController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final int MAX_PAGE_LIMIT = 1000;
+
     private FileService fileService;
 
+    private ObjectMapper objectMapper;
+
     @Override
     public ResponseEntity<?> getDirectory(
             @RequestParam String path,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
             @AuthenticationPrincipal AuthUserDetails userDetails) {
         path = PathValidationUtils.validateDirectoryPath(path);
-        List<ResourceResponseDTO> list = fileService.getDirectory(ResourceRequestDTO.builder()
+
+        if (limit != null && (limit < 1 || limit > MAX_PAGE_LIMIT)) {
+            return ErrorResponseUtils.print("Limit should be between 1 and " + MAX_PAGE_LIMIT, HttpStatus.BAD_REQUEST);
+        }
+
+        DirectoryResponseDTO page = fileService.getDirectory(ResourceRequestDTO.builder()
                 .path(path)
                 .user(userDetails.getUser())
+                .limit(limit)
+                .cursor(cursor)
                 .build());
 
-        return new ResponseEntity<>(list, HttpStatus.OK);
+        // тело остаётся массивом, как и без пагинации; курсор следующей страницы — в заголовке
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.OK);
+        if (page.getNextCursor() != null) {
+            builder.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+
+        return builder.body(page.getItems());
     }
 
 
+    @Override
+    public ResponseEntity<StreamingResponseBody> streamDirectory(
+            @RequestParam String path,
+            @RequestParam(required = false) String cursor,
+            @AuthenticationPrincipal AuthUserDetails userDetails) {
+        path = PathValidationUtils.validateDirectoryPath(path);
+
+        FileService.ResourceStream resources = fileService.streamDirectory(ResourceRequestDTO.builder()
+                .path(path)
+                .user(userDetails.getUser())
+                .cursor(cursor)
+                .build());
+
+        return NdjsonUtils.stream(objectMapper, resources);
+    }
+
     @Override
     public ResponseEntity<?> createDirectory(
             @RequestParam String path,
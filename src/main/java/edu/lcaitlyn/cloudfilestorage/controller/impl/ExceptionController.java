@@ -3,6 +3,8 @@ package edu.lcaitlyn.cloudfilestorage.controller.impl;
 import edu.lcaitlyn.cloudfilestorage.exception.*;
 import edu.lcaitlyn.cloudfilestorage.utils.ErrorResponseUtils;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -13,6 +15,8 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.server.ResponseStatusException;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.FileNotFoundException;
 import java.util.HashMap;
@@ -21,6 +25,10 @@ import java.util.Map;
 @Slf4j
 @ControllerAdvice
 public class ExceptionController {
+
+    @Value("${spring.servlet.multipart.max-file-size}")
+    private String maxFileSize;
+
     @ExceptionHandler
     public ResponseEntity<?> handleUserNotFoundException(UserNotFoundException ex) {
         log.error("User not found: {}", ex.getMessage());
@@ -57,6 +65,29 @@ public class ExceptionController {
         return ErrorResponseUtils.print(ex.getMessage(), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler
+    public ResponseEntity<?> handleNoSuchUploadException(NoSuchUploadException ex) {
+        log.error("No Such Upload: {}", ex.getMessage());
+        return ErrorResponseUtils.print("Upload session expired", HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<?> handleUploadSessionsNotSupported(UploadSessionsNotSupported ex) {
+        log.error("Upload Sessions Not Supported: {}", ex.getMessage());
+        return ErrorResponseUtils.print(ex.getMessage(), HttpStatus.NOT_IMPLEMENTED);
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<?> handleRangeNotSatisfiable(RangeNotSatisfiable ex) {
+        log.error("Range Not Satisfiable: {}", ex.getMessage());
+        ResponseEntity<?> response = ErrorResponseUtils.print(ex.getMessage(), HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        // RFC 9110: в ответе 416 указывается полный размер ресурса
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + ex.getSize())
+                .body(response.getBody());
+    }
+
     @ExceptionHandler
     public ResponseEntity<?> handleFileNotFoundException(FileNotFoundException ex) {
         log.error("File Not Found: {}", ex.getMessage());
@@ -94,11 +125,17 @@ public class ExceptionController {
     @ExceptionHandler(MaxUploadSizeExceededException.class)
     public ResponseEntity<?> handleMaxUploadSizeExceededException(MaxUploadSizeExceededException ex) {
         log.error(ex.getMessage());
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Resource size should not be larger than 1MB!"));
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Resource size should not be larger than " + maxFileSize + "!"));
     }
 
     @ExceptionHandler(StorageException.class)
     public ResponseEntity<?> handleStorageException(StorageException ex) {
+        // ключ занят ресурсом другого типа (файловое хранилище не держит файл и папку с одним именем)
+        if (ex.getCause() instanceof S3Exception s3Exception && s3Exception.statusCode() == HttpStatus.CONFLICT.value()) {
+            log.error("Storage conflict: {}", s3Exception.getMessage());
+            return ErrorResponseUtils.print(s3Exception.getMessage(), HttpStatus.CONFLICT);
+        }
+
         log.error("Storage error: {}", ex.getMessage(), ex);
         return ErrorResponseUtils.print(ex.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
     }
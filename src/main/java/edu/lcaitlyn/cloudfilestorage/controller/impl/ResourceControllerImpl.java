@@ -1,33 +1,60 @@
 package edu.lcaitlyn.cloudfilestorage.controller.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.lcaitlyn.cloudfilestorage.DTO.DownloadResourceDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.request.MoveResourceRequestDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
 import edu.lcaitlyn.cloudfilestorage.controller.api.ResourceController;
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
+import edu.lcaitlyn.cloudfilestorage.enums.Type;
 import edu.lcaitlyn.cloudfilestorage.models.AuthUserDetails;
 import edu.lcaitlyn.cloudfilestorage.service.FileService;
+import edu.lcaitlyn.cloudfilestorage.service.impl.TransferMetrics;
 import edu.lcaitlyn.cloudfilestorage.utils.ErrorResponseUtils;
+import edu.lcaitlyn.cloudfilestorage.utils.NdjsonUtils;
 import edu.lcaitlyn.cloudfilestorage.utils.PathValidationUtils;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @AllArgsConstructor
 public class ResourceControllerImpl implements ResourceController {
 
+    private static final int DEFAULT_SEARCH_LIMIT = 100;
+
+    private static final int MAX_SEARCH_LIMIT = 1000;
+
+    // атрибуты запроса, по которым Tomcat отдаёт тело ответа из файла через sendfile
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Tomcat открывает файл для sendfile после возврата из обработчика и о конце передачи не сообщает;
+    // удаление уже открытого файла передачу не прерывает, поэтому закрепление держится только до открытия
+    private static final long SENDFILE_OPEN_SECONDS = 60;
+
     private final FileService fileService;
 
+    private final ObjectMapper objectMapper;
+
+    private final TransferMetrics transferMetrics;
+
     @Override
     public ResponseEntity<?> getResource(
             @RequestParam String path,
@@ -82,22 +109,65 @@ public class ResourceControllerImpl implements ResourceController {
     @Override
     public ResponseEntity<?> searchResource(
             @RequestParam String query,
+            @RequestParam(required = false, defaultValue = "contains") String match,
+            @RequestParam(required = false) Integer limit,
             @AuthenticationPrincipal AuthUserDetails userDetails) {
         if (query == null || query.isEmpty()) {
             return ErrorResponseUtils.print("Query string is empty", HttpStatus.BAD_REQUEST);
         }
 
+        if (!match.equals("contains") && !match.equals("prefix")) {
+            return ErrorResponseUtils.print("Match should be 'contains' or 'prefix'", HttpStatus.BAD_REQUEST);
+        }
+
+        if (limit != null && (limit < 1 || limit > MAX_SEARCH_LIMIT)) {
+            return ErrorResponseUtils.print("Limit should be between 1 and " + MAX_SEARCH_LIMIT, HttpStatus.BAD_REQUEST);
+        }
+
         List<ResourceResponseDTO> response = fileService.findResource(
                 ResourceRequestDTO.builder()
                         .user(userDetails.getUser())
                         .path(query)
+                        .limit(limit == null ? DEFAULT_SEARCH_LIMIT : limit)
                         .build(),
-                query
+                query,
+                match.equals("prefix")
         );
 
         return ResponseEntity.status(HttpStatus.OK).body(response);
     }
 
+    @Override
+    public ResponseEntity<?> streamSearchResource(
+            @RequestParam String query,
+            @RequestParam(required = false, defaultValue = "contains") String match,
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal AuthUserDetails userDetails) {
+        if (query == null || query.isEmpty()) {
+            return ErrorResponseUtils.print("Query string is empty", HttpStatus.BAD_REQUEST);
+        }
+
+        if (!match.equals("contains") && !match.equals("prefix")) {
+            return ErrorResponseUtils.print("Match should be 'contains' or 'prefix'", HttpStatus.BAD_REQUEST);
+        }
+
+        if (limit != null && limit < 1) {
+            return ErrorResponseUtils.print("Limit should be positive", HttpStatus.BAD_REQUEST);
+        }
+
+        FileService.ResourceStream resources = fileService.streamFoundResources(
+                ResourceRequestDTO.builder()
+                        .user(userDetails.getUser())
+                        .path(query)
+                        .limit(limit)
+                        .build(),
+                query,
+                match.equals("prefix")
+        );
+
+        return NdjsonUtils.stream(objectMapper, resources);
+    }
+
     @Override
     public ResponseEntity<?> moveResource(
             @RequestParam String from,
@@ -118,20 +188,61 @@ public class ResourceControllerImpl implements ResourceController {
     @Override
     public ResponseEntity<?> downloadResource(
             @RequestParam String path,
-            @AuthenticationPrincipal AuthUserDetails userDetails) {
+            @RequestParam(required = false, defaultValue = "zip-deflate") String format,
+            @RequestParam(required = false) Integer level,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @AuthenticationPrincipal AuthUserDetails userDetails,
+            HttpServletRequest request) {
         path = PathValidationUtils.validateResourcePath(path);
 
+        if (level != null && (level < 0 || level > 9)) {
+            return ErrorResponseUtils.print("Compression level should be between 0 and 9", HttpStatus.BAD_REQUEST);
+        }
+
         DownloadResourceDTO response = fileService.downloadResource(ResourceRequestDTO.builder()
                 .user(userDetails.getUser())
                 .path(path)
+                .range(range)
+                .ifRange(ifRange)
+                .format(ArchiveFormat.fromValue(format))
+                .level(level)
                 .build()
         );
 
         String contentDisposition = "attachment; filename=\"" + response.getFilename() + "\"";
+        boolean partial = response.getContentRange() != null;
 
-        return ResponseEntity.status(HttpStatus.OK)
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
                 .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(response.getData());
+                .contentType(MediaType.APPLICATION_OCTET_STREAM);
+
+        if (response.getType() == Type.FILE) {
+            builder.header(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (response.getEtag() != null) {
+                builder.eTag(response.getEtag());
+            }
+            if (response.getLastModified() != null) {
+                builder.lastModified(response.getLastModified());
+            }
+        }
+        if (response.getContentLength() != null) {
+            builder.contentLength(response.getContentLength());
+        }
+        if (partial) {
+            builder.header(HttpHeaders.CONTENT_RANGE, response.getContentRange());
+        }
+
+        if (response.getFile() != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // файл из кэша скачиваний: ядро передаёт его в сокет без копирования через память процесса
+            request.setAttribute(SENDFILE_FILENAME, response.getFile().toString());
+            request.setAttribute(SENDFILE_START, response.getFileOffset());
+            request.setAttribute(SENDFILE_END, response.getFileOffset() + response.getContentLength());
+            transferMetrics.sendFile(response.getContentLength());
+            CompletableFuture.delayedExecutor(SENDFILE_OPEN_SECONDS, TimeUnit.SECONDS).execute(response.getRelease());
+            return builder.build();
+        }
+
+        return builder.body(response.getBody());
     }
 }
@@ -0,0 +1,114 @@
+package edu.lcaitlyn.cloudfilestorage.controller.impl;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.request.UploadSessionRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.UploadSessionResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.controller.api.UploadSessionController;
+import edu.lcaitlyn.cloudfilestorage.models.AuthUserDetails;
+import edu.lcaitlyn.cloudfilestorage.service.FileService;
+import edu.lcaitlyn.cloudfilestorage.utils.ErrorResponseUtils;
+import edu.lcaitlyn.cloudfilestorage.utils.PathValidationUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@AllArgsConstructor
+public class UploadSessionControllerImpl implements UploadSessionController {
+
+    private final FileService fileService;
+
+    @Override
+    public ResponseEntity<?> createUploadSession(
+            @RequestParam String path,
+            @RequestParam String name,
+            @RequestParam long size,
+            @RequestParam(required = false) String contentType,
+            @AuthenticationPrincipal AuthUserDetails userDetails) {
+        path = PathValidationUtils.validateDirectoryPath(path);
+
+        if (name.contains("/") || !PathValidationUtils.isValidPath(path + name)) {
+            return ErrorResponseUtils.print("Invalid file name: " + name, HttpStatus.BAD_REQUEST);
+        }
+
+        UploadSessionResponseDTO response = fileService.createUploadSession(UploadSessionRequestDTO.builder()
+                .user(userDetails.getUser())
+                .path(path)
+                .name(name)
+                .size(size)
+                .contentType(contentType)
+                .build());
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @Override
+    public ResponseEntity<?> getUploadSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthUserDetails userDetails) {
+        UploadSessionResponseDTO response = fileService.getUploadSession(UploadSessionRequestDTO.builder()
+                .user(userDetails.getUser())
+                .sessionId(id)
+                .build());
+
+        return ResponseEntity.ok(response);
+    }
+
+    @Override
+    public ResponseEntity<?> uploadChunk(
+            @PathVariable String id,
+            @PathVariable int chunk,
+            @AuthenticationPrincipal AuthUserDetails userDetails,
+            HttpServletRequest request) {
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0) {
+            return ErrorResponseUtils.print("Content-Length is required", HttpStatus.LENGTH_REQUIRED);
+        }
+
+        try (InputStream data = request.getInputStream()) {
+            fileService.uploadChunk(UploadSessionRequestDTO.builder()
+                    .user(userDetails.getUser())
+                    .sessionId(id)
+                    .chunk(chunk)
+                    .data(data)
+                    .contentLength(contentLength)
+                    .build());
+        } catch (IOException e) {
+            return ErrorResponseUtils.print("Failed to read chunk " + chunk, HttpStatus.BAD_REQUEST);
+        }
+
+        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+
+    @Override
+    public ResponseEntity<?> completeUploadSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthUserDetails userDetails) {
+        ResourceResponseDTO response = fileService.completeUploadSession(UploadSessionRequestDTO.builder()
+                .user(userDetails.getUser())
+                .sessionId(id)
+                .build());
+
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
+    @Override
+    public ResponseEntity<?> abortUploadSession(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthUserDetails userDetails) {
+        fileService.abortUploadSession(UploadSessionRequestDTO.builder()
+                .user(userDetails.getUser())
+                .sessionId(id)
+                .build());
+
+        return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+    }
+}
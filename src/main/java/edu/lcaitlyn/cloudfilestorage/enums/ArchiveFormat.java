@@ -0,0 +1,28 @@
+package edu.lcaitlyn.cloudfilestorage.enums;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+@Getter
+public enum ArchiveFormat {
+    ZIP_STORE("zip-store", ".zip"),
+    ZIP_DEFLATE("zip-deflate", ".zip"),
+    TAR("tar", ".tar"),
+    TAR_GZ("tar.gz", ".tar.gz");
+
+    private final String value;
+    private final String extension;
+
+    ArchiveFormat(String value, String extension) {
+        this.value = value;
+        this.extension = extension;
+    }
+
+    public static ArchiveFormat fromValue(String value) {
+        return Arrays.stream(values())
+                .filter(f -> f.value.equalsIgnoreCase(value))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown archive format: " + value));
+    }
+}
@@ -0,0 +1,15 @@
+package edu.lcaitlyn.cloudfilestorage.exception;
+
+import lombok.Getter;
+
+@Getter
+public class RangeNotSatisfiable extends RuntimeException {
+
+    // размер файла для заголовка Content-Range: bytes */<size>
+    private final long size;
+
+    public RangeNotSatisfiable(String range, long size) {
+        super("Range " + range + " is not satisfiable");
+        this.size = size;
+    }
+}
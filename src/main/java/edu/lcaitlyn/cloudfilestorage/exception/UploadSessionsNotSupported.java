@@ -0,0 +1,7 @@
+package edu.lcaitlyn.cloudfilestorage.exception;
+
+public class UploadSessionsNotSupported extends RuntimeException {
+    public UploadSessionsNotSupported() {
+        super("Upload sessions are not supported by this storage backend");
+    }
+}
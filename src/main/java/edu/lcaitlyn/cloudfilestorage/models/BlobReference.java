@@ -0,0 +1,36 @@
+package edu.lcaitlyn.cloudfilestorage.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Ключ пользователя (файл или маркер папки) и блоб с его содержимым; у маркеров и пустых файлов блоба нет.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "blob_refs", indexes = {
+        @Index(name = "idx_blob_refs_blob_key", columnList = "blob_key")
+})
+public class BlobReference {
+    // побайтовое сравнение, как у ключей S3: листинги по этой таблице идут в том же порядке, что и по бакету
+    @Id
+    @Column(name = "object_key", columnDefinition = "varchar(1024) collate \"C\"")
+    String key;
+
+    @Column(name = "blob_key", columnDefinition = "varchar(1024) collate \"C\"")
+    String blobKey;
+
+    long size;
+
+    String etag;
+
+    @Column(name = "content_type")
+    String contentType;
+
+    @Column(name = "modified_at")
+    Instant modifiedAt;
+}
@@ -0,0 +1,35 @@
+package edu.lcaitlyn.cloudfilestorage.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Содержимое, хранящееся в S3 один раз под ключом {@code blobs/<sha256>}, и число ключей пользователей,
+ * которые на него ссылаются. Блоб без ссылок удаляется сборщиком мусора.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "blobs", indexes = {
+        @Index(name = "idx_blobs_unreferenced", columnList = "ref_count, updated_at")
+})
+public class StoredBlob {
+    @Id
+    @Column(name = "blob_key", columnDefinition = "varchar(1024) collate \"C\"")
+    String blobKey;
+
+    long size;
+
+    @Column(name = "ref_count", nullable = false)
+    long refCount;
+
+    // объект уже записан в S3; пока false, каждая загрузка с этим содержимым записывает его сама
+    @Column(nullable = false)
+    boolean stored;
+
+    @Column(name = "updated_at")
+    Instant updatedAt;
+}
@@ -0,0 +1,49 @@
+package edu.lcaitlyn.cloudfilestorage.models;
+
+import edu.lcaitlyn.cloudfilestorage.enums.Type;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "resources", indexes = {
+        @Index(name = "idx_resources_parent_key", columnList = "parent_key, object_key"),
+        @Index(name = "idx_resources_user_id", columnList = "user_id")
+})
+public class StoredResource {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(name = "user_id")
+    Long userId;
+
+    // побайтовое сравнение (collate "C"), как у ключей S3: курсоры листинга одинаково работают
+    // и по каталогу, и по бакету, а LIKE 'prefix%' использует обычный btree-индекс
+    @Column(name = "object_key", unique = true, nullable = false, columnDefinition = "varchar(1024) collate \"C\"")
+    String key;
+
+    @Column(name = "parent_key", nullable = false, columnDefinition = "varchar(1024) collate \"C\"")
+    String parentKey;
+
+    @Column(nullable = false, length = 1024)
+    String name;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    Type type;
+
+    long size;
+
+    String etag;
+
+    @Column(name = "modified_at")
+    Instant modifiedAt;
+
+    @Column(name = "synced_at")
+    Instant syncedAt;
+}
@@ -0,0 +1,40 @@
+package edu.lcaitlyn.cloudfilestorage.repository;
+
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Загрузка объекта частями (S3 multipart upload): части передаются независимо, в любом порядке и параллельно,
+ * объект появляется только после {@link #completeMultipartUpload}. Все части, кроме последней, должны быть
+ * не меньше 5MB, номера частей — от 1 до 10000.
+ */
+public interface MultipartUploadRepository {
+
+    /**
+     * @return идентификатор загрузки для остальных методов
+     */
+    String createMultipartUpload(String key, String contentType);
+
+    /**
+     * Передаёт часть; повторная передача части с тем же номером заменяет её.
+     *
+     * @return ETag части для {@link #completeMultipartUpload}
+     * @throws software.amazon.awssdk.services.s3.model.NoSuchUploadException если загрузка завершена или отменена
+     */
+    String uploadPart(String key, String uploadId, int partNumber, InputStream data, long contentLength);
+
+    /**
+     * Собирает объект из частей в порядке номеров.
+     *
+     * @param parts Номера и ETag всех частей
+     * @return ETag объекта
+     */
+    String completeMultipartUpload(String key, String uploadId, List<CompletedPart> parts);
+
+    /**
+     * Отменяет загрузку и удаляет переданные части.
+     */
+    void abortMultipartUpload(String key, String uploadId);
+}
@@ -0,0 +1,19 @@
+package edu.lcaitlyn.cloudfilestorage.repository;
+
+/**
+ * Хранилище, в котором ключи пользователей — метаданные поверх неизменяемых объектов
+ * (см. {@link edu.lcaitlyn.cloudfilestorage.repository.impl.DeduplicatingS3Repository}):
+ * перенос ключей не копирует и не удаляет данные.
+ */
+public interface RenamableRepository {
+
+    /**
+     * Переносит ключ одной транзакцией; ключ папки ({@code '/'} на конце) — вместе со всем её содержимым.
+     * Существующие ключи, которые заменяются перенесёнными, удаляются. Папки не должны быть вложены друг в друга.
+     *
+     * @param fromKey Ключ файла или папки
+     * @param toKey   Новый ключ того же вида
+     * @return Число перенесённых ключей
+     */
+    long rename(String fromKey, String toKey);
+}
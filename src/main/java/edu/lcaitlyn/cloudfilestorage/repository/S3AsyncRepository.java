@@ -0,0 +1,40 @@
+package edu.lcaitlyn.cloudfilestorage.repository;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Неблокирующие операции с объектами S3 (доступны при {@code aws.s3.client=async}).
+ * Крупные PUT/GET/COPY автоматически разбиваются на части, которые передаются параллельно.
+ * Ошибки S3 приходят как исключительное завершение future с {@link software.amazon.awssdk.services.s3.model.S3Exception}.
+ */
+public interface S3AsyncRepository {
+
+    CompletableFuture<HeadObjectResponse> getObjectAsync(String key);
+
+    /**
+     * @return future с ETag созданного объекта
+     */
+    CompletableFuture<String> putObjectAsync(String key, InputStream data, long contentLength, String contentType);
+
+    /**
+     * @param range Значение заголовка Range или {@code null} для всего объекта
+     * @return future, которое завершается с первыми байтами ответа; остальное читается из потока
+     */
+    CompletableFuture<ResponseInputStream<GetObjectResponse>> downloadObjectAsync(String key, String range);
+
+    CompletableFuture<Void> createDirectoryAsync(String key);
+
+    /**
+     * Копирует объект на стороне S3 любого размера (multipart copy для больших объектов выбирается автоматически).
+     */
+    CompletableFuture<Void> copyObjectAsync(String fromKey, String toKey);
+
+    CompletableFuture<List<S3Error>> deleteObjectsAsync(List<String> keys);
+}
@@ -4,6 +4,7 @@ import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.io.InputStream;
 import java.util.List;
 
 @Repository
@@ -17,14 +18,41 @@ public interface S3Repository {
      */
     HeadObjectResponse getObject(String key);
 
-    void putObject(String key, byte[] data, String contentType);
+    /**
+     * Потоково загружает объект в S3. Объекты больше размера части отправляются через multipart upload
+     * частями фиксированного размера, поэтому в памяти одновременно находится не больше одной части.
+     *
+     * @param key           Ключ объекта (включая путь)
+     * @param data          Поток с содержимым объекта
+     * @param contentLength Размер объекта в байтах
+     * @param contentType   MIME-тип объекта
+     * @return ETag созданного объекта
+     * @throws java.io.UncheckedIOException при ошибке чтения из потока
+     * @throws S3Exception                  при ошибках обращения к S3 (незавершённый multipart upload отменяется)
+     */
+    String putObject(String key, InputStream data, long contentLength, String contentType);
 
     void deleteObject(String key);
 
-    void deleteDirectory(String key);
+    /**
+     * Удаляет объекты одним запросом DeleteObjects.
+     *
+     * @param keys Ключи объектов, не больше 1000 за вызов
+     * @return Ошибки по ключам, которые удалить не удалось; пустой список, если удалены все
+     */
+    List<S3Error> deleteObjects(List<String> keys);
 
     ResponseInputStream<GetObjectResponse> downloadObject(String key);
 
+    /**
+     * Скачивает часть объекта из S3 (ranged GET).
+     *
+     * @param key   Ключ объекта (включая путь)
+     * @param range Значение заголовка Range, например {@code bytes=0-1023}; {@code null} для всего объекта
+     * @return Поток с содержимым; {@link GetObjectResponse#contentRange()} описывает отданный диапазон
+     */
+    ResponseInputStream<GetObjectResponse> downloadObject(String key, String range);
+
     void createDirectory(String key);
 
     List<S3Object> listAllObjects(String key);
@@ -33,6 +61,36 @@ public interface S3Repository {
 
     ListObjectsV2Response listKeyObjects(String key, int maxKeys);
 
-    void copyObject(String fromKey, String toKey);
+    /**
+     * Возвращает одну страницу содержимого папки: объекты и вложенные папки (common prefixes).
+     *
+     * @param key               Префикс папки
+     * @param startAfter        Ключ, после которого начинать (не включая его), или {@code null}
+     * @param continuationToken Токен следующей страницы из предыдущего ответа или {@code null}
+     * @param maxKeys           Максимум объектов и папок в ответе или {@code null} (1000)
+     */
+    ListObjectsV2Response listKeyObjects(String key, String startAfter, String continuationToken, Integer maxKeys);
+
+    /**
+     * Возвращает одну страницу (до 1000) всех объектов под префиксом, без группировки по папкам.
+     *
+     * @param key               Префикс
+     * @param continuationToken Токен следующей страницы из предыдущего ответа или {@code null} для первой страницы
+     */
+    ListObjectsV2Response listObjects(String key, String continuationToken);
+
+    /**
+     * То же, что {@link #listObjects(String, String)}, но начиная после ключа {@code startAfter}.
+     */
+    ListObjectsV2Response listObjects(String key, String startAfter, String continuationToken);
+
+    /**
+     * Копирует объект на стороне S3. Объекты больше 5GB (лимит CopyObject) копируются через multipart UploadPartCopy.
+     *
+     * @param fromKey Ключ исходного объекта
+     * @param toKey   Ключ копии
+     * @param size    Размер исходного объекта в байтах
+     */
+    void copyObject(String fromKey, String toKey, long size);
 
 }
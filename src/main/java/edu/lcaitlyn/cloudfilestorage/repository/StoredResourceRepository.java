@@ -0,0 +1,116 @@
+package edu.lcaitlyn.cloudfilestorage.repository;
+
+import edu.lcaitlyn.cloudfilestorage.models.StoredResource;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StoredResourceRepository extends JpaRepository<StoredResource, Long> {
+
+    Optional<StoredResource> findByKey(String key);
+
+    boolean existsByKey(String key);
+
+    boolean existsByParentKey(String parentKey);
+
+    List<StoredResource> findByParentKeyOrderByKey(String parentKey, Limit limit);
+
+    List<StoredResource> findByParentKeyAndKeyGreaterThanOrderByKey(String parentKey, String after, Limit limit);
+
+    List<StoredResource> findByKeyIn(Collection<String> keys);
+
+    /**
+     * @param pattern префикс, экранированный для LIKE, с '%' на конце
+     */
+    @Query("select r from StoredResource r where r.userId = :userId and r.key like :pattern escape '\\' order by r.key")
+    List<StoredResource> findSubtree(@Param("userId") Long userId, @Param("pattern") String pattern);
+
+    /**
+     * Поиск по имени, страницами по порядку ключей (keyset: следующая страница начинается после {@code after}).
+     * Корневая папка пользователя (с пустым parent_key) в результат не попадает.
+     *
+     * @param pattern шаблон LIKE для имени, например {@code %abc%} или {@code abc%}
+     * @param after   ключ последнего элемента предыдущей страницы или {@code ""} для первой
+     */
+    @Query(value = """
+            select * from resources
+            where user_id = :userId and parent_key <> '' and object_key > :after and name like :pattern escape '\\'
+            order by object_key
+            limit :limit
+            """, nativeQuery = true)
+    List<StoredResource> searchByName(@Param("userId") Long userId,
+                                      @Param("pattern") String pattern,
+                                      @Param("after") String after,
+                                      @Param("limit") int limit);
+
+    @Modifying
+    @Query("delete from StoredResource r where r.userId = :userId and r.key like :pattern escape '\\'")
+    int deleteSubtree(@Param("userId") Long userId, @Param("pattern") String pattern);
+
+    /**
+     * Ключи под префиксом, не отмеченные проходом сверки {@code pass}, страницами по порядку ключей.
+     */
+    @Query("select r.key from StoredResource r where r.userId = :userId and r.key like :pattern escape '\\' and r.syncedAt <> :pass and r.key > :after order by r.key")
+    List<String> findSubtreeKeysNotSynced(@Param("userId") Long userId, @Param("pattern") String pattern, @Param("pass") Instant pass, @Param("after") String after, Limit limit);
+
+    @Query("select r.key from StoredResource r where r.syncedAt <> :pass and r.key > :after order by r.key")
+    List<String> findKeysNotSynced(@Param("pass") Instant pass, @Param("after") String after, Limit limit);
+
+    @Modifying
+    @Query("delete from StoredResource r where r.key = :key")
+    int deleteByKey(@Param("key") String key);
+
+    /**
+     * Переносит ключ и, для папки, всё её содержимое: у перенесённых строк префикс {@code fromKey}
+     * в ключе и родителе заменяется на {@code toKey}, у самой строки {@code fromKey} — родитель и имя.
+     *
+     * @param pattern {@code fromKey}, экранированный для LIKE, для папки с '%' на конце
+     */
+    @Modifying
+    @Query(value = """
+            update resources set
+                object_key = :toKey || substr(object_key, char_length(:fromKey) + 1),
+                parent_key = case when object_key = :fromKey then :toParentKey
+                                  else :toKey || substr(parent_key, char_length(:fromKey) + 1) end,
+                name = case when object_key = :fromKey then :toName else name end,
+                synced_at = :syncedAt
+            where user_id = :userId and object_key like :pattern escape '\\'
+            """, nativeQuery = true)
+    int move(@Param("userId") Long userId,
+             @Param("pattern") String pattern,
+             @Param("fromKey") String fromKey,
+             @Param("toKey") String toKey,
+             @Param("toParentKey") String toParentKey,
+             @Param("toName") String toName,
+             @Param("syncedAt") Instant syncedAt);
+
+    @Modifying
+    @Query(value = """
+            insert into resources (user_id, object_key, parent_key, name, type, size, etag, modified_at, synced_at)
+            values (:userId, :key, :parentKey, :name, :type, :size, :etag, :modifiedAt, :syncedAt)
+            on conflict (object_key) do update set
+                type = excluded.type,
+                size = excluded.size,
+                etag = excluded.etag,
+                modified_at = excluded.modified_at,
+                synced_at = excluded.synced_at
+            """, nativeQuery = true)
+    void upsert(@Param("userId") Long userId,
+                @Param("key") String key,
+                @Param("parentKey") String parentKey,
+                @Param("name") String name,
+                @Param("type") String type,
+                @Param("size") long size,
+                @Param("etag") String etag,
+                @Param("modifiedAt") Instant modifiedAt,
+                @Param("syncedAt") Instant syncedAt);
+}
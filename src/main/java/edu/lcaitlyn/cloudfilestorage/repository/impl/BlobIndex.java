@@ -0,0 +1,263 @@
+package edu.lcaitlyn.cloudfilestorage.repository.impl;
+
+import edu.lcaitlyn.cloudfilestorage.models.BlobReference;
+import edu.lcaitlyn.cloudfilestorage.models.StoredBlob;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Таблицы {@link StoredBlob} и {@link BlobReference} для {@link DeduplicatingS3Repository}.
+ * Счётчики ссылок меняются одним UPDATE/UPSERT, поэтому параллельные загрузки и копирования одного блоба
+ * не теряют инкременты; методы, которые должны выполняться вместе, вызываются в одной транзакции.
+ */
+public class BlobIndex {
+
+    private static final RowMapper<BlobReference> REFERENCE = (rs, i) -> {
+        BlobReference reference = new BlobReference();
+        reference.setKey(rs.getString("object_key"));
+        reference.setBlobKey(rs.getString("blob_key"));
+        reference.setSize(rs.getLong("size"));
+        reference.setEtag(rs.getString("etag"));
+        reference.setContentType(rs.getString("content_type"));
+        Timestamp modifiedAt = rs.getTimestamp("modified_at");
+        reference.setModifiedAt((modifiedAt == null) ? null : modifiedAt.toInstant());
+        return reference;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BlobIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isEmpty() {
+        return !Boolean.TRUE.equals(jdbcTemplate.queryForObject("select exists (select 1 from blob_refs)", Boolean.class));
+    }
+
+    public BlobReference find(String key) {
+        List<BlobReference> found = jdbcTemplate.query("select * from blob_refs where object_key = ?", REFERENCE, key);
+        return found.isEmpty() ? null : found.getFirst();
+    }
+
+    /**
+     * Блокирует строку ключа до конца транзакции, чтобы параллельная перезапись не освободила блоб дважды.
+     *
+     * @return блоб, на который ключ ссылается сейчас, или {@code null}
+     */
+    public BlobReference lock(String key) {
+        List<BlobReference> found = jdbcTemplate.query("select * from blob_refs where object_key = ? for update", REFERENCE, key);
+        return found.isEmpty() ? null : found.getFirst();
+    }
+
+    /**
+     * @param after ключ, после которого продолжать, или {@code null}
+     * @return до {@code limit} ключей под префиксом по порядку байтов
+     */
+    public List<BlobReference> list(String prefix, String after, int limit) {
+        return jdbcTemplate.query("""
+                        select * from blob_refs
+                        where object_key like ? escape '\\' and object_key > ?
+                        order by object_key
+                        limit ?
+                        """,
+                REFERENCE, likePrefix(prefix), (after == null) ? "" : after, limit);
+    }
+
+    public void put(BlobReference reference) {
+        jdbcTemplate.update("""
+                        insert into blob_refs (object_key, blob_key, size, etag, content_type, modified_at)
+                        values (?, ?, ?, ?, ?, ?)
+                        on conflict (object_key) do update set
+                            blob_key = excluded.blob_key,
+                            size = excluded.size,
+                            etag = excluded.etag,
+                            content_type = excluded.content_type,
+                            modified_at = excluded.modified_at
+                        """,
+                reference.getKey(), reference.getBlobKey(), reference.getSize(), reference.getEtag(),
+                reference.getContentType(), timestamp(reference.getModifiedAt()));
+    }
+
+    /**
+     * Удаляет ключи и возвращает, сколько ссылок каждого блоба при этом исчезло.
+     */
+    public Map<String, Long> remove(Collection<String> keys) {
+        Map<String, Long> released = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement("delete from blob_refs where object_key = any (?) returning blob_key");
+            statement.setArray(1, con.createArrayOf("varchar", keys.toArray()));
+            return statement;
+        }, rs -> {
+            String blobKey = rs.getString(1);
+            if (blobKey != null) {
+                released.merge(blobKey, 1L, Long::sum);
+            }
+        });
+        return released;
+    }
+
+    /**
+     * Удаляет ключи, которые займут ключи, перенесённые из {@code fromKey} в {@code toKey}.
+     *
+     * @return сколько ссылок каждого блоба при этом исчезло
+     */
+    public Map<String, Long> removeRenameTargets(String fromKey, String toKey) {
+        Map<String, Long> released = new HashMap<>();
+        jdbcTemplate.query("""
+                        delete from blob_refs
+                        where object_key in (
+                            select ? || substr(object_key, char_length(?) + 1) from blob_refs
+                            where object_key like ? escape '\\'
+                        )
+                        returning blob_key
+                        """,
+                rs -> {
+                    String blobKey = rs.getString(1);
+                    if (blobKey != null) {
+                        released.merge(blobKey, 1L, Long::sum);
+                    }
+                },
+                toKey, fromKey, pattern(fromKey));
+        return released;
+    }
+
+    /**
+     * Переписывает префикс {@code fromKey} на {@code toKey} у ключа и, для папки, у всех ключей под ней.
+     * Блобы, размеры и даты изменения не меняются.
+     *
+     * @return число перенесённых ключей
+     */
+    public int rename(String fromKey, String toKey) {
+        return jdbcTemplate.update("""
+                        update blob_refs set object_key = ? || substr(object_key, char_length(?) + 1)
+                        where object_key like ? escape '\\'
+                        """,
+                toKey, fromKey, pattern(fromKey));
+    }
+
+    /**
+     * Добавляет ссылку на блоб, создавая его запись при первой ссылке.
+     *
+     * @return {@code true}, если блоб уже записан в S3 и загружать его не нужно
+     */
+    public boolean acquire(String blobKey, long size) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                        insert into blobs (blob_key, size, ref_count, stored, updated_at)
+                        values (?, ?, 1, false, ?)
+                        on conflict (blob_key) do update set
+                            ref_count = blobs.ref_count + 1,
+                            updated_at = excluded.updated_at
+                        returning stored
+                        """,
+                Boolean.class, blobKey, size, timestamp(Instant.now())));
+    }
+
+    public void markStored(String blobKey) {
+        jdbcTemplate.update("update blobs set stored = true where blob_key = ?", blobKey);
+    }
+
+    public void release(String blobKey, long references) {
+        jdbcTemplate.update("update blobs set ref_count = ref_count - ?, updated_at = ? where blob_key = ?",
+                references, timestamp(Instant.now()), blobKey);
+    }
+
+    /**
+     * Блокирует до конца транзакции блобы без ссылок, освобождённые раньше {@code before}.
+     */
+    public List<String> lockUnreferenced(Instant before, int limit) {
+        return jdbcTemplate.queryForList("""
+                        select blob_key from blobs
+                        where ref_count <= 0 and updated_at < ?
+                        order by blob_key
+                        limit ?
+                        for update skip locked
+                        """,
+                String.class, timestamp(before), limit);
+    }
+
+    /**
+     * Блокирует до конца транзакции те из блобов, у которых по-прежнему нет ссылок: пока они удаляются из S3,
+     * новая ссылка на них ждёт (и затем загружает блоб заново), а не ссылается на удаляемый объект.
+     */
+    public List<String> lockUnreferenced(Collection<String> blobKeys) {
+        return jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(
+                    "select blob_key from blobs where blob_key = any (?) and ref_count <= 0 order by blob_key for update");
+            statement.setArray(1, con.createArrayOf("varchar", blobKeys.toArray()));
+            return statement;
+        }, (rs, i) -> rs.getString(1));
+    }
+
+    /**
+     * Помечает блобы как не записанные в S3: следующая ссылка на такой блоб загрузит его заново.
+     */
+    public void unmarkStored(Collection<String> blobKeys) {
+        jdbcTemplate.update(con -> {
+            PreparedStatement statement = con.prepareStatement("update blobs set stored = false where blob_key = any (?)");
+            statement.setArray(1, con.createArrayOf("varchar", blobKeys.toArray()));
+            return statement;
+        });
+    }
+
+    public void deleteBlobs(Collection<String> blobKeys) {
+        jdbcTemplate.update(con -> {
+            PreparedStatement statement = con.prepareStatement("delete from blobs where blob_key = any (?)");
+            Array array = con.createArrayOf("varchar", blobKeys.toArray());
+            statement.setArray(1, array);
+            return statement;
+        });
+    }
+
+    /**
+     * Регистрирует объекты, записанные до включения дедупликации: каждый остаётся под своим ключом
+     * и становится блобом с одной ссылкой (маркеры папок — ссылками без блоба).
+     */
+    public void importObjects(List<BlobReference> references) {
+        jdbcTemplate.batchUpdate("""
+                        insert into blobs (blob_key, size, ref_count, stored, updated_at)
+                        values (?, ?, 1, true, ?)
+                        on conflict (blob_key) do nothing
+                        """,
+                references.stream()
+                        .filter(reference -> reference.getBlobKey() != null)
+                        .map(reference -> new Object[]{reference.getBlobKey(), reference.getSize(), timestamp(Instant.now())})
+                        .toList());
+        jdbcTemplate.batchUpdate("""
+                        insert into blob_refs (object_key, blob_key, size, etag, content_type, modified_at)
+                        values (?, ?, ?, ?, ?, ?)
+                        on conflict (object_key) do nothing
+                        """,
+                references.stream()
+                        .map(reference -> new Object[]{reference.getKey(), reference.getBlobKey(), reference.getSize(),
+                                reference.getEtag(), reference.getContentType(), timestamp(reference.getModifiedAt())})
+                        .toList());
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return (instant == null) ? null : Timestamp.from(instant);
+    }
+
+    // папка — все ключи под ней, файл — только сам ключ
+    private static String pattern(String key) {
+        return key.endsWith("/") ? likePrefix(key) : escapeLike(key);
+    }
+
+    private static String likePrefix(String prefix) {
+        return escapeLike(prefix) + "%";
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -0,0 +1,581 @@
+package edu.lcaitlyn.cloudfilestorage.repository.impl;
+
+import edu.lcaitlyn.cloudfilestorage.models.BlobReference;
+import edu.lcaitlyn.cloudfilestorage.repository.MultipartUploadRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.RenamableRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Хранит каждое уникальное содержимое в S3 один раз, под ключом {@code blobs/<sha256>}, а ключи пользователей
+ * ведёт в Postgres ({@link BlobIndex}) как ссылки на блобы со счётчиками ссылок.
+ * <p>
+ * Загрузка хешируется на лету, пока пишется во временный файл; если такой блоб уже есть, в S3 ничего
+ * не передаётся. Копирование — только новая ссылка на тот же блоб, перенос файла или папки любого размера —
+ * одно изменение ключей в таблице ссылок ({@link #rename(String, String)}). HEAD и листинги обслуживаются из таблицы
+ * ссылок в порядке ключей S3, поэтому каталог, кэши и сервисы над {@link S3Repository} работают без изменений.
+ * Блобы без ссылок удаляет {@link #collectGarbage(Duration)}.
+ * <p>
+ * Объекты, записанные до включения дедупликации, при первом старте регистрируются как блобы с одной ссылкой
+ * под своими прежними ключами; они тоже копируются без передачи данных и удаляются сборщиком.
+ * <p>
+ * Загрузка частями идёт в хранилище под временным ключом {@code uploads/<uuid>}; при завершении собранный объект
+ * читается ещё раз для хеша и копируется в блоб (или удаляется, если такой блоб уже есть).
+ */
+@Slf4j
+public class DeduplicatingS3Repository implements S3Repository, RenamableRepository, MultipartUploadRepository {
+
+    public static final String BLOB_PREFIX = "blobs/";
+
+    public static final String STAGING_PREFIX = "uploads/";
+
+    private static final String USER_PREFIX = "user-";
+
+    private static final int MAX_KEYS = 1000;
+
+    private static final String LAST_CHARACTER = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    private static final String EMPTY_ETAG = "\"" + HexFormat.of().formatHex(sha256().digest()) + "\"";
+
+    private final S3Repository delegate;
+
+    private final BlobIndex index;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter storedBytes;
+
+    private final Counter deduplicatedBytes;
+
+    public DeduplicatingS3Repository(S3Repository delegate, BlobIndex index, TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.index = index;
+        this.transactionTemplate = transactionTemplate;
+        this.storedBytes = uploadBytes(meterRegistry, "stored");
+        this.deduplicatedBytes = uploadBytes(meterRegistry, "deduplicated");
+    }
+
+    private static Counter uploadBytes(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("storage.dedup.bytes")
+                .description("Uploaded bytes written to S3 as new blobs or matched to an existing blob")
+                .baseUnit("bytes")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Регистрирует объекты пользователей, уже лежащие в бакете, если таблица ссылок пуста.
+     * Выполняется одной транзакцией: прерванный импорт повторится целиком при следующем старте.
+     */
+    public void importExisting() {
+        if (!index.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long count = transactionTemplate.execute(status -> {
+            long imported = 0;
+            String continuationToken = null;
+            do {
+                ListObjectsV2Response page = delegate.listObjects(USER_PREFIX, continuationToken);
+                List<BlobReference> references = new ArrayList<>();
+                for (S3Object object : page.contents()) {
+                    boolean marker = object.key().endsWith("/") && object.size() == 0;
+                    references.add(reference(object.key(), marker ? null : object.key(), object.size(),
+                            object.eTag(), null, object.lastModified()));
+                }
+                index.importObjects(references);
+                imported += references.size();
+                continuationToken = page.nextContinuationToken();
+            } while (continuationToken != null);
+            return imported;
+        });
+
+        if (count > 0) {
+            log.info("registered " + count + " existing objects as blobs in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    @Override
+    public HeadObjectResponse getObject(String key) {
+        BlobReference reference = find(key);
+
+        return HeadObjectResponse.builder()
+                .contentLength(reference.getSize())
+                .contentType(reference.getContentType())
+                .eTag(reference.getEtag())
+                .lastModified(reference.getModifiedAt())
+                .build();
+    }
+
+    @Override
+    public String putObject(String key, InputStream data, long contentLength, String contentType) {
+        if (contentLength == 0) {
+            point(reference(key, null, 0, EMPTY_ETAG, contentType, Instant.now()));
+            return EMPTY_ETAG;
+        }
+
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("upload-", ".tmp");
+            MessageDigest digest = sha256();
+            long written;
+            try (FileChannel out = FileChannel.open(spool, StandardOpenOption.WRITE)) {
+                written = new DigestInputStream(data, digest).transferTo(Channels.newOutputStream(out));
+            }
+            if (written != contentLength) {
+                throw new IOException("Expected " + contentLength + " bytes for key " + key + ", got " + written);
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String blobKey = BLOB_PREFIX + hash.substring(0, 2) + "/" + hash;
+            String etag = "\"" + hash + "\"";
+
+            boolean stored = Boolean.TRUE.equals(transactionTemplate.execute(status -> index.acquire(blobKey, contentLength)));
+            try {
+                if (stored) {
+                    deduplicatedBytes.increment(contentLength);
+                } else {
+                    try (InputStream in = Files.newInputStream(spool)) {
+                        delegate.putObject(blobKey, in, contentLength, "application/octet-stream");
+                    }
+                    index.markStored(blobKey);
+                    storedBytes.increment(contentLength);
+                }
+
+                point(reference(key, blobKey, contentLength, etag, contentType, Instant.now()));
+            } catch (RuntimeException | IOException e) {
+                transactionTemplate.executeWithoutResult(status -> index.release(blobKey, 1));
+                throw e;
+            }
+            return etag;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(spool);
+        }
+    }
+
+    @Override
+    public void deleteObject(String key) {
+        deleteObjects(List.of(key));
+    }
+
+    @Override
+    public List<S3Error> deleteObjects(List<String> keys) {
+        transactionTemplate.executeWithoutResult(status -> index.remove(keys).forEach(index::release));
+        return List.of();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadObject(String key) {
+        return downloadObject(key, null);
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadObject(String key, String range) {
+        BlobReference reference = find(key);
+
+        if (reference.getBlobKey() == null) {
+            return new ResponseInputStream<>(GetObjectResponse.builder()
+                    .contentLength(0L)
+                    .contentType(reference.getContentType())
+                    .eTag(reference.getEtag())
+                    .lastModified(reference.getModifiedAt())
+                    .build(), AbortableInputStream.create(InputStream.nullInputStream()));
+        }
+
+        ResponseInputStream<GetObjectResponse> blob = delegate.downloadObject(reference.getBlobKey(), range);
+        GetObjectResponse response = blob.response().toBuilder()
+                .contentType(reference.getContentType())
+                .eTag(reference.getEtag())
+                .lastModified(reference.getModifiedAt())
+                .build();
+        return new ResponseInputStream<>(response, AbortableInputStream.create(blob, blob::abort));
+    }
+
+    @Override
+    public void createDirectory(String key) {
+        point(reference(key, null, 0, EMPTY_ETAG, null, Instant.now()));
+    }
+
+    @Override
+    public List<S3Object> listAllObjects(String key) {
+        List<S3Object> allObjects = new ArrayList<>();
+        String continuationToken = null;
+
+        do {
+            ListObjectsV2Response response = listObjects(key, continuationToken);
+            allObjects.addAll(response.contents());
+            continuationToken = response.nextContinuationToken();
+        } while (continuationToken != null);
+
+        return allObjects;
+    }
+
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key) {
+        return listKeyObjects(key, null, null, null);
+    }
+
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key, int maxKeys) {
+        return listKeyObjects(key, null, null, maxKeys);
+    }
+
+    /**
+     * Сворачивает ключи вложенных папок в common prefixes; строки внутри уже выданной папки пропускаются,
+     * а если страница таблицы кончилась внутри неё, следующая читается сразу после всей папки.
+     */
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key, String startAfter, String continuationToken, Integer maxKeys) {
+        int max = (maxKeys == null) ? MAX_KEYS : maxKeys;
+        String after = (continuationToken != null) ? continuationToken : startAfter;
+
+        List<S3Object> contents = new ArrayList<>();
+        List<CommonPrefix> commonPrefixes = new ArrayList<>();
+        String last = null;
+        String skipping = null;
+        boolean truncated = false;
+
+        page:
+        while (true) {
+            List<BlobReference> rows = index.list(key, after, MAX_KEYS);
+            for (BlobReference row : rows) {
+                if (skipping != null && row.getKey().startsWith(skipping)) continue;
+                skipping = null;
+
+                if (contents.size() + commonPrefixes.size() == max) {
+                    truncated = true;
+                    break page;
+                }
+
+                int slash = row.getKey().indexOf('/', key.length());
+                if (slash < 0) {
+                    contents.add(toS3Object(row));
+                    last = row.getKey();
+                } else {
+                    skipping = row.getKey().substring(0, slash + 1);
+                    commonPrefixes.add(CommonPrefix.builder().prefix(skipping).build());
+                    last = skipping + LAST_CHARACTER;
+                }
+            }
+
+            if (rows.size() < MAX_KEYS) break;
+            after = (skipping != null) ? skipping + LAST_CHARACTER : rows.getLast().getKey();
+        }
+
+        return ListObjectsV2Response.builder()
+                .prefix(key)
+                .delimiter("/")
+                .contents(contents)
+                .commonPrefixes(commonPrefixes)
+                .keyCount(contents.size() + commonPrefixes.size())
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? last : null)
+                .build();
+    }
+
+    @Override
+    public ListObjectsV2Response listObjects(String key, String continuationToken) {
+        return listObjects(key, null, continuationToken);
+    }
+
+    @Override
+    public ListObjectsV2Response listObjects(String key, String startAfter, String continuationToken) {
+        List<BlobReference> rows = index.list(key, (continuationToken != null) ? continuationToken : startAfter, MAX_KEYS + 1);
+        boolean truncated = rows.size() > MAX_KEYS;
+        if (truncated) {
+            rows = rows.subList(0, MAX_KEYS);
+        }
+
+        return ListObjectsV2Response.builder()
+                .prefix(key)
+                .contents(rows.stream().map(DeduplicatingS3Repository::toS3Object).toList())
+                .keyCount(rows.size())
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? rows.getLast().getKey() : null)
+                .build();
+    }
+
+    /**
+     * Новая ссылка на блоб источника: в S3 ничего не копируется.
+     */
+    @Override
+    public void copyObject(String fromKey, String toKey, long size) {
+        transactionTemplate.executeWithoutResult(status -> {
+            BlobReference target = index.lock(toKey);
+            BlobReference source = index.find(fromKey);
+            if (source == null) {
+                throw noSuchKey(fromKey);
+            }
+
+            if (source.getBlobKey() != null) {
+                index.acquire(source.getBlobKey(), source.getSize());
+            }
+            index.put(reference(toKey, source.getBlobKey(), source.getSize(), source.getEtag(), source.getContentType(), Instant.now()));
+            if (target != null && target.getBlobKey() != null) {
+                index.release(target.getBlobKey(), 1);
+            }
+        });
+    }
+
+    @Override
+    public long rename(String fromKey, String toKey) {
+        // ключ файла переносится только сам (a.txt -> a.txt.bak), вложенной может быть лишь папка в папку
+        if (fromKey.endsWith("/") && toKey.endsWith("/") && (fromKey.startsWith(toKey) || toKey.startsWith(fromKey))) {
+            throw new IllegalArgumentException("Cannot rename " + fromKey + " to nested key " + toKey);
+        }
+
+        Integer renamed = transactionTemplate.execute(status -> {
+            index.removeRenameTargets(fromKey, toKey).forEach(index::release);
+            return index.rename(fromKey, toKey);
+        });
+        return (renamed == null) ? 0 : renamed;
+    }
+
+    /**
+     * @return {@code <uuid>/<идентификатор загрузки в хранилище>}: по нему находится временный ключ частей
+     */
+    @Override
+    public String createMultipartUpload(String key, String contentType) {
+        String staging = UUID.randomUUID().toString();
+        return staging + "/" + staging().createMultipartUpload(STAGING_PREFIX + staging, contentType);
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream data, long contentLength) {
+        return staging().uploadPart(stagingKey(uploadId), delegateUploadId(uploadId), partNumber, data, contentLength);
+    }
+
+    @Override
+    public String completeMultipartUpload(String key, String uploadId, List<CompletedPart> parts) {
+        String stagingKey = stagingKey(uploadId);
+        staging().completeMultipartUpload(stagingKey, delegateUploadId(uploadId), parts);
+
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            String contentType;
+            try (ResponseInputStream<GetObjectResponse> in = delegate.downloadObject(stagingKey)) {
+                size = new DigestInputStream(in, digest).transferTo(OutputStream.nullOutputStream());
+                contentType = in.response().contentType();
+            }
+
+            if (size == 0) {
+                point(reference(key, null, 0, EMPTY_ETAG, contentType, Instant.now()));
+                return EMPTY_ETAG;
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            String blobKey = BLOB_PREFIX + hash.substring(0, 2) + "/" + hash;
+            String etag = "\"" + hash + "\"";
+
+            boolean stored = Boolean.TRUE.equals(transactionTemplate.execute(status -> index.acquire(blobKey, size)));
+            try {
+                if (stored) {
+                    deduplicatedBytes.increment(size);
+                } else {
+                    delegate.copyObject(stagingKey, blobKey, size);
+                    index.markStored(blobKey);
+                    storedBytes.increment(size);
+                }
+
+                point(reference(key, blobKey, size, etag, contentType, Instant.now()));
+            } catch (RuntimeException e) {
+                transactionTemplate.executeWithoutResult(status -> index.release(blobKey, 1));
+                throw e;
+            }
+            return etag;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            try {
+                delegate.deleteObject(stagingKey);
+            } catch (S3Exception e) {
+                log.warn("failed to delete staged upload: " + stagingKey + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        staging().abortMultipartUpload(stagingKey(uploadId), delegateUploadId(uploadId));
+    }
+
+    /**
+     * Удаляет из S3 блобы, у которых нет ссылок дольше {@code grace}: за это время успевают завершиться
+     * скачивания, которые нашли блоб до удаления последней ссылки.
+     * <p>
+     * Сначала блобы отдельной транзакцией помечаются как не записанные, и только потом удаляются из S3:
+     * если удаление строк не зафиксируется, новая ссылка загрузит блоб заново, а не сошлётся на удалённый объект.
+     * Блобы, которые S3 удалить не смог, остаются в индексе до следующей сборки.
+     *
+     * @return число удалённых блобов
+     */
+    public long collectGarbage(Duration grace) {
+        long deleted = 0;
+        int candidates;
+        int removed;
+
+        do {
+            Instant before = Instant.now().minus(grace);
+            List<String> blobKeys = transactionTemplate.execute(status -> {
+                List<String> unreferenced = index.lockUnreferenced(before, MAX_KEYS);
+                if (!unreferenced.isEmpty()) {
+                    index.unmarkStored(unreferenced);
+                }
+                return unreferenced;
+            });
+            if (blobKeys == null || blobKeys.isEmpty()) {
+                break;
+            }
+
+            Integer collected = transactionTemplate.execute(status -> {
+                // ссылки, появившиеся после пометки, загружают блоб заново сами: такие блобы не трогаем
+                List<String> locked = index.lockUnreferenced(blobKeys);
+                if (locked.isEmpty()) {
+                    return 0;
+                }
+
+                Set<String> deletedBlobs = new HashSet<>(locked);
+                for (S3Error error : delegate.deleteObjects(locked)) {
+                    log.warn("failed to delete blob: " + error.key() + " (" + error.message() + ")");
+                    deletedBlobs.remove(error.key());
+                }
+                if (!deletedBlobs.isEmpty()) {
+                    index.deleteBlobs(deletedBlobs);
+                }
+                return deletedBlobs.size();
+            });
+
+            candidates = blobKeys.size();
+            removed = (collected == null) ? 0 : collected;
+            deleted += removed;
+            // блобы, которые не удаляются (например, AccessDenied), выбираются снова первыми: без прогресса выходим
+        } while (candidates == MAX_KEYS && removed > 0);
+
+        return deleted;
+    }
+
+    private BlobReference find(String key) {
+        BlobReference reference = index.find(key);
+        if (reference == null) {
+            throw noSuchKey(key);
+        }
+        return reference;
+    }
+
+    /**
+     * Направляет ключ на новый блоб (ссылка на него уже учтена) и освобождает прежний.
+     */
+    private void point(BlobReference reference) {
+        transactionTemplate.executeWithoutResult(status -> {
+            BlobReference previous = index.lock(reference.getKey());
+            index.put(reference);
+            if (previous != null && previous.getBlobKey() != null) {
+                index.release(previous.getBlobKey(), 1);
+            }
+        });
+    }
+
+    private MultipartUploadRepository staging() {
+        if (delegate instanceof MultipartUploadRepository multipart) {
+            return multipart;
+        }
+        throw new IllegalStateException("Storage backend does not support multipart upload");
+    }
+
+    private static String stagingKey(String uploadId) {
+        int slash = uploadId.indexOf('/');
+        try {
+            if (slash > 0 && UUID.fromString(uploadId.substring(0, slash)).toString().equals(uploadId.substring(0, slash))) {
+                return STAGING_PREFIX + uploadId.substring(0, slash);
+            }
+        } catch (IllegalArgumentException e) {
+            // не UUID
+        }
+        throw (NoSuchUploadException) NoSuchUploadException.builder()
+                .message("The specified upload does not exist: " + uploadId)
+                .statusCode(404)
+                .build();
+    }
+
+    private static String delegateUploadId(String uploadId) {
+        return uploadId.substring(uploadId.indexOf('/') + 1);
+    }
+
+    private static BlobReference reference(String key, String blobKey, long size, String etag, String contentType, Instant modifiedAt) {
+        BlobReference reference = new BlobReference();
+        reference.setKey(key);
+        reference.setBlobKey(blobKey);
+        reference.setSize(size);
+        reference.setEtag(etag);
+        reference.setContentType(contentType);
+        reference.setModifiedAt(modifiedAt);
+        return reference;
+    }
+
+    private static S3Object toS3Object(BlobReference reference) {
+        return S3Object.builder()
+                .key(reference.getKey())
+                .size(reference.getSize())
+                .eTag(reference.getEtag())
+                .lastModified(reference.getModifiedAt())
+                .build();
+    }
+
+    private static NoSuchKeyException noSuchKey(String key) {
+        return (NoSuchKeyException) NoSuchKeyException.builder()
+                .message("The specified key does not exist: " + key)
+                .statusCode(404)
+                .build();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("failed to delete temporary file: " + file);
+        }
+    }
+}
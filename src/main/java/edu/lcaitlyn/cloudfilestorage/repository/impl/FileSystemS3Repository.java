@@ -0,0 +1,865 @@
+package edu.lcaitlyn.cloudfilestorage.repository.impl;
+
+import edu.lcaitlyn.cloudfilestorage.config.S3Properties;
+import edu.lcaitlyn.cloudfilestorage.repository.MultipartUploadRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.FileSystemUtils;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * Хранит объекты в файлах на локальном диске вместо S3 (одиночный узел, edge-установки, тесты и бенчмарки без сети).
+ * <p>
+ * Ключ отображается в путь под {@code aws.s3.filesystem.root}: {@code user-1-files/a/b.txt} — файл
+ * {@code user-1-files/a/b.txt}. Маркер папки {@code user-1-files/a/} — пустой файл {@value #MARKER} внутри неё, поэтому,
+ * как и в S3, папка без маркера видна в листинге как common prefix, пока в ней есть объекты, и исчезает вместе
+ * с последним из них. Сегменты ключа, начинающиеся с {@code %}, экранируются ещё одним {@code %}.
+ * <p>
+ * Запись идёт во временный файл и атомарно переименовывается, поэтому читатели видят объект целиком или никак.
+ * Данные из файловых потоков (загрузки, которые контейнер уже сохранил на диск) и копирования передаются
+ * через {@link FileChannel#transferTo}/{@code transferFrom} без копирования через heap. ETag — размер
+ * и время изменения файла, а не MD5 содержимого.
+ * <p>
+ * Части multipart upload хранятся файлами в {@code .uploads/multipart-<uploadId>/} и при завершении
+ * склеиваются в новый файл объекта.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "aws.s3.client", havingValue = "filesystem")
+public class FileSystemS3Repository implements S3Repository, MultipartUploadRepository {
+
+    static final String MARKER = "%";
+
+    private static final String TEMP_DIRECTORY = ".uploads";
+
+    private static final String CONTENT_TYPE_ATTRIBUTE = "content-type";
+
+    private static final String MULTIPART_PREFIX = "multipart-";
+
+    private static final String PART_PREFIX = "part-";
+
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private static final int MAX_KEYS = 1000;
+
+    // U+10FFFF: больше любого символа ключа, "a/" + LAST_CHARACTER идёт после всех ключей "a/..."
+    private static final String LAST_CHARACTER = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    // порядок байтов UTF-8, как в листингах S3, совпадает с порядком кодовых точек
+    private static final Comparator<String> KEY_ORDER = FileSystemS3Repository::compareCodePoints;
+
+    private final Path root;
+
+    private final Path temp;
+
+    @Autowired
+    public FileSystemS3Repository(S3Properties s3Properties) {
+        this(Path.of(s3Properties.getFilesystemRoot()));
+    }
+
+    public FileSystemS3Repository(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.temp = this.root.resolve(TEMP_DIRECTORY);
+        try {
+            Files.createDirectories(temp);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create storage root: " + this.root, e);
+        }
+        log.info("storing objects in: " + this.root);
+
+        // имена файлов кодируются по локали процесса: с LANG=C не-ASCII ключи не отобразить в пути
+        if (!"UTF-8".equalsIgnoreCase(System.getProperty("sun.jnu.encoding", "UTF-8"))) {
+            log.warn("file names are encoded as " + System.getProperty("sun.jnu.encoding")
+                    + ", keys with non-ASCII characters will be rejected; run with a UTF-8 locale (LANG=C.UTF-8)");
+        }
+    }
+
+    @Override
+    public HeadObjectResponse getObject(String key) {
+        Path file = objectPath(key);
+        BasicFileAttributes attributes = readObjectAttributes(key, file);
+
+        return HeadObjectResponse.builder()
+                .contentLength(attributes.size())
+                .contentType(contentType(file))
+                .eTag(etag(attributes))
+                .lastModified(attributes.lastModifiedTime().toInstant())
+                .build();
+    }
+
+    @Override
+    public String putObject(String key, InputStream data, long contentLength, String contentType) {
+        if (key.endsWith("/")) {
+            createDirectory(key);
+            return etag(readObjectAttributes(key, objectPath(key)));
+        }
+
+        Path target = objectPath(key);
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(temp, "put-", ".tmp");
+            try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                // FileInputStream и Files.newInputStream передают данные в FileChannel через transferTo
+                long written = data.transferTo(Channels.newOutputStream(out));
+                if (written != contentLength) {
+                    throw new IOException("Expected " + contentLength + " bytes for key " + key + ", got " + written);
+                }
+                out.force(false);
+            }
+            writeContentType(tempFile, contentType);
+
+            moveIntoPlace(tempFile, target, key);
+            tempFile = null;
+            return etag(Files.readAttributes(target, BasicFileAttributes.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    @Override
+    public void deleteObject(String key) {
+        try {
+            Path file = objectPath(key);
+            Files.deleteIfExists(file);
+            prune(file.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<S3Error> deleteObjects(List<String> keys) {
+        List<S3Error> errors = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                deleteObject(key);
+            } catch (UncheckedIOException | S3Exception e) {
+                errors.add(S3Error.builder().key(key).code("InternalError").message(e.getMessage()).build());
+            }
+        }
+        return errors;
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadObject(String key) {
+        return downloadObject(key, null);
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadObject(String key, String range) {
+        Path file = objectPath(key);
+        BasicFileAttributes attributes = readObjectAttributes(key, file);
+        long size = attributes.size();
+
+        long start = 0;
+        long end = size - 1;
+        if (range != null) {
+            // bytes=a-b, bytes=a- или bytes=-n
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            if (bounds[0].isEmpty()) {
+                start = Math.max(0, size - Long.parseLong(bounds[1]));
+            } else {
+                start = Long.parseLong(bounds[0]);
+                if (!bounds[1].isEmpty()) end = Math.min(end, Long.parseLong(bounds[1]));
+            }
+            if (start >= size) {
+                throw (S3Exception) S3Exception.builder()
+                        .message("The requested range is not satisfiable: " + range)
+                        .statusCode(416)
+                        .build();
+            }
+        }
+
+        GetObjectResponse response = GetObjectResponse.builder()
+                .contentLength(end - start + 1)
+                .contentRange(range == null ? null : "bytes " + start + "-" + end + "/" + size)
+                .contentType(contentType(file))
+                .eTag(etag(attributes))
+                .lastModified(attributes.lastModifiedTime().toInstant())
+                .acceptRanges("bytes")
+                .build();
+
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            return new ResponseInputStream<>(response,
+                    AbortableInputStream.create(new FileRangeInputStream(channel, start, end - start + 1)));
+        } catch (NoSuchFileException e) {
+            throw noSuchKey(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void createDirectory(String key) {
+        try {
+            Path marker = objectPath(key);
+            createParents(marker, key);
+            try {
+                Files.createFile(marker);
+            } catch (FileAlreadyExistsException e) {
+                // маркер уже есть: как повторный PUT пустого объекта в S3
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<S3Object> listAllObjects(String key) {
+        List<S3Object> allObjects = new ArrayList<>();
+        String continuationToken = null;
+
+        do {
+            ListObjectsV2Response response = listObjects(key, continuationToken);
+            allObjects.addAll(response.contents());
+            continuationToken = response.nextContinuationToken();
+        } while (continuationToken != null);
+
+        return allObjects;
+    }
+
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key) {
+        return listKeyObjects(key, null, null, null);
+    }
+
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key, int maxKeys) {
+        return listKeyObjects(key, null, null, maxKeys);
+    }
+
+    /**
+     * Читает одну папку: объекты, маркер самой папки и вложенные папки (common prefixes), по порядку ключей.
+     */
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key, String startAfter, String continuationToken, Integer maxKeys) {
+        int max = (maxKeys == null) ? MAX_KEYS : maxKeys;
+        String after = (continuationToken != null) ? continuationToken : startAfter;
+        String directoryKey = key.substring(0, key.lastIndexOf('/') + 1);
+
+        List<S3Object> contents = new ArrayList<>();
+        List<CommonPrefix> commonPrefixes = new ArrayList<>();
+        String[] last = new String[1];
+        boolean truncated;
+
+        try {
+            truncated = !readDirectory(directoryPath(directoryKey), directoryKey, key, after, false, (entryKey, attributes) -> {
+                if (contents.size() + commonPrefixes.size() == max) return false;
+
+                if (attributes == null) {
+                    commonPrefixes.add(CommonPrefix.builder().prefix(entryKey).build());
+                    last[0] = entryKey + LAST_CHARACTER;
+                } else {
+                    contents.add(toS3Object(entryKey, attributes));
+                    last[0] = entryKey;
+                }
+                return true;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return ListObjectsV2Response.builder()
+                .prefix(key)
+                .delimiter("/")
+                .contents(contents)
+                .commonPrefixes(commonPrefixes)
+                .keyCount(contents.size() + commonPrefixes.size())
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? last[0] : null)
+                .build();
+    }
+
+    @Override
+    public ListObjectsV2Response listObjects(String key, String continuationToken) {
+        return listObjects(key, null, continuationToken);
+    }
+
+    /**
+     * Обходит поддерево в порядке ключей, пропуская папки, которые целиком лежат до {@code startAfter},
+     * и останавливается на 1000 объектах.
+     */
+    @Override
+    public ListObjectsV2Response listObjects(String key, String startAfter, String continuationToken) {
+        String after = (continuationToken != null) ? continuationToken : startAfter;
+        String directoryKey = key.substring(0, key.lastIndexOf('/') + 1);
+
+        List<S3Object> contents = new ArrayList<>();
+        try {
+            walk(directoryPath(directoryKey), directoryKey, key, after, contents);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        boolean truncated = contents.size() > MAX_KEYS;
+        if (truncated) {
+            contents = contents.subList(0, MAX_KEYS);
+        }
+
+        return ListObjectsV2Response.builder()
+                .prefix(key)
+                .contents(contents)
+                .keyCount(contents.size())
+                .isTruncated(truncated)
+                .nextContinuationToken(truncated ? contents.getLast().key() : null)
+                .build();
+    }
+
+    @Override
+    public void copyObject(String fromKey, String toKey, long size) {
+        Path source = objectPath(fromKey);
+        Path target = objectPath(toKey);
+        Path tempFile = null;
+
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            tempFile = Files.createTempFile(temp, "copy-", ".tmp");
+            try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                long length = in.size();
+                for (long position = 0; position < length; ) {
+                    position += in.transferTo(position, length - position, out);
+                }
+                out.force(false);
+            }
+            writeContentType(tempFile, contentType(source));
+
+            moveIntoPlace(tempFile, target, toKey);
+            tempFile = null;
+        } catch (NoSuchFileException e) {
+            throw noSuchKey(fromKey);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    @Override
+    public String createMultipartUpload(String key, String contentType) {
+        objectPath(key);
+        String uploadId = UUID.randomUUID().toString();
+
+        try {
+            Path parts = Files.createDirectory(temp.resolve(MULTIPART_PREFIX + uploadId));
+            if (contentType != null) {
+                Files.writeString(parts.resolve(CONTENT_TYPE_ATTRIBUTE), contentType);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream data, long contentLength) {
+        Path parts = multipartPath(uploadId);
+        Path tempFile = null;
+
+        try {
+            tempFile = Files.createTempFile(parts, "put-", ".tmp");
+            try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                long written = data.transferTo(Channels.newOutputStream(out));
+                if (written != contentLength) {
+                    throw new IOException("Expected " + contentLength + " bytes for part " + partNumber + " of key " + key + ", got " + written);
+                }
+                out.force(false);
+            }
+
+            Path part = parts.resolve(PART_PREFIX + partNumber);
+            Files.move(tempFile, part, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            tempFile = null;
+            return etag(Files.readAttributes(part, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            throw noSuchUpload(uploadId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    @Override
+    public String completeMultipartUpload(String key, String uploadId, List<CompletedPart> parts) {
+        Path partsPath = multipartPath(uploadId);
+        Path target = objectPath(key);
+        Path tempFile = null;
+
+        try {
+            tempFile = Files.createTempFile(temp, "complete-", ".tmp");
+            try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                for (CompletedPart completed : parts.stream().sorted(Comparator.comparing(CompletedPart::partNumber)).toList()) {
+                    Path part = partsPath.resolve(PART_PREFIX + completed.partNumber());
+                    try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                        if (!etag(Files.readAttributes(part, BasicFileAttributes.class)).equals(completed.eTag())) {
+                            throw invalidPart(completed.partNumber());
+                        }
+                        long length = in.size();
+                        for (long position = 0; position < length; ) {
+                            position += in.transferTo(position, length - position, out);
+                        }
+                    } catch (NoSuchFileException e) {
+                        throw invalidPart(completed.partNumber());
+                    }
+                }
+                out.force(false);
+            }
+            Path contentType = partsPath.resolve(CONTENT_TYPE_ATTRIBUTE);
+            if (Files.exists(contentType)) {
+                writeContentType(tempFile, Files.readString(contentType));
+            }
+
+            moveIntoPlace(tempFile, target, key);
+            tempFile = null;
+            FileSystemUtils.deleteRecursively(partsPath);
+            return etag(Files.readAttributes(target, BasicFileAttributes.class));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        try {
+            FileSystemUtils.deleteRecursively(multipartPath(uploadId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Папка частей загрузки; идентификатор — только UUID, выданный {@link #createMultipartUpload}.
+     */
+    private Path multipartPath(String uploadId) {
+        try {
+            if (UUID.fromString(uploadId).toString().equals(uploadId)) {
+                Path parts = temp.resolve(MULTIPART_PREFIX + uploadId);
+                if (Files.isDirectory(parts)) {
+                    return parts;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // не UUID
+        }
+        throw noSuchUpload(uploadId);
+    }
+
+    /**
+     * Файл объекта; для ключа папки — её маркер.
+     *
+     * @throws S3Exception если ключ выходит за пределы корня
+     */
+    private Path objectPath(String key) {
+        if (key.endsWith("/")) {
+            return directoryPath(key).resolve(MARKER);
+        }
+        return resolve(key);
+    }
+
+    private Path directoryPath(String directoryKey) {
+        return directoryKey.isEmpty() ? root : resolve(directoryKey.substring(0, directoryKey.length() - 1));
+    }
+
+    private Path resolve(String key) {
+        Path path = root;
+        for (String segment : key.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                throw invalidKey(key);
+            }
+            try {
+                path = path.resolve(segment.startsWith(MARKER) ? MARKER + segment : segment);
+            } catch (InvalidPathException e) {
+                throw invalidKey(key);
+            }
+        }
+
+        if (path.startsWith(temp)) {
+            throw invalidKey(key);
+        }
+        return path;
+    }
+
+    private BasicFileAttributes readObjectAttributes(String key, Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                throw noSuchKey(key);
+            }
+            return attributes;
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            throw noSuchKey(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Передаёт в {@code consumer} по порядку ключей содержимое папки, ключи которого начинаются с {@code prefix}
+     * и идут после {@code after}; для вложенных папок атрибуты {@code null}. {@code subtrees}: вложенная папка
+     * нужна, пока после {@code after} есть её содержимое, а не только её собственный ключ.
+     * <p>
+     * Имена сравниваются с {@code after} до чтения атрибутов, а атрибуты читаются только у переданных записей,
+     * поэтому страница в середине большой папки не стоит чтения атрибутов всех её файлов. Порядок ключей зависит
+     * от типа ({@code a/} идёт после {@code a.txt}), поэтому имя сначала встаёт в очередь по ключу файла, а папка,
+     * узнав свой тип, — заново, по ключу со {@code /}.
+     *
+     * @return {@code false}, если {@code consumer} прекратил обход
+     */
+    private boolean readDirectory(Path directory, String directoryKey, String prefix, String after, boolean subtrees,
+                                  EntryConsumer consumer) throws IOException {
+        if (directory.equals(root) && !Files.isDirectory(root)) {
+            return true;
+        }
+
+        PriorityQueue<Entry> pending = new PriorityQueue<>(Comparator.comparing(Entry::key, KEY_ORDER));
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path child : stream) {
+                if (child.equals(temp)) continue;
+
+                String name = child.getFileName().toString();
+                if (name.equals(MARKER)) {
+                    if (directoryKey.startsWith(prefix) && isAfter(directoryKey, after)) {
+                        pending.add(new Entry(directoryKey, child, false));
+                    }
+                    continue;
+                }
+
+                // тип ещё неизвестен: отбрасываем, только если не подходит ни ключ файла, ни ключ папки
+                String childKey = directoryKey + decode(name);
+                if ((childKey.startsWith(prefix) || (childKey + "/").startsWith(prefix))
+                        && isAfter(directoryEnd(childKey + "/", subtrees), after)) {
+                    pending.add(new Entry(childKey, child, false));
+                }
+            }
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            // такой папки нет: пустой листинг, как в S3
+            return true;
+        }
+
+        while (!pending.isEmpty()) {
+            Entry entry = pending.poll();
+            if (entry.directory()) {
+                if (!consumer.accept(entry.key(), null)) return false;
+                continue;
+            }
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.path(), BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // удалён во время листинга
+                continue;
+            }
+
+            if (attributes.isDirectory() && !entry.key().equals(directoryKey)) {
+                String key = entry.key() + "/";
+                if (key.startsWith(prefix) && isAfter(directoryEnd(key, subtrees), after)) {
+                    pending.add(new Entry(key, entry.path(), true));
+                }
+            } else if (entry.key().startsWith(prefix) && isAfter(entry.key(), after)) {
+                // ключ файла — нижняя граница всех ключей в очереди, поэтому он следующий
+                if (!consumer.accept(entry.key(), attributes)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code false}, если набрано больше {@value #MAX_KEYS} объектов и обход надо прекратить
+     */
+    private boolean walk(Path directory, String directoryKey, String prefix, String after, List<S3Object> contents) throws IOException {
+        return readDirectory(directory, directoryKey, prefix, after, true, (key, attributes) -> {
+            if (attributes != null) {
+                contents.add(toS3Object(key, attributes));
+                return contents.size() <= MAX_KEYS;
+            }
+            // "" как префикс: всё содержимое вложенной папки уже отфильтровано по prefix через её ключ
+            return walk(directoryPath(key), key, "", after, contents);
+        });
+    }
+
+    /**
+     * Запись очереди {@link #readDirectory}: {@code directory} — вложенная папка с окончательным ключом,
+     * иначе тип ещё не прочитан и {@code key} — ключ файла (для маркера — ключ самой папки).
+     */
+    private record Entry(String key, Path path, boolean directory) {
+    }
+
+    @FunctionalInterface
+    private interface EntryConsumer {
+        /**
+         * @param attributes {@code null} для вложенной папки
+         * @return {@code false}, чтобы прекратить обход
+         */
+        boolean accept(String key, BasicFileAttributes attributes) throws IOException;
+    }
+
+    private static boolean isAfter(String key, String after) {
+        return after == null || KEY_ORDER.compare(key, after) > 0;
+    }
+
+    // последний возможный ключ папки: сама папка или, с содержимым, всё под ней
+    private static String directoryEnd(String directoryKey, boolean subtrees) {
+        return subtrees ? directoryKey + LAST_CHARACTER : directoryKey;
+    }
+
+    private static S3Object toS3Object(String key, BasicFileAttributes attributes) {
+        return S3Object.builder()
+                .key(key)
+                .size(attributes.size())
+                .eTag(etag(attributes))
+                .lastModified(attributes.lastModifiedTime().toInstant())
+                .build();
+    }
+
+    /**
+     * Переносит готовый файл на место объекта. Если папку назначения одновременно удаляет {@link #prune},
+     * она создаётся заново.
+     *
+     * @throws S3Exception 409, если путь объекта занят папкой ({@code a} при существующей {@code a/})
+     */
+    private void moveIntoPlace(Path tempFile, Path target, String key) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            createParents(target, key);
+            if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+                throw keyConflict(key);
+            }
+            try {
+                Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return;
+            } catch (NoSuchFileException e) {
+                if (attempt == 3) throw e;
+            } catch (DirectoryNotEmptyException e) {
+                throw keyConflict(key);
+            }
+        }
+    }
+
+    /**
+     * @throws S3Exception 409, если одна из папок пути занята файлом ({@code a/b} при существующем {@code a})
+     */
+    private void createParents(Path file, String key) throws IOException {
+        try {
+            Files.createDirectories(file.getParent());
+        } catch (FileAlreadyExistsException | NotDirectoryException e) {
+            throw keyConflict(key);
+        }
+    }
+
+    /**
+     * Удаляет опустевшие папки вверх до корня: папка без маркера и объектов в S3 не существует.
+     */
+    private void prune(Path directory) {
+        while (directory != null && directory.startsWith(root) && !directory.equals(root)) {
+            try {
+                Files.delete(directory);
+            } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("failed to remove empty directory: " + directory + " (" + e.getMessage() + ")");
+                return;
+            }
+            directory = directory.getParent();
+        }
+    }
+
+    private static String contentType(Path file) {
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+            if (view != null && view.list().contains(CONTENT_TYPE_ATTRIBUTE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(view.size(CONTENT_TYPE_ATTRIBUTE));
+                view.read(CONTENT_TYPE_ATTRIBUTE, buffer);
+                return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // файловая система без пользовательских атрибутов
+        }
+        return DEFAULT_CONTENT_TYPE;
+    }
+
+    private static void writeContentType(Path file, String contentType) {
+        if (contentType == null) {
+            return;
+        }
+
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+            if (view != null) {
+                view.write(CONTENT_TYPE_ATTRIBUTE, StandardCharsets.UTF_8.encode(contentType));
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("content type not stored for: " + file + " (" + e.getMessage() + ")");
+        }
+    }
+
+    private static String etag(BasicFileAttributes attributes) {
+        return "\"" + Long.toHexString(attributes.size()) + "-"
+                + Long.toHexString(attributes.lastModifiedTime().toInstant().toEpochMilli()) + "\"";
+    }
+
+    private static String decode(String name) {
+        return name.startsWith(MARKER) ? name.substring(MARKER.length()) : name;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("failed to delete temporary file: " + file);
+        }
+    }
+
+    private static NoSuchKeyException noSuchKey(String key) {
+        return (NoSuchKeyException) NoSuchKeyException.builder()
+                .message("The specified key does not exist: " + key)
+                .statusCode(404)
+                .build();
+    }
+
+    private static NoSuchUploadException noSuchUpload(String uploadId) {
+        return (NoSuchUploadException) NoSuchUploadException.builder()
+                .message("The specified multipart upload does not exist: " + uploadId)
+                .statusCode(404)
+                .build();
+    }
+
+    private static S3Exception invalidPart(int partNumber) {
+        return (S3Exception) S3Exception.builder()
+                .message("One or more of the specified parts could not be found: " + partNumber)
+                .statusCode(400)
+                .build();
+    }
+
+    private static S3Exception keyConflict(String key) {
+        return (S3Exception) S3Exception.builder()
+                .message("A file and a folder cannot have the same name: " + key)
+                .statusCode(409)
+                .build();
+    }
+
+    private static S3Exception invalidKey(String key) {
+        return (S3Exception) S3Exception.builder()
+                .message("Invalid key: " + key)
+                .statusCode(400)
+                .build();
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    /**
+     * Читает диапазон файла с позиции канала, без пропуска байтов через чтение.
+     * {@link #transferTo} отдаёт данные через {@link FileChannel#transferTo}, что даёт передачу без копирования,
+     * если поток назначения построен над каналом (файл, сокет).
+     */
+    private static class FileRangeInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long position;
+
+        private long remaining;
+
+        FileRangeInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return (read(single, 0, 1) < 0) ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (read < 0) {
+                remaining = 0;
+                return -1;
+            }
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            long transferred = 0;
+            var target = Channels.newChannel(out);
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) break;
+                position += sent;
+                remaining -= sent;
+                transferred += sent;
+            }
+            return transferred;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
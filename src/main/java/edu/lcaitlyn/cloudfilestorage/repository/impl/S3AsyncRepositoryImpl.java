@@ -0,0 +1,286 @@
+package edu.lcaitlyn.cloudfilestorage.repository.impl;
+
+import edu.lcaitlyn.cloudfilestorage.config.S3Properties;
+import edu.lcaitlyn.cloudfilestorage.repository.MultipartUploadRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3AsyncRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CopyRequest;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Реализация на {@link S3AsyncClient} (CRT, если доступен) и {@link S3TransferManager}.
+ * Разбиение на части и параллельная передача частей для больших PUT/GET/COPY выполняются клиентом.
+ * Методы {@link S3Repository} ждут завершения соответствующих future, поэтому остальной код работает без изменений.
+ */
+@Repository
+@ConditionalOnProperty(name = "aws.s3.client", havingValue = "async")
+public class S3AsyncRepositoryImpl implements S3Repository, S3AsyncRepository, MultipartUploadRepository {
+
+    private final S3AsyncClient s3;
+
+    private final S3TransferManager transferManager;
+
+    private final String bucketName;
+
+    // читает InputStream загрузки в буферы клиента; поток на загрузку, поэтому не общий storageExecutor
+    private final ExecutorService uploadReaders = Executors.newCachedThreadPool(new CustomizableThreadFactory("s3-upload-"));
+
+    public S3AsyncRepositoryImpl(S3AsyncClient s3, S3TransferManager transferManager, S3Properties s3Properties) {
+        this.s3 = s3;
+        this.transferManager = transferManager;
+        this.bucketName = s3Properties.getBucket();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadReaders.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<HeadObjectResponse> getObjectAsync(String key) {
+        return s3.headObject(HeadObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<String> putObjectAsync(String key, InputStream data, long contentLength, String contentType) {
+        PutObjectRequest objectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .build();
+
+        return transferManager.upload(UploadRequest.builder()
+                        .putObjectRequest(objectRequest)
+                        .requestBody(AsyncRequestBody.fromInputStream(data, contentLength, uploadReaders))
+                        .build())
+                .completionFuture()
+                .thenApply(upload -> upload.response().eTag());
+    }
+
+    @Override
+    public CompletableFuture<ResponseInputStream<GetObjectResponse>> downloadObjectAsync(String key, String range) {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range(range)
+                .build();
+
+        return s3.getObject(getObjectRequest, AsyncResponseTransformer.toBlockingInputStream());
+    }
+
+    @Override
+    public CompletableFuture<Void> createDirectoryAsync(String key) {
+        PutObjectRequest objectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentLength(0L)
+                .build();
+
+        return s3.putObject(objectRequest, AsyncRequestBody.empty())
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> copyObjectAsync(String fromKey, String toKey) {
+        CopyObjectRequest request = CopyObjectRequest.builder()
+                .sourceBucket(bucketName)
+                .sourceKey(fromKey)
+                .destinationBucket(bucketName)
+                .destinationKey(toKey)
+                .build();
+
+        return transferManager.copy(CopyRequest.builder().copyObjectRequest(request).build())
+                .completionFuture()
+                .thenApply(copy -> null);
+    }
+
+    @Override
+    public CompletableFuture<List<S3Error>> deleteObjectsAsync(List<String> keys) {
+        List<ObjectIdentifier> toDelete = keys.stream()
+                .map(key -> ObjectIdentifier.builder().key(key).build())
+                .toList();
+
+        return s3.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        .delete(Delete.builder().objects(toDelete).quiet(true).build())
+                        .build())
+                .thenApply(DeleteObjectsResponse::errors);
+    }
+
+    @Override
+    public HeadObjectResponse getObject(String key) {
+        return join(getObjectAsync(key));
+    }
+
+    @Override
+    public String putObject(String key, InputStream data, long contentLength, String contentType) {
+        return join(putObjectAsync(key, data, contentLength, contentType));
+    }
+
+    @Override
+    public void deleteObject(String key) {
+        join(s3.deleteObject(DeleteObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build()));
+    }
+
+    @Override
+    public List<S3Error> deleteObjects(List<String> keys) {
+        return join(deleteObjectsAsync(keys));
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadObject(String key) {
+        return downloadObject(key, null);
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadObject(String key, String range) {
+        return join(downloadObjectAsync(key, range));
+    }
+
+    @Override
+    public void createDirectory(String key) {
+        join(createDirectoryAsync(key));
+    }
+
+    @Override
+    public List<S3Object> listAllObjects(String key) {
+        List<S3Object> allObjects = new ArrayList<>();
+        String continuationToken = null;
+
+        do {
+            ListObjectsV2Response response = listObjects(key, continuationToken);
+            allObjects.addAll(response.contents());
+            continuationToken = response.nextContinuationToken();
+        } while (continuationToken != null);
+
+        return allObjects;
+    }
+
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key) {
+        return listKeyObjects(key, null, null, null);
+    }
+
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key, int maxKeys) {
+        return listKeyObjects(key, null, null, maxKeys);
+    }
+
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key, String startAfter, String continuationToken, Integer maxKeys) {
+        return join(s3.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(key)
+                .delimiter("/")
+                .startAfter(startAfter)
+                .continuationToken(continuationToken)
+                .maxKeys(maxKeys)
+                .build()));
+    }
+
+    @Override
+    public ListObjectsV2Response listObjects(String key, String continuationToken) {
+        return listObjects(key, null, continuationToken);
+    }
+
+    @Override
+    public ListObjectsV2Response listObjects(String key, String startAfter, String continuationToken) {
+        return join(s3.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(key)
+                .startAfter(startAfter)
+                .continuationToken(continuationToken)
+                .build()));
+    }
+
+    @Override
+    public void copyObject(String fromKey, String toKey, long size) {
+        join(copyObjectAsync(fromKey, toKey));
+    }
+
+    @Override
+    public String createMultipartUpload(String key, String contentType) {
+        return join(s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build()))
+                .uploadId();
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream data, long contentLength) {
+        UploadPartRequest partRequest = UploadPartRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength(contentLength)
+                .build();
+
+        return join(s3.uploadPart(partRequest, AsyncRequestBody.fromInputStream(data, contentLength, uploadReaders))).eTag();
+    }
+
+    @Override
+    public String completeMultipartUpload(String key, String uploadId, List<CompletedPart> parts) {
+        return join(s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                        .build()))
+                .eTag();
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        join(s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .build()));
+    }
+
+    /**
+     * Ждёт future и пробрасывает исходное исключение (S3Exception, UncheckedIOException и т.п.),
+     * как это делают методы синхронного клиента.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof IOException io) throw new UncheckedIOException(io);
+            if (cause instanceof Error error) throw error;
+            throw e;
+        }
+    }
+}
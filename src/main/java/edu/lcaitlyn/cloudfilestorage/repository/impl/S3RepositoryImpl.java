@@ -1,18 +1,29 @@
 package edu.lcaitlyn.cloudfilestorage.repository.impl;
 
 import edu.lcaitlyn.cloudfilestorage.config.S3Properties;
+import edu.lcaitlyn.cloudfilestorage.repository.MultipartUploadRepository;
 import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
 @Repository
-public class S3RepositoryImpl implements S3Repository {
+@ConditionalOnProperty(name = "aws.s3.client", havingValue = "sync", matchIfMissing = true)
+public class S3RepositoryImpl implements S3Repository, MultipartUploadRepository {
+
+    private static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
 
     private final S3Client s3;
 
@@ -20,10 +31,23 @@ public class S3RepositoryImpl implements S3Repository {
 
     private final String bucketName;
 
-    public S3RepositoryImpl(S3Client s3, S3Properties s3Properties) {
+    private final Counter uploadParts;
+
+    private final Counter copyParts;
+
+    public S3RepositoryImpl(S3Client s3, S3Properties s3Properties, MeterRegistry meterRegistry) {
         this.s3 = s3;
         this.s3Properties = s3Properties;
         this.bucketName = s3Properties.getBucket();
+        this.uploadParts = multipartParts(meterRegistry, "upload");
+        this.copyParts = multipartParts(meterRegistry, "copy");
+    }
+
+    private static Counter multipartParts(MeterRegistry meterRegistry, String operation) {
+        return Counter.builder("storage.s3.multipart.parts")
+                .description("Parts sent by multipart uploads and copies")
+                .tag("operation", operation)
+                .register(meterRegistry);
     }
 
     @Override
@@ -37,25 +61,128 @@ public class S3RepositoryImpl implements S3Repository {
     }
 
     @Override
-    public void putObject(String key, byte[] data, String contentType) {
-        PutObjectRequest objectRequest = PutObjectRequest.builder()
+    public String putObject(String key, InputStream data, long contentLength, String contentType) {
+        int partSize = (int) s3Properties.getPartSize().toBytes();
+
+        if (contentLength <= partSize) {
+            PutObjectRequest objectRequest = PutObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .contentType(contentType)
+                    .contentLength(contentLength)
+                    .build();
+
+            return s3.putObject(objectRequest, RequestBody.fromInputStream(data, contentLength)).eTag();
+        }
+
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                .uploadId();
+
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            byte[] buffer = new byte[partSize];
+            int partNumber = 1;
+            int read;
+
+            while ((read = data.readNBytes(buffer, 0, partSize)) > 0) {
+                UploadPartRequest partRequest = UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) read)
+                        .build();
+
+                UploadPartResponse partResponse = s3.uploadPart(partRequest,
+                        RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, read), read));
+
+                parts.add(CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(partResponse.eTag())
+                        .build());
+                uploadParts.increment();
+                partNumber++;
+            }
+
+            return s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build())
+                    .eTag();
+        } catch (IOException e) {
+            abortMultipartUpload(key, uploadId, e);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            abortMultipartUpload(key, uploadId, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public String createMultipartUpload(String key, String contentType) {
+        return s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                .uploadId();
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream data, long contentLength) {
+        UploadPartRequest partRequest = UploadPartRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .contentType(contentType)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength(contentLength)
                 .build();
 
-        s3.putObject(objectRequest, RequestBody.fromBytes(data));
+        String etag = s3.uploadPart(partRequest, RequestBody.fromInputStream(data, contentLength)).eTag();
+        uploadParts.increment();
+        return etag;
     }
 
     @Override
-    public void deleteObject(String key) {
-        HeadObjectRequest headReq = HeadObjectRequest.builder()
+    public String completeMultipartUpload(String key, String uploadId, List<CompletedPart> parts) {
+        return s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                        .build())
+                .eTag();
+    }
+
+    @Override
+    public void abortMultipartUpload(String key, String uploadId) {
+        s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
                 .bucket(bucketName)
                 .key(key)
-                .build();
+                .uploadId(uploadId)
+                .build());
+    }
 
-        s3.headObject(headReq);
+    private void abortMultipartUpload(String key, String uploadId, Exception cause) {
+        try {
+            s3.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
 
+    @Override
+    public void deleteObject(String key) {
         s3.deleteObject(DeleteObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
@@ -63,29 +190,29 @@ public class S3RepositoryImpl implements S3Repository {
     }
 
     @Override
-    public void deleteDirectory(String key) {
-        List<S3Object> objects = s3.listObjectsV2(ListObjectsV2Request.builder()
-                        .bucket(bucketName)
-                        .prefix(key)
-                        .build()
-                )
-                .contents();
-
-        List<ObjectIdentifier> toDelete = objects.stream()
-                .map(obj -> ObjectIdentifier.builder().key(obj.key()).build())
+    public List<S3Error> deleteObjects(List<String> keys) {
+        List<ObjectIdentifier> toDelete = keys.stream()
+                .map(key -> ObjectIdentifier.builder().key(key).build())
                 .toList();
 
-        s3.deleteObjects(DeleteObjectsRequest.builder()
-                .bucket(bucketName)
-                .delete(Delete.builder().objects(toDelete).build())
-                .build());
+        return s3.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        .delete(Delete.builder().objects(toDelete).quiet(true).build())
+                        .build())
+                .errors();
     }
 
     @Override
     public ResponseInputStream<GetObjectResponse> downloadObject(String key) {
+        return downloadObject(key, null);
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> downloadObject(String key, String range) {
         GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                 .bucket(bucketName)
                 .key(key)
+                .range(range)
                 .build();
 
         return s3.getObject(getObjectRequest);
@@ -125,6 +252,37 @@ public class S3RepositoryImpl implements S3Repository {
         return s3.listObjectsV2(request);
     }
 
+    @Override
+    public ListObjectsV2Response listKeyObjects(String key, String startAfter, String continuationToken, Integer maxKeys) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(key)
+                .delimiter("/")
+                .startAfter(startAfter)
+                .continuationToken(continuationToken)
+                .maxKeys(maxKeys)
+                .build();
+
+        return s3.listObjectsV2(request);
+    }
+
+    @Override
+    public ListObjectsV2Response listObjects(String key, String continuationToken) {
+        return listObjects(key, null, continuationToken);
+    }
+
+    @Override
+    public ListObjectsV2Response listObjects(String key, String startAfter, String continuationToken) {
+        ListObjectsV2Request request = ListObjectsV2Request.builder()
+                .bucket(bucketName)
+                .prefix(key)
+                .startAfter(startAfter)
+                .continuationToken(continuationToken)
+                .build();
+
+        return s3.listObjectsV2(request);
+    }
+
     @Override
     public List<S3Object> listAllObjects(String key) {
         List<S3Object> allObjects = new ArrayList<>();
@@ -149,14 +307,61 @@ public class S3RepositoryImpl implements S3Repository {
     }
 
     @Override
-    public void copyObject(String fromKey, String toKey) {
-        CopyObjectRequest request = CopyObjectRequest.builder()
-                .sourceBucket(bucketName)
-                .sourceKey(fromKey)
-                .destinationBucket(bucketName)
-                .destinationKey(toKey)
-                .build();
+    public void copyObject(String fromKey, String toKey, long size) {
+        if (size <= MAX_COPY_OBJECT_SIZE) {
+            CopyObjectRequest request = CopyObjectRequest.builder()
+                    .sourceBucket(bucketName)
+                    .sourceKey(fromKey)
+                    .destinationBucket(bucketName)
+                    .destinationKey(toKey)
+                    .build();
+
+            s3.copyObject(request);
+            return;
+        }
+
+        String uploadId = s3.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(toKey)
+                        .contentType(getObject(fromKey).contentType())
+                        .build())
+                .uploadId();
+
+        try {
+            long partSize = s3Properties.getCopyPartSize().toBytes();
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+
+            for (long start = 0; start < size; start += partSize) {
+                long end = Math.min(start + partSize, size) - 1;
+
+                UploadPartCopyResponse response = s3.uploadPartCopy(UploadPartCopyRequest.builder()
+                        .sourceBucket(bucketName)
+                        .sourceKey(fromKey)
+                        .destinationBucket(bucketName)
+                        .destinationKey(toKey)
+                        .uploadId(uploadId)
+                        .partNumber(partNumber)
+                        .copySourceRange("bytes=" + start + "-" + end)
+                        .build());
+
+                parts.add(CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(response.copyPartResult().eTag())
+                        .build());
+                copyParts.increment();
+                partNumber++;
+            }
 
-        s3.copyObject(request);
+            s3.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(toKey)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (RuntimeException e) {
+            abortMultipartUpload(toKey, uploadId, e);
+            throw e;
+        }
     }
 }
@@ -0,0 +1,119 @@
+package edu.lcaitlyn.cloudfilestorage.repository.trace;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Вызовы S3, сделанные в рамках одного HTTP-запроса (или одной проверки в тесте): число, суммарное время
+ * и переданные байты по каждому типу вызова (HEAD, GET, PUT, POST, LIST, COPY, DELETE).
+ * <p>
+ * Текущая трасса хранится в ThreadLocal потока запроса; задачи, отправленные на storageExecutor
+ * и {@link edu.lcaitlyn.cloudfilestorage.service.impl.PreflightChecks}, получают её через {@link #wrap(Runnable)}.
+ */
+public class S3CallTrace {
+
+    private static final ThreadLocal<S3CallTrace> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Calls> calls = new TreeMap<>();
+
+    public static S3CallTrace begin() {
+        S3CallTrace trace = new S3CallTrace();
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return трасса текущего потока или {@code null}, если вызовы сейчас не отслеживаются
+     */
+    public static S3CallTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Переносит трассу вызывающего потока в задачу, выполняемую в другом потоке.
+     */
+    public static Runnable wrap(Runnable task) {
+        S3CallTrace trace = CURRENT.get();
+        if (trace == null) {
+            return task;
+        }
+
+        return () -> {
+            S3CallTrace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                task.run();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        S3CallTrace trace = CURRENT.get();
+        if (trace == null) {
+            return task;
+        }
+
+        return () -> {
+            S3CallTrace previous = CURRENT.get();
+            CURRENT.set(trace);
+            try {
+                return task.call();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public synchronized void record(String operation, int count, long nanos, long bytes) {
+        Calls stats = calls.computeIfAbsent(operation, op -> new Calls());
+        stats.count += count;
+        stats.nanos += nanos;
+        stats.bytes += bytes;
+    }
+
+    public synchronized int count(String operation) {
+        Calls stats = calls.get(operation);
+        return (stats == null) ? 0 : stats.count;
+    }
+
+    public synchronized int count() {
+        return calls.values().stream().mapToInt(stats -> stats.count).sum();
+    }
+
+    /**
+     * @return число вызовов по типам, например {@code {HEAD=1, LIST=2}}
+     */
+    public synchronized Map<String, Integer> counts() {
+        return calls.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().count, (a, b) -> a, TreeMap::new));
+    }
+
+    /**
+     * Например {@code 3 calls, 41 ms, 0 bytes (HEAD 1, LIST 2)}.
+     */
+    @Override
+    public synchronized String toString() {
+        long nanos = calls.values().stream().mapToLong(stats -> stats.nanos).sum();
+        long bytes = calls.values().stream().mapToLong(stats -> stats.bytes).sum();
+
+        return count() + " calls, " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms, " + bytes + " bytes"
+                + calls.entrySet().stream()
+                .map(e -> e.getKey() + " " + e.getValue().count)
+                .collect(Collectors.joining(", ", " (", ")"));
+    }
+
+    private static class Calls {
+        int count;
+        long nanos;
+        long bytes;
+    }
+}
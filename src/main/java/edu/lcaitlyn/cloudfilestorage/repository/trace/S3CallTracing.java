@@ -0,0 +1,149 @@
+package edu.lcaitlyn.cloudfilestorage.repository.trace;
+
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.util.ClassUtils;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Оборачивает репозиторий S3 в прокси, который записывает каждый вызов в {@link S3CallTrace#current()}
+ * и в метрики: таймер {@code storage.s3.requests} (operation, outcome) и размер переданных данных
+ * {@code storage.s3.payload} (operation). Прокси реализует все интерфейсы репозитория, поэтому подходит и для
+ * {@link S3Repository}, и для {@link edu.lcaitlyn.cloudfilestorage.repository.S3AsyncRepository}.
+ * <p>
+ * Время вызова — до получения ответа (для GET — до начала тела). {@code listAllObjects} считается
+ * по LIST на каждую 1000 полученных объектов, как он и обращается к S3.
+ */
+public final class S3CallTracing {
+
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    private S3CallTracing() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T trace(T repository, MeterRegistry meterRegistry) {
+        // getAllInterfaces: бин может уже быть CGLIB-прокси (@Repository), чьи собственные интерфейсы не включают S3Repository
+        return (T) Proxy.newProxyInstance(
+                repository.getClass().getClassLoader(),
+                ClassUtils.getAllInterfacesForClass(repository.getClass()),
+                new Handler(repository, meterRegistry));
+    }
+
+    private record Handler(Object target, MeterRegistry meterRegistry) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String operation = operationOf(method.getName());
+            if (operation == null) {
+                return call(method, args);
+            }
+
+            S3CallTrace trace = S3CallTrace.current();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = call(method, args);
+            } catch (Throwable e) {
+                record(trace, operation, 1, start, 0, e);
+                throw e;
+            }
+
+            if (result instanceof CompletableFuture<?> future) {
+                return future.whenComplete((value, e) ->
+                        record(trace, operation, 1, start, bytesOf(method, args, value), e));
+            }
+
+            int count = (result instanceof List<?> objects && method.getName().equals("listAllObjects"))
+                    ? Math.max(1, (objects.size() + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE)
+                    : 1;
+            record(trace, operation, count, start, bytesOf(method, args, result), null);
+            return result;
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void record(S3CallTrace trace, String operation, int count, long start, long bytes, Throwable error) {
+            long nanos = System.nanoTime() - start;
+            if (trace != null) {
+                trace.record(operation, count, nanos, bytes);
+            }
+
+            Timer.builder("storage.s3.requests")
+                    .description("S3 calls by operation and outcome")
+                    .tag("operation", operation)
+                    .tag("outcome", outcomeOf(error))
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+
+            if (bytes > 0) {
+                DistributionSummary.builder("storage.s3.payload")
+                        .description("Bytes sent to S3 by PUT and received by GET")
+                        .baseUnit("bytes")
+                        .tag("operation", operation)
+                        .register(meterRegistry)
+                        .record(bytes);
+            }
+        }
+    }
+
+    private static String operationOf(String method) {
+        return switch (method.replace("Async", "")) {
+            case "getObject" -> "HEAD";
+            case "downloadObject" -> "GET";
+            case "putObject", "createDirectory", "uploadPart" -> "PUT";
+            case "createMultipartUpload", "completeMultipartUpload" -> "POST";
+            case "listAllObjects", "listKeyObjects", "listObjects" -> "LIST";
+            case "copyObject" -> "COPY";
+            case "deleteObject", "deleteObjects", "abortMultipartUpload" -> "DELETE";
+            default -> null;
+        };
+    }
+
+    private static String outcomeOf(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+
+        if (error == null) return "success";
+        if (error instanceof NoSuchKeyException) return "not_found";
+        if (error instanceof S3Exception e && e.statusCode() >= 500) return "server_error";
+        if (error instanceof S3Exception) return "client_error";
+        return "error";
+    }
+
+    private static long bytesOf(Method method, Object[] args, Object result) {
+        if (method.getName().startsWith("putObject")) {
+            return (long) args[2];
+        }
+        if (method.getName().equals("uploadPart")) {
+            return (long) args[4];
+        }
+        if (result instanceof ResponseInputStream<?> stream
+                && stream.response() instanceof GetObjectResponse response
+                && response.contentLength() != null) {
+            return response.contentLength();
+        }
+        return 0;
+    }
+}
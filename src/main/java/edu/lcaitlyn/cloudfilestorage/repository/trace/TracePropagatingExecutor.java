@@ -0,0 +1,49 @@
+package edu.lcaitlyn.cloudfilestorage.repository.trace;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Исполнитель, задачи которого выполняются с {@link S3CallTrace} отправившего их потока,
+ * поэтому вызовы S3 из параллельных задач попадают в трассу исходного запроса.
+ */
+public class TracePropagatingExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    public TracePropagatingExecutor(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(S3CallTrace.wrap(command));
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -3,25 +3,81 @@ package edu.lcaitlyn.cloudfilestorage.service;
 import edu.lcaitlyn.cloudfilestorage.DTO.DownloadResourceDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.request.MoveResourceRequestDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.request.UploadSessionRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.DirectoryResponseDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.UploadSessionResponseDTO;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.List;
 
 @Service
 public interface FileService {
 
+    @FunctionalInterface
+    interface ResourceConsumer {
+        void accept(ResourceResponseDTO resource) throws IOException;
+
+        /**
+         * Вызывается после каждой прочитанной страницы, пока читается следующая.
+         */
+        default void flush() throws IOException {
+        }
+    }
+
+    /**
+     * Результат, который читается страницами по мере записи в ответ, а не собирается в список целиком.
+     */
+    @FunctionalInterface
+    interface ResourceStream {
+        void forEach(ResourceConsumer consumer) throws IOException;
+    }
+
     List<ResourceResponseDTO> uploadFile(ResourceRequestDTO request);
 
+    /**
+     * Начинает загрузку одного файла фрагментами ({@code path}, {@code name}, {@code size}).
+     */
+    UploadSessionResponseDTO createUploadSession(UploadSessionRequestDTO request);
+
+    /**
+     * @return сессия со списком уже полученных фрагментов
+     */
+    UploadSessionResponseDTO getUploadSession(UploadSessionRequestDTO request);
+
+    /**
+     * Принимает фрагмент {@code chunk}; фрагменты передаются в любом порядке и параллельно,
+     * повторная передача фрагмента заменяет его.
+     */
+    void uploadChunk(UploadSessionRequestDTO request);
+
+    /**
+     * Собирает файл из всех фрагментов и закрывает сессию.
+     */
+    ResourceResponseDTO completeUploadSession(UploadSessionRequestDTO request);
+
+    void abortUploadSession(UploadSessionRequestDTO request);
+
     ResourceResponseDTO getResource(ResourceRequestDTO request);
 
-    List<ResourceResponseDTO> getDirectory(ResourceRequestDTO request);
+    DirectoryResponseDTO getDirectory(ResourceRequestDTO request);
+
+    /**
+     * Существование папки проверяется сразу, содержимое читается при обходе потока.
+     */
+    ResourceStream streamDirectory(ResourceRequestDTO request);
 
     ResourceResponseDTO createDirectory(ResourceRequestDTO request);
 
     void deleteResource(ResourceRequestDTO request);
 
-    List<ResourceResponseDTO> findResource(ResourceRequestDTO request, String query);
+    List<ResourceResponseDTO> findResource(ResourceRequestDTO request, String query, boolean prefix);
+
+    /**
+     * Как {@link #findResource}, но {@code request.limit} необязателен: без него выдаются все совпадения.
+     */
+    ResourceStream streamFoundResources(ResourceRequestDTO request, String query, boolean prefix);
 
     ResourceResponseDTO moveResource(MoveResourceRequestDTO request);
 
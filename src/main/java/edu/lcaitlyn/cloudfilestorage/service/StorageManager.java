@@ -1,10 +1,18 @@
 package edu.lcaitlyn.cloudfilestorage.service;
 
+import edu.lcaitlyn.cloudfilestorage.DTO.DirectoryPage;
 import edu.lcaitlyn.cloudfilestorage.DTO.ResourceMetadata;
 import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
+import edu.lcaitlyn.cloudfilestorage.exception.UploadSessionsNotSupported;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public interface StorageManager {
@@ -13,16 +21,84 @@ public interface StorageManager {
 
     boolean exists(String key);
 
-    void save(String key, byte[] data, String contentType);
+    /**
+     * Пакетная проверка существования: один запрос к каталогу или LIST по каждой папке, в которой лежат ключи,
+     * вместо HEAD на каждый ключ.
+     *
+     * @return те из {@code keys}, что уже существуют
+     */
+    Set<String> findExisting(Collection<String> keys);
+
+    /**
+     * @return метаданные сохранённого файла (размер и ETag из ответа S3)
+     */
+    StorageDTO save(String key, InputStream data, long size, String contentType);
+
+    /**
+     * То же, что {@link #save(String, InputStream, long, String)}, но для пакетных операций:
+     * папки из {@code confirmedDirectories} повторно не проверяются.
+     */
+    StorageDTO save(String key, InputStream data, long size, String contentType, Set<String> confirmedDirectories);
+
+    /**
+     * Начинает загрузку файла частями (multipart upload); файл появится после {@link #completeUpload}.
+     *
+     * @return идентификатор загрузки
+     * @throws UploadSessionsNotSupported если хранилище не поддерживает загрузку частями
+     */
+    String startUpload(String key, String contentType);
+
+    /**
+     * @param partNumber номер части, от 1
+     * @return ETag части
+     */
+    String uploadPart(String key, String uploadId, int partNumber, InputStream data, long size);
+
+    /**
+     * Собирает файл из частей, создаёт папки, в которых он лежит, и записывает его в каталог.
+     *
+     * @param parts ETag частей по номерам
+     */
+    StorageDTO completeUpload(String key, String uploadId, Map<Integer, String> parts, long size);
+
+    void abortUpload(String key, String uploadId);
 
     boolean isDirectory(String key);
 
+    /**
+     * @return содержимое папки (без вложенных уровней) или {@code null}, если такой папки нет
+     */
     List<StorageDTO> getDirectory(String key);
 
+    /**
+     * Постраничный листинг папки в порядке ключей.
+     *
+     * @param limit  максимум элементов на странице или {@code null} для всей папки
+     * @param cursor {@link DirectoryPage#getNextCursor()} предыдущей страницы или {@code null} для первой
+     * @return страница или {@code null}, если такой папки нет
+     * @throws IllegalArgumentException если курсор некорректен
+     */
+    DirectoryPage getDirectory(String key, Integer limit, String cursor);
+
     List<StorageDTO> getFullDirectory(String key);
 
+    /**
+     * Поиск по имени файла или папки внутри {@code key} на любой глубине.
+     *
+     * @param prefix {@code true} — имя начинается с {@code query}, иначе содержит его
+     * @return не более {@code limit} найденных ресурсов
+     */
+    List<StorageDTO> search(String key, String query, boolean prefix, int limit);
+
+    /**
+     * Постраничный поиск в порядке ключей; курсор работает так же, как в {@link #getDirectory(String, Integer, String)}.
+     */
+    DirectoryPage search(String key, String query, boolean prefix, int limit, String cursor);
+
     void createDirectory(String key);
 
+    void createDirectory(String key, Set<String> confirmedDirectories);
+
     void deleteFile(String key);
 
     void deleteDirectory(String key);
@@ -37,5 +113,7 @@ public interface StorageManager {
 
     ResourceMetadata downloadFile(String key);
 
-    ResourceMetadata downloadDirectory(String key, String directoryName);
+    ResourceMetadata downloadFile(String key, long rangeStart, long rangeEnd);
+
+    void downloadDirectory(String key, String directoryName, ArchiveFormat format, int level, OutputStream out);
 }
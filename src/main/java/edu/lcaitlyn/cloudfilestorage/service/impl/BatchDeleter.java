@@ -0,0 +1,130 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.DeleteResult;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.exception.StorageException;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Удаляет объекты пачками по 1000 ключей (DeleteObjects), отправляя до
+ * {@code storage.delete.parallelism} пачек одновременно.
+ */
+@Slf4j
+@Component
+public class BatchDeleter {
+
+    public static final int BATCH_SIZE = 1000;
+
+    private final S3Repository s3Repository;
+
+    private final ExecutorService storageExecutor;
+
+    private final StorageProperties storageProperties;
+
+    public BatchDeleter(S3Repository s3Repository, ExecutorService storageExecutor, StorageProperties storageProperties) {
+        this.s3Repository = s3Repository;
+        this.storageExecutor = storageExecutor;
+        this.storageProperties = storageProperties;
+    }
+
+    /**
+     * Удаляет все объекты под префиксом. Следующая страница листинга запрашивается, пока удаляются предыдущие.
+     * Если листинг оборвался, ошибка возвращается только после того, как отправленные пачки завершились.
+     */
+    public DeleteResult deletePrefix(String prefix) {
+        Batch batch = new Batch();
+        String continuationToken = null;
+
+        try {
+            do {
+                ListObjectsV2Response page = s3Repository.listObjects(prefix, continuationToken);
+                batch.submit(page.contents().stream().map(S3Object::key).toList());
+                continuationToken = page.nextContinuationToken();
+            } while (continuationToken != null);
+        } catch (RuntimeException e) {
+            // иначе вызывающий код обновит каталог и кэши, пока пачки ещё удаляют объекты
+            DeleteResult partial = batch.await();
+            log.error("listing of prefix {} failed after {} objects were deleted", prefix, partial.getDeleted());
+            throw e;
+        }
+
+        return batch.await();
+    }
+
+    public DeleteResult delete(List<String> keys) {
+        Batch batch = new Batch();
+        for (int i = 0; i < keys.size(); i += BATCH_SIZE) {
+            batch.submit(keys.subList(i, Math.min(i + BATCH_SIZE, keys.size())));
+        }
+        return batch.await();
+    }
+
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * Набор пачек удаления, которые выполняются параллельно, пока вызывающий код готовит следующие.
+     */
+    public class Batch {
+
+        private final Semaphore inFlight = new Semaphore(storageProperties.getDeleteParallelism());
+
+        private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        private final AtomicLong deleted = new AtomicLong();
+
+        private final Map<String, String> failures = new ConcurrentHashMap<>();
+
+        public void submit(List<String> keys) {
+            if (keys.isEmpty()) {
+                return;
+            }
+            List<String> chunk = List.copyOf(keys);
+
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StorageException("Interrupted while deleting objects");
+            }
+
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    List<S3Error> errors = s3Repository.deleteObjects(chunk);
+                    for (S3Error error : errors) {
+                        failures.put(error.key(), error.code() + ": " + error.message());
+                    }
+                    deleted.addAndGet(chunk.size() - errors.size());
+                } catch (RuntimeException e) {
+                    log.error("batch delete of {} keys failed: {}", chunk.size(), e.getMessage());
+                    chunk.forEach(key -> failures.put(key, e.getMessage()));
+                } finally {
+                    inFlight.release();
+                }
+            }, storageExecutor));
+        }
+
+        public DeleteResult await() {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            return DeleteResult.builder()
+                    .deleted(deleted.get())
+                    .failures(Map.copyOf(failures))
+                    .build();
+        }
+    }
+}
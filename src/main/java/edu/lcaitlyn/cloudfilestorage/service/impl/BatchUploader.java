@@ -0,0 +1,92 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.exception.StorageException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Загружает файлы одного запроса параллельно, до {@code storage.upload.parallelism} PUT одновременно.
+ * Все загрузки делят набор подтверждённых папок, поэтому общие предки проверяются и создаются один раз.
+ * После первой ошибки новые загрузки не начинаются; уже начатые дожидаются, и ошибка пробрасывается как есть.
+ */
+@Component
+public class BatchUploader {
+
+    private final ExecutorService storageExecutor;
+
+    private final StorageProperties storageProperties;
+
+    public BatchUploader(ExecutorService storageExecutor, StorageProperties storageProperties) {
+        this.storageExecutor = storageExecutor;
+        this.storageProperties = storageProperties;
+    }
+
+    @FunctionalInterface
+    public interface Upload {
+        /**
+         * @param confirmedDirectories общий для всех загрузок потокобезопасный набор для
+         *                             {@link edu.lcaitlyn.cloudfilestorage.service.StorageManager#save}
+         */
+        StorageDTO save(Set<String> confirmedDirectories);
+    }
+
+    /**
+     * @return сохранённые файлы в порядке {@code uploads}
+     */
+    public List<StorageDTO> uploadAll(List<Upload> uploads) {
+        Set<String> confirmedDirectories = ConcurrentHashMap.newKeySet();
+        Semaphore inFlight = new Semaphore(storageProperties.getUploadParallelism());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<CompletableFuture<StorageDTO>> saves = new ArrayList<>(uploads.size());
+
+        for (Upload upload : uploads) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, new StorageException("Interrupted while uploading files"));
+            }
+            if (failure.get() != null) {
+                break;
+            }
+
+            try {
+                saves.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return upload.save(confirmedDirectories);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        return null;
+                    } finally {
+                        inFlight.release();
+                    }
+                }, storageExecutor));
+            } catch (RejectedExecutionException e) {
+                // задача не запущена и разрешение не вернёт; уже начатые загрузки дожидаются ниже
+                inFlight.release();
+                failure.compareAndSet(null, new StorageException("Upload rejected by storage executor", e));
+                break;
+            }
+        }
+
+        CompletableFuture.allOf(saves.toArray(CompletableFuture[]::new)).join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        return saves.stream()
+                .map(CompletableFuture::join)
+                .toList();
+    }
+}
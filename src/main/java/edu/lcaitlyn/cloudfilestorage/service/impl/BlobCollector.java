@@ -0,0 +1,39 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.impl.DeduplicatingS3Repository;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Удаляет из бакета блобы, на которые не осталось ссылок (см. {@link DeduplicatingS3Repository}).
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+@ConditionalOnProperty(name = "storage.dedup.enabled", havingValue = "true")
+public class BlobCollector {
+
+    private final S3Repository s3Repository;
+
+    private final StorageProperties storageProperties;
+
+    @Scheduled(cron = "${storage.dedup.gc-cron}")
+    public void collect() {
+        if (!(s3Repository instanceof DeduplicatingS3Repository repository)) {
+            return;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            long deleted = repository.collectGarbage(storageProperties.getDedupGcGrace());
+            log.info("blob collection: " + deleted + " blobs deleted in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (RuntimeException e) {
+            log.error("blob collection failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.DeleteResult;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.exception.StorageException;
+import edu.lcaitlyn.cloudfilestorage.repository.S3AsyncRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Копирует все объекты под префиксом на стороне S3, выполняя до {@code storage.copy.parallelism}
+ * CopyObject одновременно. При перемещении исходные объекты удаляются пачками сразу по мере
+ * подтверждения их копий, не дожидаясь конца копирования всей папки.
+ */
+@Slf4j
+@Component
+public class CopyEngine {
+
+    private final S3Repository s3Repository;
+
+    // null для синхронного клиента: тогда копирования выполняются на storageExecutor
+    private final S3AsyncRepository s3AsyncRepository;
+
+    private final BatchDeleter batchDeleter;
+
+    private final ExecutorService storageExecutor;
+
+    private final StorageProperties storageProperties;
+
+    public CopyEngine(S3Repository s3Repository,
+                      ObjectProvider<S3AsyncRepository> s3AsyncRepository,
+                      BatchDeleter batchDeleter,
+                      ExecutorService storageExecutor,
+                      StorageProperties storageProperties) {
+        this.s3Repository = s3Repository;
+        this.s3AsyncRepository = s3AsyncRepository.getIfAvailable();
+        this.batchDeleter = batchDeleter;
+        this.storageExecutor = storageExecutor;
+        this.storageProperties = storageProperties;
+    }
+
+    /**
+     * @param sourceKey    Префикс исходной папки (с '/' на конце)
+     * @param targetKey    Префикс новой папки (с '/' на конце); предки должны уже существовать
+     * @param deleteSource удалять ли исходные объекты (перемещение)
+     */
+    public void copyPrefix(String sourceKey, String targetKey, boolean deleteSource) {
+        Semaphore inFlight = new Semaphore(storageProperties.getCopyParallelism());
+        List<CompletableFuture<Void>> copies = new ArrayList<>();
+        Queue<String> copied = new ConcurrentLinkedQueue<>();
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        BatchDeleter.Batch deletes = deleteSource ? batchDeleter.newBatch() : null;
+        // папку можно скопировать внутрь самой себя: её новые объекты появятся в листинге источника
+        boolean nested = targetKey.startsWith(sourceKey);
+
+        String continuationToken = null;
+        try {
+            do {
+                ListObjectsV2Response page = s3Repository.listObjects(sourceKey, continuationToken);
+
+                for (S3Object object : page.contents()) {
+                    if (nested && object.key().startsWith(targetKey)) continue;
+
+                    String destination = targetKey + object.key().substring(sourceKey.length());
+                    acquire(inFlight);
+
+                    copies.add(copy(object, destination).handle((result, e) -> {
+                        if (e == null) {
+                            copied.add(object.key());
+                        } else {
+                            failures.put(object.key(), (e instanceof CompletionException && e.getCause() != null ? e.getCause() : e).getMessage());
+                        }
+                        inFlight.release();
+                        return null;
+                    }));
+
+                    if (deletes != null) {
+                        submitDeletes(copied, deletes, false);
+                    }
+                }
+
+                continuationToken = page.nextContinuationToken();
+            } while (continuationToken != null);
+        } catch (RuntimeException e) {
+            // иначе вызывающий код обновит каталог и кэши, пока копирования и удаления ещё идут;
+            // скопированные при перемещении источники удаляются, чтобы объект не остался в двух местах
+            DeleteResult partial = await(copies, copied, deletes);
+            log.error("listing of key {} failed after {} objects were copied", sourceKey, copies.size() - failures.size());
+            if (partial != null) {
+                partial.getFailures().forEach((key, reason) -> log.error("failed to delete moved key: " + key + " (" + reason + ")"));
+            }
+            throw e;
+        }
+
+        DeleteResult result = await(copies, copied, deletes);
+        log.info("copied " + (copies.size() - failures.size()) + " objects from key: " + sourceKey + " to target key: " + targetKey);
+        if (result != null) {
+            failures.putAll(result.getFailures());
+        }
+
+        if (!failures.isEmpty()) {
+            failures.forEach((key, reason) -> log.error("failed to " + (deleteSource ? "move" : "copy") + " key: " + key + " (" + reason + ")"));
+            throw new StorageException("Error while copying directory. Key: " + sourceKey + ". "
+                    + failures.size() + " objects failed, e.g. " + failures.keySet().iterator().next());
+        }
+    }
+
+    /**
+     * Дожидается запущенных копирований и, при перемещении, удаляет все скопированные источники.
+     *
+     * @return результат удалений или {@code null}, если источники не удаляются
+     */
+    private DeleteResult await(List<CompletableFuture<Void>> copies, Queue<String> copied, BatchDeleter.Batch deletes) {
+        CompletableFuture.allOf(copies.toArray(CompletableFuture[]::new)).join();
+
+        if (deletes == null) {
+            return null;
+        }
+        submitDeletes(copied, deletes, true);
+        return deletes.await();
+    }
+
+    private CompletableFuture<Void> copy(S3Object object, String destination) {
+        if (s3AsyncRepository != null) {
+            return destination.endsWith("/")
+                    ? s3AsyncRepository.createDirectoryAsync(destination)
+                    : s3AsyncRepository.copyObjectAsync(object.key(), destination);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            if (destination.endsWith("/")) {
+                s3Repository.createDirectory(destination);
+            } else {
+                s3Repository.copyObject(object.key(), destination, object.size());
+            }
+        }, storageExecutor);
+    }
+
+    private void submitDeletes(Queue<String> copied, BatchDeleter.Batch deletes, boolean flush) {
+        while (copied.size() >= BatchDeleter.BATCH_SIZE || (flush && !copied.isEmpty())) {
+            List<String> keys = new ArrayList<>(BatchDeleter.BATCH_SIZE);
+            String key;
+            while (keys.size() < BatchDeleter.BATCH_SIZE && (key = copied.poll()) != null) {
+                keys.add(key);
+            }
+            deletes.submit(keys);
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while copying objects");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.DirectoryPage;
+import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.enums.Type;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Общий для всех инстансов кэш листингов папок в Redis.
+ * <p>
+ * Ключ записи содержит версию пользовательского префикса ({@code user-N-files/}); любая запись в этот
+ * префикс увеличивает версию, после чего старые листинги больше не читаются и просто истекают по TTL.
+ * Если Redis недоступен, листинг берётся из S3.
+ */
+@Slf4j
+@Component
+public class DirectoryListingCache {
+
+    private static final String VERSION_KEY = "storage:listing:version:";
+
+    private static final String ENTRY_KEY = "storage:listing:";
+
+    private static final String MISSING = "!";
+
+    private final StringRedisTemplate redis;
+
+    private final StorageProperties storageProperties;
+
+    public DirectoryListingCache(StringRedisTemplate redis, StorageProperties storageProperties) {
+        this.redis = redis;
+        this.storageProperties = storageProperties;
+    }
+
+    /**
+     * Каждая страница ({@code limit}, {@code cursor}) кэшируется отдельно.
+     *
+     * @return закэшированная страница или результат {@code loader}; {@code null}, если папки нет
+     */
+    public DirectoryPage get(String key, Integer limit, String cursor, Supplier<DirectoryPage> loader) {
+        if (!storageProperties.isListingCacheEnabled()) {
+            return loader.get();
+        }
+
+        String entryKey = null;
+        try {
+            entryKey = entryKey(key, limit, cursor);
+            String cached = redis.opsForValue().get(entryKey);
+            if (cached != null) {
+                return decode(key, cached);
+            }
+        } catch (DataAccessException e) {
+            log.warn("listing cache unavailable: " + e.getMessage());
+        }
+
+        DirectoryPage listing = loader.get();
+
+        if (entryKey != null) {
+            try {
+                redis.opsForValue().set(entryKey, encode(key, listing), storageProperties.getListingCacheTtl());
+            } catch (DataAccessException e) {
+                log.warn("listing cache unavailable: " + e.getMessage());
+            }
+        }
+        return listing;
+    }
+
+    public void invalidate(String key) {
+        if (!storageProperties.isListingCacheEnabled()) {
+            return;
+        }
+
+        try {
+            redis.opsForValue().increment(VERSION_KEY + userPrefix(key));
+        } catch (DataAccessException e) {
+            log.error("failed to invalidate listing cache for key: " + key + " (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * storage:listing:{версия}:{limit}:{cursor}:{ключ}; курсор в base64url, поэтому без ':'
+     */
+    private String entryKey(String key, Integer limit, String cursor) {
+        String version = redis.opsForValue().get(VERSION_KEY + userPrefix(key));
+        return ENTRY_KEY + (version == null ? "0" : version) + ":"
+                + (limit == null ? "" : limit) + ":"
+                + (cursor == null ? "" : cursor) + ":"
+                + key;
+    }
+
+    private static String userPrefix(String key) {
+        int slash = key.indexOf('/');
+        return (slash < 0) ? key : key.substring(0, slash + 1);
+    }
+
+    /**
+     * Курсор следующей страницы, если есть ({@code N<cursor>:}), затем запись на элемент: тип (F/D), размер,
+     * длина имени и имя относительно папки, например {@code F1024:5:a.txt}.
+     */
+    private static String encode(String key, DirectoryPage listing) {
+        if (listing == null) {
+            return MISSING;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        if (listing.getNextCursor() != null) {
+            builder.append('N').append(listing.getNextCursor()).append(':');
+        }
+        for (StorageDTO dto : listing.getItems()) {
+            String name = dto.getKey().substring(key.length());
+            builder.append(dto.getType() == Type.DIRECTORY ? 'D' : 'F')
+                    .append(dto.getSize()).append(':')
+                    .append(name.length()).append(':')
+                    .append(name);
+        }
+        return builder.toString();
+    }
+
+    private static DirectoryPage decode(String key, String value) {
+        if (value.equals(MISSING)) {
+            return null;
+        }
+
+        String nextCursor = null;
+        int pos = 0;
+        if (value.startsWith("N")) {
+            pos = value.indexOf(':') + 1;
+            nextCursor = value.substring(1, pos - 1);
+        }
+
+        List<StorageDTO> listing = new ArrayList<>();
+        while (pos < value.length()) {
+            Type type = value.charAt(pos) == 'D' ? Type.DIRECTORY : Type.FILE;
+            int sizeEnd = value.indexOf(':', pos);
+            int lengthEnd = value.indexOf(':', sizeEnd + 1);
+            long size = Long.parseLong(value, pos + 1, sizeEnd, 10);
+            int length = Integer.parseInt(value, sizeEnd + 1, lengthEnd, 10);
+            pos = lengthEnd + 1 + length;
+
+            listing.add(StorageDTO.builder()
+                    .key(key + value.substring(lengthEnd + 1, pos))
+                    .type(type)
+                    .size(size)
+                    .build());
+        }
+        return DirectoryPage.builder()
+                .items(listing)
+                .nextCursor(nextCursor)
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import edu.lcaitlyn.cloudfilestorage.utils.FileServiceUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Создаёт маркеры папок (пустые объекты с '/' на конце) для всех предков ключа.
+ * Предки проверяются от самого глубокого вверх до первого существующего, поэтому для файла
+ * в уже существующей папке нужен один LIST, а не по LIST на каждый уровень.
+ * Параллельные запросы на одну и ту же папку выполняют один общий проход.
+ */
+@Slf4j
+@Component
+public class DirectoryMarkers {
+
+    private final S3Repository s3Repository;
+
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public DirectoryMarkers(S3Repository s3Repository) {
+        this.s3Repository = s3Repository;
+    }
+
+    /**
+     * @param key                  Ключ файла или папки; для файла создаются папки, в которых он лежит
+     * @param confirmedDirectories Папки, существование которых уже подтверждено в рамках текущей операции.
+     *                             Пополняется найденными и созданными папками.
+     */
+    public void ensure(String key, Set<String> confirmedDirectories) {
+        List<String> directories = FileServiceUtils.directoriesOf(key);
+        if (directories.isEmpty() || confirmedDirectories.contains(directories.getLast())) {
+            return;
+        }
+
+        String deepest = directories.getLast();
+        CompletableFuture<Void> pass = new CompletableFuture<>();
+        CompletableFuture<Void> running = inFlight.putIfAbsent(deepest, pass);
+
+        if (running != null) {
+            try {
+                running.join();
+            } catch (CompletionException e) {
+                throw (e.getCause() instanceof RuntimeException re) ? re : e;
+            }
+            confirmedDirectories.addAll(directories);
+            return;
+        }
+
+        try {
+            create(directories, confirmedDirectories);
+            pass.complete(null);
+        } catch (RuntimeException e) {
+            pass.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(deepest, pass);
+        }
+    }
+
+    private void create(List<String> directories, Set<String> confirmedDirectories) {
+        int existing = directories.size() - 1;
+        while (existing >= 0 && !exists(directories.get(existing), confirmedDirectories)) {
+            existing--;
+        }
+
+        for (int i = existing + 1; i < directories.size(); i++) {
+            String directory = directories.get(i);
+            s3Repository.createDirectory(directory);
+            confirmedDirectories.add(directory);
+            log.info("createdDirectory: " + directory);
+        }
+        confirmedDirectories.addAll(directories.subList(0, existing + 1));
+    }
+
+    private boolean exists(String directory, Set<String> confirmedDirectories) {
+        return confirmedDirectories.contains(directory)
+                || !s3Repository.listKeyObjects(directory, 1).contents().isEmpty();
+    }
+}
@@ -0,0 +1,395 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.Abortable;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш часто скачиваемых файлов на локальном диске перед {@link S3Repository#downloadObject}.
+ * <p>
+ * Файл попадает в кэш при полном скачивании: поток из S3 одновременно отдаётся клиенту и пишется во временный файл,
+ * который становится записью кэша, только если дочитан до конца. Допускаются объекты не больше
+ * {@code storage.download-cache.max-object-size}, скачанные до конца хотя бы {@code storage.download-cache.admit-after}
+ * раз за {@code storage.download-cache.admission-window} (считая скачивание, которое заполняет кэш); оборванные
+ * скачивания не считаются. Записи вытесняются Caffeine по объёму
+ * ({@code storage.download-cache.budget}) с учётом частоты обращений (W-TinyLFU), поэтому одно большое скачивание
+ * не вытесняет популярные файлы.
+ * <p>
+ * Запись хранит ETag объекта и перед каждой выдачей сверяется с S3 одним HEAD; объект, изменённый в обход
+ * сервиса, перечитывается. Запись, которую вернул {@link #find}, закреплена за ответом до {@link #release}:
+ * файл вытесненной записи удаляет последний отдающий её ответ.
+ */
+@Slf4j
+@Component
+public class DownloadCache {
+
+    private static final String ENTRY_SUFFIX = ".blob";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Закэшированный объект: {@code file} совпадает с объектом S3, пока у него этот {@code etag}.
+     */
+    public record Entry(String etag, Path file, long size, String contentType) {
+    }
+
+    private final S3Repository s3Repository;
+
+    private final StorageProperties storageProperties;
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final Cache<String, Entry> entries;
+
+    // число скачиваний ключа до конца
+    private final Cache<String, AtomicInteger> completed;
+
+    // ключи записей по порядку: сброс папки находит записи под ней без перебора всего кэша
+    private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+
+    // ключи, которые сейчас пишутся в кэш: второй параллельный запрос того же файла кэш не заполняет
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+    // число ответов, которые сейчас отдают файл записи
+    private final Map<Path, Integer> readers = new ConcurrentHashMap<>();
+
+    // файлы вытесненных записей, которые ещё отдаются
+    private final Set<Path> evicted = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public DownloadCache(S3Repository s3Repository, StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        this.s3Repository = s3Repository;
+        this.storageProperties = storageProperties;
+        this.enabled = storageProperties.isDownloadCacheEnabled();
+        this.directory = enabled ? Path.of(storageProperties.getDownloadCacheDirectory()).toAbsolutePath() : null;
+
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(storageProperties.getDownloadCacheBudget().toKilobytes())
+                .<String, Entry>weigher((key, entry) -> (int) Math.min(Integer.MAX_VALUE, entry.size() / 1024 + 1))
+                .removalListener(this::removed)
+                // слушатель только удаляет файл: к возврату из invalidate файл уже удалён или передан release
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(storageProperties.getDownloadCacheAdmissionWindow())
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "storage.download");
+
+        if (enabled) {
+            prepareDirectory();
+        }
+    }
+
+    /**
+     * Найденная запись закреплена: её файл не удаляется, пока вызывающий код не вызовет {@link #release}.
+     *
+     * @return запись кэша, совпадающая с текущей версией объекта в S3, или {@code null}
+     */
+    public Entry find(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+
+        readers.merge(entry.file(), 1, Integer::sum);
+        // запись могла быть вытеснена до закрепления, и тогда её файл уже удалён
+        if (entries.asMap().get(key) != entry) {
+            release(entry);
+            return null;
+        }
+
+        try {
+            HeadObjectResponse head = s3Repository.getObject(key);
+            if (entry.etag().equals(head.eTag()) && Files.isRegularFile(entry.file())) {
+                return entry;
+            }
+        } catch (NoSuchKeyException e) {
+            // объект удалён в обход сервиса: GET вернёт ошибку сам
+        } catch (RuntimeException e) {
+            release(entry);
+            throw e;
+        }
+
+        release(entry);
+        entries.asMap().remove(key, entry);
+        return null;
+    }
+
+    /**
+     * Снимает закрепление записи, полученной из {@link #find}. Если запись уже вытеснена и её больше никто
+     * не отдаёт, файл удаляется.
+     */
+    public void release(Entry entry) {
+        Path file = entry.file();
+        if (readers.computeIfPresent(file, (f, n) -> (n > 1) ? n - 1 : null) == null && evicted.remove(file)) {
+            delete(file);
+        }
+    }
+
+    /**
+     * Возвращает поток, который учитывает скачивание объекта до конца и, если объект проходит в кэш,
+     * по мере чтения пишет его в кэш.
+     */
+    public InputStream fill(String key, ResponseInputStream<GetObjectResponse> data) {
+        if (!enabled) {
+            return data;
+        }
+
+        GetObjectResponse response = data.response();
+        if (response.contentLength() == null || response.eTag() == null
+                || response.contentLength() > storageProperties.getDownloadCacheMaxObjectSize().toBytes()) {
+            return data;
+        }
+
+        AtomicInteger downloads = completed.getIfPresent(key);
+        // это скачивание, если дойдёт до конца, будет admit-after-м
+        if ((downloads == null ? 0 : downloads.get()) + 1 < storageProperties.getDownloadCacheAdmitAfter()
+                || !filling.add(key)) {
+            return new FillingInputStream(key, data, response, null, null);
+        }
+
+        try {
+            Path temp = directory.resolve(sequence.incrementAndGet() + "-" + System.nanoTime() + TEMP_SUFFIX);
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return new FillingInputStream(key, data, response, temp, channel);
+        } catch (IOException e) {
+            filling.remove(key);
+            log.warn("cannot cache download of key: " + key + " (" + e.getMessage() + ")");
+            return new FillingInputStream(key, data, response, null, null);
+        }
+    }
+
+    /**
+     * Сбрасывает запись ключа, а для папки — все записи под ней. Папки не кэшируются, поэтому записи
+     * предков не затрагиваются; записи с тем же началом имени ({@code a.txt.bak} для {@code a.txt}) — тоже.
+     */
+    public void invalidate(String key) {
+        if (!enabled) {
+            return;
+        }
+
+        if (key.endsWith("/")) {
+            for (String cached : keys.subSet(key, key + Character.MAX_VALUE)) {
+                entries.invalidate(cached);
+            }
+        } else {
+            entries.invalidate(key);
+        }
+    }
+
+    private void removed(String key, Entry entry, RemovalCause cause) {
+        // слушатель может сработать уже после новой записи того же ключа
+        if (cause != RemovalCause.REPLACED && !entries.asMap().containsKey(key)) {
+            keys.remove(key);
+        }
+        if (entry == null) {
+            return;
+        }
+
+        Path file = entry.file();
+        evicted.add(file);
+        // иначе файл удалит release последнего ответа
+        if (!readers.containsKey(file) && evicted.remove(file)) {
+            delete(file);
+        }
+    }
+
+    private void prepareDirectory() {
+        try {
+            Files.createDirectories(directory);
+            // индекс кэша живёт в памяти: файлы прошлого запуска никому не принадлежат
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*{" + ENTRY_SUFFIX + "," + TEMP_SUFFIX + "}")) {
+                for (Path file : stale) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot prepare download cache directory: " + directory, e);
+        }
+        log.info("caching downloads in: " + directory);
+    }
+
+    private void commit(String key, Path temp, GetObjectResponse response) throws IOException {
+        Path file = temp.resolveSibling(temp.getFileName().toString().replace(TEMP_SUFFIX, ENTRY_SUFFIX));
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        keys.add(key);
+        entries.put(key, new Entry(response.eTag(), file, response.contentLength(), response.contentType()));
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("failed to delete cached download: " + file);
+        }
+    }
+
+    /**
+     * Отдаёт поток S3, считает полное скачивание и, если {@code channel} задан, пишет прочитанное во временный файл.
+     * Запись попадает в кэш, только если прочитан весь объект; при ошибке записи на диск кэширование прекращается,
+     * а клиент продолжает получать данные.
+     */
+    private class FillingInputStream extends FilterInputStream implements Abortable {
+
+        private final String key;
+
+        private final ResponseInputStream<GetObjectResponse> data;
+
+        private final GetObjectResponse response;
+
+        private final Path temp;
+
+        private FileChannel channel;
+
+        private long read;
+
+        private boolean done;
+
+        FillingInputStream(String key, ResponseInputStream<GetObjectResponse> data, GetObjectResponse response, Path temp, FileChannel channel) {
+            super(data);
+            this.key = key;
+            this.data = data;
+            this.response = response;
+            this.temp = temp;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return (read(single, 0, 1) < 0) ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                write(b, off, n);
+                read += n;
+                if (read == response.contentLength()) {
+                    finish(true);
+                }
+            } else if (n < 0) {
+                finish(read == response.contentLength());
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // пропущенные байты не попадут в файл, а скачивание не считается полным
+            finish(false);
+            return in.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void abort() {
+            finish(false);
+            data.abort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish(false);
+            super.close();
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                log.warn("stopped caching download of key: " + key + " (" + e.getMessage() + ")");
+                closeChannel(false);
+            }
+        }
+
+        private void finish(boolean complete) {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            if (complete) {
+                completed.get(key, k -> new AtomicInteger()).incrementAndGet();
+            }
+            closeChannel(complete);
+        }
+
+        private void closeChannel(boolean commit) {
+            if (channel == null) {
+                return;
+            }
+
+            try {
+                channel.close();
+                if (commit) {
+                    commit(key, temp, response);
+                }
+            } catch (IOException e) {
+                log.warn("failed to cache download of key: " + key + " (" + e.getMessage() + ")");
+            } finally {
+                channel = null;
+                filling.remove(key);
+                // после commit временного файла уже нет
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    log.warn("failed to delete temporary file: " + temp);
+                }
+            }
+        }
+    }
+}
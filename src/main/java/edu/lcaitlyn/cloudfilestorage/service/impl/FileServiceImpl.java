@@ -1,24 +1,48 @@
 package edu.lcaitlyn.cloudfilestorage.service.impl;
 
+import edu.lcaitlyn.cloudfilestorage.DTO.DirectoryPage;
 import edu.lcaitlyn.cloudfilestorage.DTO.DownloadResourceDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.ResourceMetadata;
 import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.request.MoveResourceRequestDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.request.UploadSessionRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.DirectoryResponseDTO;
 import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.UploadSessionResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
 import edu.lcaitlyn.cloudfilestorage.enums.Type;
 import edu.lcaitlyn.cloudfilestorage.exception.*;
 import edu.lcaitlyn.cloudfilestorage.service.FileService;
 import edu.lcaitlyn.cloudfilestorage.service.StorageManager;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.http.Abortable;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
 
 import static edu.lcaitlyn.cloudfilestorage.utils.FileServiceUtils.*;
 
@@ -34,8 +58,18 @@ public class FileServiceImpl implements FileService {
 
     public static final String KEY_PREFIX = "user-%d-files";
 
+    private static final int STREAM_PAGE_SIZE = 1000;
+
     private final StorageManager storageManager;
 
+    private final PreflightChecks preflightChecks;
+
+    private final BatchUploader batchUploader;
+
+    private final TransferMetrics transferMetrics;
+
+    private final UploadSessions uploadSessions;
+
     @Override
     public ResourceResponseDTO getResource(ResourceRequestDTO request) {
         String key = createKey(request.getUser().getId(), request.getPath());
@@ -55,62 +89,226 @@ public class FileServiceImpl implements FileService {
                 .build();
     }
 
-    // todo Сделать чтобы при одинаковых названиях файлов, все четенько работало, если нет 409
-    //                                      (11.06 обновил)
     @Override
     public List<ResourceResponseDTO> uploadFile(ResourceRequestDTO request) {
         String prefix = createKey(request.getUser().getId(), request.getPath());
         MultipartFile[] files = request.getFiles();
 
+        List<String> keys = new ArrayList<>(files.length);
+        Set<String> requested = new HashSet<>();
         for (MultipartFile file : files) {
             String key = prefix + file.getOriginalFilename();
-            if (storageManager.exists(key)) {
+            // файлы с одинаковыми именами в одном запросе загружались бы параллельно в один ключ
+            if (!requested.add(key)) {
+                log.warn("User [{}] unsuccessfully uploaded resource with path = {}: duplicate file name {}.", request.getUser().getUsername(), request.getPath(), file.getOriginalFilename());
+                throw new ResourceAlreadyExists(file.getOriginalFilename());
+            }
+            keys.add(key);
+        }
+
+        Set<String> existing = storageManager.findExisting(keys);
+        for (MultipartFile file : files) {
+            if (existing.contains(prefix + file.getOriginalFilename())) {
                 log.warn("User [{}] unsuccessfully uploaded resource with path = {}: resource already exists.", request.getUser().getUsername(), request.getPath());
                 throw new ResourceAlreadyExists(file.getOriginalFilename());
             }
         }
 
-        List<ResourceResponseDTO> response = new ArrayList<>();
+        List<BatchUploader.Upload> uploads = new ArrayList<>(files.length);
         for (MultipartFile file : files) {
             String key = prefix + file.getOriginalFilename();
-            try {
-                storageManager.save(key, file.getBytes(), file.getContentType());
-                log.info("User [{}] uploaded file: {}", request.getUser().getUsername(), request.getPath() + file.getOriginalFilename());
-
-                StorageDTO resource = storageManager.getResourceMetadata(key);
-                response.add(ResourceResponseDTO.builder()
-                        .path(request.getPath())
-                        .name(resource.getKey().substring(prefix.length()))
-                        .size(resource.getSize())
-                        .type(resource.getType())
-                        .build()
-                );
-            } catch (IOException e) {
-                log.error("User [{}] unsuccessfully uploaded resource: {}. IOException : {}", request.getUser().getUsername(), request.getPath() + file.getOriginalFilename(), e.getMessage());
-                throw new FileServiceException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to upload file '" + file.getOriginalFilename() + "'. Error reading bytes from input.");
-            }
+            uploads.add(confirmedDirectories -> {
+                try (InputStream data = file.getInputStream()) {
+                    StorageDTO saved = transferMetrics.upload(file.getSize(),
+                            () -> storageManager.save(key, data, file.getSize(), file.getContentType(), confirmedDirectories));
+                    log.info("User [{}] uploaded file: {}", request.getUser().getUsername(), request.getPath() + file.getOriginalFilename());
+                    return saved;
+                } catch (IOException e) {
+                    log.error("User [{}] unsuccessfully uploaded resource: {}. IOException : {}", request.getUser().getUsername(), request.getPath() + file.getOriginalFilename(), e.getMessage());
+                    throw new FileServiceException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to upload file '" + file.getOriginalFilename() + "'. Error reading bytes from input.");
+                }
+            });
+        }
+
+        List<ResourceResponseDTO> response = new ArrayList<>(files.length);
+        for (StorageDTO resource : batchUploader.uploadAll(uploads)) {
+            response.add(ResourceResponseDTO.builder()
+                    .path(request.getPath())
+                    .name(resource.getKey().substring(prefix.length()))
+                    .size(resource.getSize())
+                    .type(resource.getType())
+                    .build()
+            );
         }
         return response;
     }
 
     @Override
-    public List<ResourceResponseDTO> getDirectory(ResourceRequestDTO request) {
+    public UploadSessionResponseDTO createUploadSession(UploadSessionRequestDTO request) {
+        String key = createKey(request.getUser().getId(), request.getPath() + request.getName());
+
+        if (request.getSize() < 1 || request.getSize() > UploadSessions.MAX_SIZE) {
+            throw new FileServiceException(HttpStatus.BAD_REQUEST, "File size should be between 1 byte and 5TB");
+        }
+
+        if (storageManager.exists(key)) {
+            log.warn("User [{}] unsuccessfully started upload of resource with path = {}: resource already exists.", request.getUser().getUsername(), request.getPath() + request.getName());
+            throw new ResourceAlreadyExists(request.getName());
+        }
+
+        UploadSessions.Session session = uploadSessions.create(request.getUser().getId(), key, request.getSize(), request.getContentType());
+        log.info("User [{}] started upload session {} for file: {}", request.getUser().getUsername(), session.id(), request.getPath() + request.getName());
+        return toUploadSessionDTO(session);
+    }
+
+    @Override
+    public UploadSessionResponseDTO getUploadSession(UploadSessionRequestDTO request) {
+        return toUploadSessionDTO(findUploadSession(request));
+    }
+
+    @Override
+    public void uploadChunk(UploadSessionRequestDTO request) {
+        UploadSessions.Session session = findUploadSession(request);
+        int chunk = request.getChunk();
+
+        if (chunk < 0 || chunk >= session.chunkCount()) {
+            throw new FileServiceException(HttpStatus.BAD_REQUEST, "Chunk should be between 0 and " + (session.chunkCount() - 1));
+        }
+        if (request.getContentLength() != session.chunkLength(chunk)) {
+            throw new FileServiceException(HttpStatus.BAD_REQUEST, "Chunk " + chunk + " should be " + session.chunkLength(chunk) + " bytes");
+        }
+
+        String etag = transferMetrics.upload(request.getContentLength(),
+                () -> storageManager.uploadPart(session.key(), session.uploadId(), chunk + 1, request.getData(), request.getContentLength()));
+
+        if (!uploadSessions.recordPart(session, chunk + 1, etag)) {
+            throw new FileServiceException(HttpStatus.NOT_FOUND, "Upload session expired: " + session.id());
+        }
+    }
+
+    @Override
+    public ResourceResponseDTO completeUploadSession(UploadSessionRequestDTO request) {
+        UploadSessions.Session session = findUploadSession(request);
+
+        int missing = session.chunkCount() - session.parts().size();
+        if (missing > 0) {
+            throw new FileServiceException(HttpStatus.CONFLICT, missing + " of " + session.chunkCount() + " chunks are not uploaded yet");
+        }
+        if (storageManager.exists(session.key())) {
+            throw new ResourceAlreadyExists(extractNameFromKey(session.key()));
+        }
+        if (!uploadSessions.claim(session.id())) {
+            throw new FileServiceException(HttpStatus.NOT_FOUND, "Upload session not found: " + session.id());
+        }
+
+        StorageDTO saved;
+        try {
+            saved = storageManager.completeUpload(session.key(), session.uploadId(), session.parts(), session.size());
+        } catch (RuntimeException e) {
+            uploadSessions.release(session);
+            throw e;
+        }
+        uploadSessions.delete(session.id());
+        log.info("User [{}] uploaded file: {} in {} chunks", request.getUser().getUsername(), extractPathFromKey(saved.getKey()) + extractNameFromKey(saved.getKey()), session.chunkCount());
+
+        return ResourceResponseDTO.builder()
+                .path(extractPathFromKey(saved.getKey()))
+                .name(extractNameFromKey(saved.getKey()))
+                .size(saved.getSize())
+                .type(saved.getType())
+                .build();
+    }
+
+    @Override
+    public void abortUploadSession(UploadSessionRequestDTO request) {
+        UploadSessions.Session session = findUploadSession(request);
+
+        if (!uploadSessions.claim(session.id())) {
+            throw new FileServiceException(HttpStatus.NOT_FOUND, "Upload session not found: " + session.id());
+        }
+        storageManager.abortUpload(session.key(), session.uploadId());
+        uploadSessions.delete(session.id());
+        log.info("User [{}] aborted upload session {}", request.getUser().getUsername(), session.id());
+    }
+
+    /**
+     * Чужая сессия неотличима от несуществующей.
+     */
+    private UploadSessions.Session findUploadSession(UploadSessionRequestDTO request) {
+        UploadSessions.Session session = uploadSessions.find(request.getSessionId());
+        if (session == null || session.userId() != request.getUser().getId()) {
+            throw new FileServiceException(HttpStatus.NOT_FOUND, "Upload session not found: " + request.getSessionId());
+        }
+        return session;
+    }
+
+    private static UploadSessionResponseDTO toUploadSessionDTO(UploadSessions.Session session) {
+        return UploadSessionResponseDTO.builder()
+                .id(session.id())
+                .path(extractPathFromKey(session.key()))
+                .name(extractNameFromKey(session.key()))
+                .size(session.size())
+                .chunkSize(session.chunkSize())
+                .chunkCount(session.chunkCount())
+                .receivedChunks(session.parts().keySet().stream().map(part -> part - 1).sorted().toList())
+                .expiresAt(session.expiresAt())
+                .build();
+    }
+
+    @Override
+    public DirectoryResponseDTO getDirectory(ResourceRequestDTO request) {
+        String prefix = createKey(request.getUser().getId(), request.getPath());
+
+        DirectoryPage page = storageManager.getDirectory(prefix, request.getLimit(), request.getCursor());
+
+        if (page == null) {
+            log.warn("User [{}] unsuccessfully got directory with path = {}. Directory not found", request.getUser().getUsername(), request.getPath());
+            throw new DirectoryNotFound(extractNameFromKey(request.getPath()));
+        }
+
+        List<ResourceResponseDTO> items = page.getItems().stream()
+                .map(r -> toDirectoryItem(r, prefix, request.getPath()))
+                .toList();
+
+        return DirectoryResponseDTO.builder()
+                .items(items)
+                .nextCursor(page.getNextCursor())
+                .build();
+    }
+
+    @Override
+    public ResourceStream streamDirectory(ResourceRequestDTO request) {
         String prefix = createKey(request.getUser().getId(), request.getPath());
 
-        if (!storageManager.exists(prefix) || !storageManager.isDirectory(prefix)) {
+        DirectoryPage first = storageManager.getDirectory(prefix, STREAM_PAGE_SIZE, request.getCursor());
+
+        if (first == null) {
             log.warn("User [{}] unsuccessfully got directory with path = {}. Directory not found", request.getUser().getUsername(), request.getPath());
             throw new DirectoryNotFound(extractNameFromKey(request.getPath()));
         }
 
-        List<StorageDTO> resources = storageManager.getDirectory(prefix);
+        return consumer -> {
+            DirectoryPage page = first;
+            while (page != null) {
+                for (StorageDTO r : page.getItems()) {
+                    consumer.accept(toDirectoryItem(r, prefix, request.getPath()));
+                }
+                consumer.flush();
+
+                // page == null: папку удалили, пока её читали
+                page = (page.getNextCursor() == null) ? null
+                        : storageManager.getDirectory(prefix, STREAM_PAGE_SIZE, page.getNextCursor());
+            }
+        };
+    }
 
-        return resources.stream().map(r -> ResourceResponseDTO.builder()
+    private static ResourceResponseDTO toDirectoryItem(StorageDTO r, String prefix, String path) {
+        return ResourceResponseDTO.builder()
                 .name(r.getKey().substring(prefix.length()))
-                .path(request.getPath())
+                .path(path)
                 .size(r.getSize())
                 .type(r.getType())
-                .build()
-        ).toList();
+                .build();
     }
 
 //    todo
@@ -161,30 +359,46 @@ public class FileServiceImpl implements FileService {
     }
 
     @Override
-    public List<ResourceResponseDTO> findResource(ResourceRequestDTO request, String query) {
-        String prefix = createKey(request.getUser().getId(), "/");
+    public List<ResourceResponseDTO> findResource(ResourceRequestDTO request, String query, boolean prefix) {
+        String root = createKey(request.getUser().getId(), "/");
         List<ResourceResponseDTO> response = new ArrayList<>();
 
-        List<StorageDTO> resources = storageManager.getFullDirectory(prefix);
-        if (resources == null) {
-            log.warn("User [{}] unsuccessfully found resource: {} ; path = {}. Problem with retrieving root directory.", request.getUser().getUsername(), query, request.getPath());
-            throw new FileServiceException("Problem with retrieving root directory");
+        for (StorageDTO r : storageManager.search(root, query, prefix, request.getLimit())) {
+            response.add(toSearchItem(r));
         }
 
-        for (StorageDTO r : resources) {
-            String filename = extractNameFromKey(r.getKey());
+        return response;
+    }
 
-            if (filename.contains(query)) {
-                response.add(ResourceResponseDTO.builder()
-                        .path(extractPathFromKey(r.getKey()))
-                        .name(extractNameFromKey(r.getKey()))
-                        .size(r.getSize())
-                        .type(r.getType())
-                        .build());
-            }
-        }
+    @Override
+    public ResourceStream streamFoundResources(ResourceRequestDTO request, String query, boolean prefix) {
+        String root = createKey(request.getUser().getId(), "/");
+        long limit = (request.getLimit() == null) ? Long.MAX_VALUE : request.getLimit();
+
+        return consumer -> {
+            long remaining = limit;
+            String cursor = null;
+
+            do {
+                DirectoryPage page = storageManager.search(root, query, prefix, (int) Math.min(STREAM_PAGE_SIZE, remaining), cursor);
+                for (StorageDTO r : page.getItems()) {
+                    consumer.accept(toSearchItem(r));
+                }
+                consumer.flush();
+
+                remaining -= page.getItems().size();
+                cursor = page.getNextCursor();
+            } while (cursor != null && remaining > 0);
+        };
+    }
 
-        return response;
+    private static ResourceResponseDTO toSearchItem(StorageDTO r) {
+        return ResourceResponseDTO.builder()
+                .path(extractPathFromKey(r.getKey()))
+                .name(extractNameFromKey(r.getKey()))
+                .size(r.getSize())
+                .type(r.getType())
+                .build();
     }
 
 
@@ -210,28 +424,32 @@ public class FileServiceImpl implements FileService {
         String to = createKey(request.getUser().getId(), request.getTo());
 
         if (from.endsWith("/")) {
-            if (!storageManager.isDirectory(from)) {
-                log.warn("User [{}] unsuccessfully moved resource: from = {} to = {}. Source directory does not exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
-                throw new DirectoryNotFound(extractNameFromKey(request.getFrom()));
-            }
-
-            if (storageManager.isDirectory(to)) {
-                log.warn("User [{}] unsuccessfully moved directory: from = {} to = {}. Target directory is already exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
-                throw new DirectoryAlreadyExists(extractNameFromKey(request.getTo()));
-            }
+            preflightChecks.runAll(List.of(() -> {
+                if (!storageManager.isDirectory(from)) {
+                    log.warn("User [{}] unsuccessfully moved resource: from = {} to = {}. Source directory does not exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
+                    throw new DirectoryNotFound(extractNameFromKey(request.getFrom()));
+                }
+            }, () -> {
+                if (storageManager.isDirectory(to)) {
+                    log.warn("User [{}] unsuccessfully moved directory: from = {} to = {}. Target directory is already exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
+                    throw new DirectoryAlreadyExists(extractNameFromKey(request.getTo()));
+                }
+            }));
 
             storageManager.moveDirectory(from, to);
             log.info("User [{}] moved directory: from = {}; to = {}", request.getUser().getUsername(), request.getFrom(), request.getTo());
         } else {
-            if (!storageManager.exists(from)) {
-                log.warn("User [{}] unsuccessfully moved resource: from = {} to = {}. Source resource is not exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
-                throw new ResourceNotFound(extractNameFromKey(request.getFrom()));
-            }
-
-            if (storageManager.exists(to)) {
-                log.warn("User [{}] unsuccessfully moved resource: from = {} to = {}. Target resource is already exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
-                throw new ResourceAlreadyExists(extractNameFromKey(request.getTo()));
-            }
+            preflightChecks.runAll(List.of(() -> {
+                if (!storageManager.exists(from)) {
+                    log.warn("User [{}] unsuccessfully moved resource: from = {} to = {}. Source resource is not exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
+                    throw new ResourceNotFound(extractNameFromKey(request.getFrom()));
+                }
+            }, () -> {
+                if (storageManager.exists(to)) {
+                    log.warn("User [{}] unsuccessfully moved resource: from = {} to = {}. Target resource is already exists", request.getUser().getUsername(), request.getTo(), request.getFrom());
+                    throw new ResourceAlreadyExists(extractNameFromKey(request.getTo()));
+                }
+            }));
 
             storageManager.moveFile(from, to);
             log.info("User [{}] moved resource: from = {}; to = {}", request.getUser().getUsername(), request.getFrom(), request.getTo());
@@ -265,26 +483,121 @@ public class FileServiceImpl implements FileService {
             throw new ResourceNotFound(extractNameFromKey(request.getPath()));
         }
 
-        ResourceMetadata metadata;
         String filename = createDownloadName(request.getPath(), request.getUser().getUsername(), resource.getType());
 
         if (resource.getType() == Type.DIRECTORY) {
-            metadata = storageManager.downloadDirectory(resource.getKey(), filename);
-            filename += ".zip";
-            log.info("User [{}] downloaded directory: {}", request.getUser().getUsername(), request.getPath() + filename);
-        } else {
+            String directoryName = filename;
+            ArchiveFormat format = (request.getFormat() != null) ? request.getFormat() : ArchiveFormat.ZIP_DEFLATE;
+            int level = (request.getLevel() != null) ? request.getLevel() : Deflater.DEFAULT_COMPRESSION;
+            log.info("User [{}] downloading directory: {} as {}", request.getUser().getUsername(), request.getPath(), format.getValue());
+
+            return DownloadResourceDTO.builder()
+                    .filename(directoryName + format.getExtension())
+                    .key(key)
+                    .type(resource.getType())
+                    .body(transferMetrics.downloadArchive(format,
+                            out -> storageManager.downloadDirectory(resource.getKey(), directoryName, format, level, out)))
+                    .build();
+        }
+
+        ResourceMetadata metadata;
+        HttpRange range = resolveRange(request, resource);
+
+        if (range == null) {
             metadata = storageManager.downloadFile(key);
-            log.info("User [{}}] downloaded file: {}", request.getUser().getUsername(), request.getPath() + filename);
+        } else {
+            long start = range.getRangeStart(resource.getSize());
+            if (start >= resource.getSize()) {
+                log.warn("User [{}] requested unsatisfiable range {} of resource {}", request.getUser().getUsername(), request.getRange(), request.getPath());
+                throw new RangeNotSatisfiable(request.getRange(), resource.getSize());
+            }
+            metadata = storageManager.downloadFile(key, start, range.getRangeEnd(resource.getSize()));
         }
+        log.info("User [{}] downloaded file: {}", request.getUser().getUsername(), request.getPath() + filename);
 
         return DownloadResourceDTO.builder()
                 .filename(filename)
+                .key(key)
                 .type(resource.getType())
-                .data(metadata.getData())
-                .type(resource.getType())
+                .contentLength(metadata.getContentLength())
+                .contentRange(metadata.getContentRange())
+                .etag(resource.getEtag())
+                .lastModified(resource.getLastModified())
+                .body(transferMetrics.download((metadata.getFile() != null)
+                        ? streamOf(metadata.getFile(), metadata.getFileOffset(), metadata.getContentLength(), metadata.getRelease())
+                        : streamOf(metadata.getData())))
+                .file(metadata.getFile())
+                .fileOffset(metadata.getFileOffset())
+                .release(metadata.getRelease())
                 .build();
     }
 
+    private HttpRange resolveRange(ResourceRequestDTO request, StorageDTO resource) {
+        if (request.getRange() == null || (request.getIfRange() != null && !matchesIfRange(request.getIfRange(), resource))) {
+            return null;
+        }
+
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(request.getRange());
+            // multipart/byteranges не поддерживаем: отдаём объект целиком
+            return (ranges.size() == 1) ? ranges.getFirst() : null;
+        } catch (IllegalArgumentException e) {
+            log.warn("User [{}] sent malformed range {}: {}", request.getUser().getUsername(), request.getRange(), e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean matchesIfRange(String ifRange, StorageDTO resource) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // If-Range требует строгого сравнения, weak ETag никогда не совпадает
+            return ifRange.equals(resource.getEtag());
+        }
+
+        try {
+            Instant date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return resource.getLastModified() != null
+                    && date.equals(resource.getLastModified().truncatedTo(ChronoUnit.SECONDS));
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static StreamingResponseBody streamOf(InputStream data) {
+        return out -> {
+            try {
+                data.transferTo(out);
+            } catch (IOException | RuntimeException e) {
+                // клиент оборвал соединение: не дочитываем остаток объекта из S3
+                if (data instanceof Abortable abortable) {
+                    abortable.abort();
+                }
+                throw e;
+            } finally {
+                data.close();
+            }
+        };
+    }
+
+    private static StreamingResponseBody streamOf(Path file, long offset, long length, Runnable release) {
+        return out -> {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                // запасной путь без sendfile: Channels.newChannel копирует данные через буфер в куче,
+                // так что передача здесь не zero-copy
+                WritableByteChannel target = Channels.newChannel(out);
+                for (long sent = 0; sent < length; ) {
+                    long n = channel.transferTo(offset + sent, length - sent, target);
+                    // файл короче ожидаемого: transferTo возвращал бы 0 бесконечно
+                    if (n == 0 && offset + sent >= channel.size()) {
+                        throw new EOFException("Cached file " + file + " ended after " + sent + " of " + length + " bytes");
+                    }
+                    sent += n;
+                }
+            } finally {
+                release.run();
+            }
+        };
+    }
+
     private String createDownloadName(String path, String username, Type type) {
         if (path.startsWith("/")) {
             path = path.substring(1);
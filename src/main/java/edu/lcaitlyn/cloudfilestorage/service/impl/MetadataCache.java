@@ -0,0 +1,150 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Кэш ответов S3 на вопросы "что лежит по ключу" и "есть ли такая папка", включая отрицательные.
+ * Ограничен по примерному объёму в байтах и по времени жизни записи; любая запись в хранилище
+ * через {@link #invalidate(String)} сбрасывает сам ключ, всех его предков и всех потомков.
+ * <p>
+ * Сброс не перебирает кэш: каждая запись помнит момент начала своей загрузки (значение счётчика), а сброс
+ * запоминает свой момент для записанного ключа и для папок над ним. Запись устарела, если после начала её загрузки
+ * сбрасывались она сама, одна из папок над ней или что-то под ней, — так же отбрасывается загрузка, которая
+ * шла во время сброса и могла прочитать старое состояние. Проверка и сброс стоят O(глубины ключа).
+ */
+@Component
+public class MetadataCache {
+
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private static final long MAX_INVALIDATIONS = 100_000;
+
+    private record Stamped<T>(long stamp, T value) {
+    }
+
+    private final Cache<String, Stamped<Optional<StorageDTO>>> metadata;
+
+    private final Cache<String, Stamped<Boolean>> directories;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    // ключ -> момент последнего сброса самого ключа
+    private final Cache<String, Long> invalidated;
+
+    // папка -> момент последнего сброса ключа под ней
+    private final Cache<String, Long> invalidatedBelow;
+
+    // записи, загруженные раньше, устарели: вытесненный по размеру момент сброса больше не проверить
+    private final AtomicLong floor = new AtomicLong();
+
+    public MetadataCache(StorageProperties storageProperties, MeterRegistry meterRegistry) {
+        long maxWeight = storageProperties.getMetadataCacheMaxSize().toBytes() / 2;
+        Duration ttl = storageProperties.getMetadataCacheTtl();
+
+        this.metadata = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .<String, Stamped<Optional<StorageDTO>>>weigher((key, value) -> ENTRY_OVERHEAD + 2 * key.length()
+                        + value.value().map(dto -> 2 * dto.getKey().length()).orElse(0))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        this.directories = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .<String, Stamped<Boolean>>weigher((key, value) -> ENTRY_OVERHEAD + 2 * key.length())
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        // момент сброса нужен, пока живы записи, загруженные до него: не дольше ttl
+        this.invalidated = invalidations(ttl);
+        this.invalidatedBelow = invalidations(ttl);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, metadata, "storage.metadata");
+        CaffeineCacheMetrics.monitor(meterRegistry, directories, "storage.directories");
+    }
+
+    private Cache<String, Long> invalidations(Duration ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(MAX_INVALIDATIONS)
+                .expireAfterWrite(ttl)
+                .<String, Long>evictionListener((key, stamp, cause) -> {
+                    if (cause == RemovalCause.SIZE && stamp != null) {
+                        floor.accumulateAndGet(stamp, Math::max);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * @return закэшированные метаданные или результат {@code loader}; {@code null}, если объекта нет
+     */
+    public StorageDTO getMetadata(String key, Function<String, StorageDTO> loader) {
+        return get(metadata, key, k -> Optional.ofNullable(loader.apply(k))).orElse(null);
+    }
+
+    public boolean isDirectory(String key, Predicate<String> loader) {
+        return get(directories, key, loader::test);
+    }
+
+    public void invalidate(String key) {
+        long stamp = clock.incrementAndGet();
+
+        invalidated.asMap().merge(key, stamp, Math::max);
+        if (!key.endsWith("/")) {
+            // на случай, если ключ папки передан без "/"
+            invalidated.asMap().merge(key + "/", stamp, Math::max);
+        }
+        for (int slash = key.indexOf('/'); slash >= 0 && slash < key.length() - 1; slash = key.indexOf('/', slash + 1)) {
+            invalidatedBelow.asMap().merge(key.substring(0, slash + 1), stamp, Math::max);
+        }
+    }
+
+    /**
+     * Устаревшая запись загружается заново; если и эта загрузка пересеклась со сбросом, она возвращается
+     * вызывающему, а следующий запрос загрузит её ещё раз.
+     */
+    private <T> T get(Cache<String, Stamped<T>> cache, String key, Function<String, T> loader) {
+        Function<String, Stamped<T>> load = k -> {
+            long stamp = clock.get();
+            return new Stamped<>(stamp, loader.apply(k));
+        };
+
+        Stamped<T> cached = cache.get(key, load);
+        if (isStale(key, cached.stamp())) {
+            cache.asMap().remove(key, cached);
+            cached = cache.get(key, load);
+        }
+        return cached.value();
+    }
+
+    private boolean isStale(String key, long stamp) {
+        if (stamp < floor.get() || invalidatedAfter(invalidated, key, stamp) || invalidatedAfter(invalidatedBelow, key, stamp)) {
+            return true;
+        }
+        for (int slash = key.indexOf('/'); slash >= 0 && slash < key.length() - 1; slash = key.indexOf('/', slash + 1)) {
+            if (invalidatedAfter(invalidated, key.substring(0, slash + 1), stamp)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean invalidatedAfter(Cache<String, Long> invalidations, String key, long stamp) {
+        Long invalidatedAt = invalidations.getIfPresent(key);
+        return invalidatedAt != null && invalidatedAt > stamp;
+    }
+}
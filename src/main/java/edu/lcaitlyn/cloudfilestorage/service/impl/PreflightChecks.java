@@ -0,0 +1,57 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.exception.StorageException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Выполняет независимые проверки перед операцией (существование источника, отсутствие цели и т.п.) одновременно.
+ * Первая упавшая проверка отменяет остальные, и её исключение пробрасывается вызывающему как есть.
+ * Проверки выполняются на общем storageExecutor: в виртуальных потоках или в его пуле, смотря по
+ * {@code storage.executor.virtual}, и с трассой вызовов S3 отправившего их запроса.
+ */
+@Component
+public class PreflightChecks {
+
+    private final ExecutorService storageExecutor;
+
+    public PreflightChecks(ExecutorService storageExecutor) {
+        this.storageExecutor = storageExecutor;
+    }
+
+    public void runAll(List<Runnable> checks) {
+        if (checks.size() == 1) {
+            checks.getFirst().run();
+            return;
+        }
+
+        CompletionService<Void> completion = new ExecutorCompletionService<>(storageExecutor);
+        List<Future<Void>> futures = new ArrayList<>(checks.size());
+
+        try {
+            for (Runnable check : checks) {
+                futures.add(completion.submit(check, null));
+            }
+
+            for (int i = 0; i < checks.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while checking resources");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error error) throw error;
+            throw new StorageException("Error while checking resources", (Exception) e.getCause());
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+}
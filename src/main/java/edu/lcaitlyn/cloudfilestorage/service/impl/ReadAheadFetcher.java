@@ -0,0 +1,160 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.FetchedObject;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Скачивает объекты с опережением: пока потребитель обрабатывает объект i, следующие
+ * {@code storage.download.read-ahead.objects} объектов уже загружаются параллельно.
+ * Объекты отдаются строго в порядке списка. Заранее буферизуются только небольшие объекты и только
+ * в пределах бюджета {@code storage.download.read-ahead.budget}; крупные читаются потоком в момент обработки.
+ * Бюджет общий для всех скачиваний приложения: если его заняли другие архивы, объекты читаются потоком,
+ * а не буферизуются сверх него.
+ */
+@Component
+public class ReadAheadFetcher {
+
+    private final S3Repository s3Repository;
+
+    private final ExecutorService storageExecutor;
+
+    private final StorageProperties storageProperties;
+
+    // байты, которые все скачивания вместе могут держать в буферах опережения
+    private final Semaphore budget;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final Timer stallTimer;
+
+    private final Counter directCounter;
+
+    public ReadAheadFetcher(S3Repository s3Repository,
+                            ExecutorService storageExecutor,
+                            StorageProperties storageProperties,
+                            MeterRegistry meterRegistry) {
+        this.s3Repository = s3Repository;
+        this.storageExecutor = storageExecutor;
+        this.storageProperties = storageProperties;
+        this.budget = new Semaphore((int) Math.min(storageProperties.getReadAheadBudget().toBytes(), Integer.MAX_VALUE));
+
+        meterRegistry.gauge("storage.readahead.queue.depth", queueDepth);
+        meterRegistry.gauge("storage.readahead.budget.available", budget, Semaphore::availablePermits);
+        this.stallTimer = Timer.builder("storage.readahead.stall")
+                .description("Time the consumer waited for an object that was still being fetched")
+                .register(meterRegistry);
+        this.directCounter = Counter.builder("storage.readahead.direct")
+                .description("Objects streamed in place because they did not fit the read-ahead budget")
+                .register(meterRegistry);
+    }
+
+    @FunctionalInterface
+    public interface FetchedObjectConsumer {
+        void accept(FetchedObject object) throws IOException;
+    }
+
+    public void forEach(List<S3Object> objects, FetchedObjectConsumer consumer) throws IOException {
+        int window = storageProperties.getReadAheadObjects();
+        long maxObjectSize = Math.min(storageProperties.getReadAheadMaxObjectSize().toBytes(), Integer.MAX_VALUE);
+
+        Map<Integer, Future<FetchedObject>> pending = new HashMap<>();
+        int scheduled = 0;
+
+        try {
+            for (int i = 0; i < objects.size(); i++) {
+                scheduled = Math.max(scheduled, i);
+                while (scheduled < objects.size() && scheduled < i + window) {
+                    S3Object next = objects.get(scheduled);
+                    if (next.size() <= maxObjectSize) {
+                        if (!budget.tryAcquire(next.size().intValue())) break;
+                        pending.put(scheduled, prefetch(next));
+                    }
+                    scheduled++;
+                }
+
+                S3Object object = objects.get(i);
+                Future<FetchedObject> future = pending.remove(i);
+
+                if (future == null) {
+                    directCounter.increment();
+                    try (ResponseInputStream<GetObjectResponse> rIS = s3Repository.downloadObject(object.key())) {
+                        consumer.accept(FetchedObject.builder()
+                                .key(object.key())
+                                .size(object.size())
+                                .contentType(rIS.response().contentType())
+                                .data(rIS)
+                                .build());
+                    }
+                    continue;
+                }
+
+                try {
+                    consumer.accept(await(future));
+                } finally {
+                    queueDepth.decrementAndGet();
+                    budget.release(object.size().intValue());
+                }
+            }
+        } finally {
+            // бюджет общий, поэтому байты отменённых объектов возвращаются в него
+            for (Map.Entry<Integer, Future<FetchedObject>> entry : pending.entrySet()) {
+                entry.getValue().cancel(true);
+                queueDepth.decrementAndGet();
+                budget.release(objects.get(entry.getKey()).size().intValue());
+            }
+        }
+    }
+
+    private Future<FetchedObject> prefetch(S3Object object) {
+        queueDepth.incrementAndGet();
+        return storageExecutor.submit(() -> {
+            try (ResponseInputStream<GetObjectResponse> rIS = s3Repository.downloadObject(object.key())) {
+                byte[] bytes = rIS.readAllBytes();
+                return FetchedObject.builder()
+                        .key(object.key())
+                        .size(bytes.length)
+                        .contentType(rIS.response().contentType())
+                        .bytes(bytes)
+                        .data(new ByteArrayInputStream(bytes))
+                        .build();
+            }
+        });
+    }
+
+    private FetchedObject await(Future<FetchedObject> future) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for object");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IOException(e.getCause());
+        } finally {
+            stallTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.enums.Type;
+import edu.lcaitlyn.cloudfilestorage.models.StoredResource;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.StoredResourceRepository;
+import edu.lcaitlyn.cloudfilestorage.utils.FileServiceUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Каталог ресурсов в Postgres (таблица {@code resources}): по строке на каждый файл и папку,
+ * включая папки, которые в S3 существуют только как общий префикс.
+ * <p>
+ * Пока каталог актуален ({@link #isReady()}), просмотр, поиск и метаданные читаются из него без LIST/HEAD в S3.
+ * Записи в S3 и в Postgres не могут быть одной транзакцией, поэтому каталог обновляется сразу после успешной
+ * записи в S3. Если обновление не удалось, каталог помечается неактуальным (чтение снова идёт в S3) и
+ * перестраивается из бакета. Кроме того, перестройка выполняется при старте (если таблица пуста — даже без
+ * {@code storage.catalog.reconcile-on-startup}) и по расписанию {@code storage.catalog.reconcile-cron},
+ * чтобы подобрать изменения, сделанные в бакете в обход приложения.
+ * Запрос перестройки во время идущей перестройки не теряется: после неё выполняется ещё один проход.
+ * <p>
+ * Таблица общая для всех экземпляров приложения, поэтому и актуальность общая: сбой записи увеличивает счётчик
+ * {@code storage:catalog:failures} в Redis, а успешная перестройка записывает в {@code storage:catalog:rebuilt}
+ * значение счётчика на начало своего прохода. Каталог читается, только пока счётчик не обогнал эту отметку;
+ * без Redis чтение идёт в S3.
+ */
+@Slf4j
+@Component
+public class ResourceCatalog {
+
+    private static final String USER_PREFIX = "user-";
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String FAILURES_KEY = "storage:catalog:failures";
+
+    private static final String REBUILT_KEY = "storage:catalog:rebuilt";
+
+    // проход, начатый раньше, не откатывает отметку более позднего прохода другого экземпляра
+    private static final RedisScript<Long> RAISE_REBUILT = RedisScript.of(
+            "local current = tonumber(redis.call('get', KEYS[1]) or '-1') "
+                    + "if tonumber(ARGV[1]) > current then redis.call('set', KEYS[1], ARGV[1]) end "
+                    + "return current", Long.class);
+
+    private final StoredResourceRepository resourceRepository;
+
+    private final S3Repository s3Repository;
+
+    private final ExecutorService storageExecutor;
+
+    private final StorageProperties storageProperties;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final StringRedisTemplate redis;
+
+    // каталог этого экземпляра перестроен и с тех пор не было его собственных сбоев записи
+    private final AtomicBoolean ready = new AtomicBoolean();
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // перестройку запросили после начала текущего прохода
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    public ResourceCatalog(StoredResourceRepository resourceRepository,
+                           S3Repository s3Repository,
+                           ExecutorService storageExecutor,
+                           StorageProperties storageProperties,
+                           PlatformTransactionManager transactionManager,
+                           JdbcTemplate jdbcTemplate,
+                           StringRedisTemplate redis) {
+        this.resourceRepository = resourceRepository;
+        this.s3Repository = s3Repository;
+        this.storageExecutor = storageExecutor;
+        this.storageProperties = storageProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = jdbcTemplate;
+        this.redis = redis;
+    }
+
+    /**
+     * @return {@code true}, если чтение можно обслуживать из каталога: он перестроен и ни один экземпляр
+     * не терял записей в него после начала последней перестройки
+     */
+    public boolean isReady() {
+        if (!ready.get()) {
+            return false;
+        }
+
+        try {
+            List<String> state = redis.opsForValue().multiGet(List.of(FAILURES_KEY, REBUILT_KEY));
+            return state != null && Long.parseLong(orZero(state.get(1))) >= Long.parseLong(orZero(state.get(0)));
+        } catch (DataAccessException e) {
+            log.warn("catalog state unavailable, reads stay on S3: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return метаданные ключа или {@code null}, если такого ресурса нет
+     */
+    public StorageDTO find(String key) {
+        return resourceRepository.findByKey(key)
+                .map(ResourceCatalog::toDTO)
+                .orElse(null);
+    }
+
+    public boolean isDirectory(String key) {
+        return resourceRepository.existsByKey(key) || resourceRepository.existsByParentKey(key);
+    }
+
+    /**
+     * @return те из {@code keys}, что есть в каталоге; один запрос на весь набор
+     */
+    public Set<String> findExisting(Collection<String> keys) {
+        Set<String> existing = new HashSet<>();
+        for (StoredResource resource : resourceRepository.findByKeyIn(keys)) {
+            existing.add(resource.getKey());
+        }
+        return existing;
+    }
+
+    /**
+     * @param after ключ, после которого начинать, или {@code null} для начала папки
+     * @param limit максимум элементов или {@code null} для всей папки
+     * @return содержимое папки (без вложенных уровней) по порядку ключей или {@code null}, если такой папки нет
+     */
+    public List<StorageDTO> listDirectory(String key, String after, Integer limit) {
+        Limit max = (limit == null) ? Limit.unlimited() : Limit.of(limit);
+        List<StoredResource> children = (after == null)
+                ? resourceRepository.findByParentKeyOrderByKey(key, max)
+                : resourceRepository.findByParentKeyAndKeyGreaterThanOrderByKey(key, after, max);
+
+        if (children.isEmpty() && after == null && !resourceRepository.existsByKey(key)) {
+            return null;
+        }
+
+        return children.stream()
+                .map(ResourceCatalog::toDTO)
+                .toList();
+    }
+
+    /**
+     * @return все ресурсы внутри папки на любой глубине, без самой папки
+     */
+    public List<StorageDTO> listSubtree(String key) {
+        return resourceRepository.findSubtree(userIdOf(key), likePrefix(key)).stream()
+                .filter(resource -> !resource.getKey().equals(key))
+                .map(ResourceCatalog::toDTO)
+                .toList();
+    }
+
+    /**
+     * Поиск по имени среди всех ресурсов пользователя, которому принадлежит {@code key}.
+     *
+     * @param prefix {@code true} — имя начинается с {@code query}, иначе содержит его
+     * @param after  ключ, после которого продолжать, или {@code null} для начала
+     * @return не более {@code limit} найденных ресурсов по порядку ключей
+     */
+    public List<StorageDTO> search(String key, String query, boolean prefix, String after, int limit) {
+        String pattern = (prefix ? "" : "%") + escapeLike(query) + "%";
+
+        return resourceRepository.searchByName(userIdOf(key), pattern, (after == null) ? "" : after, limit).stream()
+                .map(ResourceCatalog::toDTO)
+                .toList();
+    }
+
+    public void recordFile(StorageDTO file) {
+        write(file.getKey(), () -> {
+            Instant now = Instant.now();
+            upsert(file.getKey(), Type.FILE, file.getSize(), file.getEtag(), file.getLastModified(), now);
+            upsertDirectories(file.getKey(), now);
+        });
+    }
+
+    /**
+     * Записывает папки, в которых лежит ключ (для ключа папки — включая её саму).
+     */
+    public void recordDirectories(String key) {
+        write(key, () -> upsertDirectories(key, Instant.now()));
+    }
+
+    public void remove(String key) {
+        write(key, () -> resourceRepository.deleteByKey(key));
+    }
+
+    public void removeSubtree(String key) {
+        write(key, () -> resourceRepository.deleteSubtree(userIdOf(key), likePrefix(key)));
+    }
+
+    /**
+     * Переносит ключ (папку — со всем содержимым) одним UPDATE, не перечитывая бакет.
+     * Строки, которые занимали новые ключи, удаляются.
+     */
+    public void move(String fromKey, String toKey) {
+        write(toKey, () -> {
+            Long userId = userIdOf(fromKey);
+            if (toKey.endsWith("/")) {
+                resourceRepository.deleteSubtree(userId, likePrefix(toKey));
+            } else {
+                resourceRepository.deleteByKey(toKey);
+            }
+            resourceRepository.move(userId, fromKey.endsWith("/") ? likePrefix(fromKey) : escapeLike(fromKey),
+                    fromKey, toKey, parentKeyOf(toKey), FileServiceUtils.extractNameFromKey(toKey), Instant.now());
+        });
+    }
+
+    /**
+     * Перечитывает ключ из S3: для файла — HEAD, для папки — всё её содержимое.
+     * Используется после операций, результат которых проще прочитать, чем вычислить (копирование, перенос).
+     */
+    public void refresh(String key) {
+        if (!storageProperties.isCatalogEnabled()) {
+            return;
+        }
+
+        try {
+            if (key.endsWith("/")) {
+                reconcile(key);
+                return;
+            }
+
+            HeadObjectResponse response;
+            try {
+                response = s3Repository.getObject(key);
+            } catch (NoSuchKeyException e) {
+                remove(key);
+                return;
+            }
+
+            recordFile(StorageDTO.builder()
+                    .key(key)
+                    .type(Type.FILE)
+                    .size(response.contentLength())
+                    .etag(response.eTag())
+                    .lastModified(response.lastModified())
+                    .build());
+        } catch (RuntimeException e) {
+            failed(key, e);
+        }
+    }
+
+    /**
+     * Триграммный индекс по имени обслуживает и поиск подстроки, и поиск по префиксу.
+     * Hibernate (ddl-auto) такие индексы не создаёт; если расширение pg_trgm недоступно,
+     * поиск продолжает работать, но полным просмотром строк пользователя.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createSearchIndex() {
+        if (!storageProperties.isCatalogEnabled()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.execute("create extension if not exists pg_trgm");
+            jdbcTemplate.execute("create index if not exists idx_resources_name_trgm on resources using gin (name gin_trgm_ops)");
+        } catch (DataAccessException e) {
+            log.warn("failed to create search index, search will scan user rows: " + e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!storageProperties.isCatalogEnabled()) {
+            return;
+        }
+
+        // пустая таблица — первый запуск или сброшенная база, а не пустой бакет
+        if (!storageProperties.isCatalogReconcileOnStartup() && hasRows()) {
+            ready.set(true);
+        } else {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * Перестраивает каталог. Если перестройка уже идёт, запрос выполняет она же: после текущего прохода
+     * запускается ещё один, а каталог становится актуальным только после прохода, во время которого
+     * новых запросов не было.
+     */
+    @Scheduled(cron = "${storage.catalog.reconcile-cron}")
+    public void rebuild() {
+        if (!storageProperties.isCatalogEnabled()) {
+            return;
+        }
+
+        dirty.set(true);
+        while (dirty.get() && rebuilding.compareAndSet(false, true)) {
+            try {
+                dirty.set(false);
+                long start = System.currentTimeMillis();
+                // проход покрывает сбои, отмеченные до его начала: их записи в S3 уже сделаны
+                String failures = sharedFailures();
+                long count = reconcile("");
+                // failed() сначала ставит dirty, потом снимает ready, поэтому сбой во время прохода не потеряется
+                if (!dirty.get()) {
+                    ready.set(true);
+                    publishRebuilt(failures);
+                }
+                log.info("catalog rebuilt: " + count + " objects in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (RuntimeException e) {
+                log.error("catalog rebuild failed, reads stay on S3: " + e.getMessage(), e);
+            } finally {
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    private void scheduleRebuild() {
+        storageExecutor.execute(this::rebuild);
+    }
+
+    private boolean hasRows() {
+        try {
+            return Boolean.TRUE.equals(jdbcTemplate.queryForObject("select exists (select 1 from resources)", Boolean.class));
+        } catch (DataAccessException e) {
+            log.warn("failed to check catalog table, rebuilding: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @return значение общего счётчика сбоев или {@code null}, если Redis недоступен
+     */
+    private String sharedFailures() {
+        try {
+            return orZero(redis.opsForValue().get(FAILURES_KEY));
+        } catch (DataAccessException e) {
+            log.warn("catalog state unavailable, rebuild will not be shared: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void publishRebuilt(String failures) {
+        if (failures == null) {
+            return;
+        }
+
+        try {
+            redis.execute(RAISE_REBUILT, List.of(REBUILT_KEY), failures);
+        } catch (DataAccessException e) {
+            log.warn("failed to share catalog rebuild: " + e.getMessage());
+        }
+    }
+
+    private static String orZero(String counter) {
+        return (counter == null) ? "0" : counter;
+    }
+
+    /**
+     * Сверяет с бакетом все строки под префиксом: найденные объекты записываются с отметкой прохода
+     * в {@code synced_at}, а строки без неё удаляются, если объекта нет и в S3 (см. {@link #removeUnlisted}).
+     */
+    private long reconcile(String prefix) {
+        // отметка только различает строки этого прохода и с часами других экземпляров не сравнивается
+        Instant pass = Instant.now();
+        Set<String> seenDirectories = new HashSet<>();
+        long count = 0;
+        String continuationToken = null;
+
+        do {
+            ListObjectsV2Response page = s3Repository.listObjects(prefix, continuationToken);
+            List<S3Object> objects = page.contents();
+
+            transactionTemplate.executeWithoutResult(status -> {
+                for (S3Object object : objects) {
+                    boolean isDirectory = object.key().endsWith("/") && object.size() == 0;
+                    if (isDirectory) {
+                        seenDirectories.add(object.key());
+                    }
+                    upsert(object.key(), isDirectory ? Type.DIRECTORY : Type.FILE,
+                            object.size(), object.eTag(), object.lastModified(), pass);
+
+                    for (String directory : FileServiceUtils.directoriesOf(object.key())) {
+                        if (seenDirectories.add(directory)) {
+                            upsert(directory, Type.DIRECTORY, 0, null, null, pass);
+                        }
+                    }
+                }
+            });
+
+            count += objects.size();
+            continuationToken = page.nextContinuationToken();
+        } while (continuationToken != null);
+
+        removeUnlisted(prefix, pass);
+        return count;
+    }
+
+    /**
+     * Удаляет строки под префиксом, которых не было в листинге прохода {@code pass}. Такая строка могла появиться
+     * параллельно проходу (объект записан после того, как листинг миновал его ключ), поэтому удаляется только
+     * после проверки в S3: файл — HEAD, папка — есть ли под ней хоть один объект. Время записи строки
+     * при этом не важно, и расхождение часов между экземплярами приложения не приводит к потере строк.
+     */
+    private void removeUnlisted(String prefix, Instant pass) {
+        String after = "";
+        List<String> keys;
+
+        do {
+            keys = prefix.isEmpty()
+                    ? resourceRepository.findKeysNotSynced(pass, after, Limit.of(PAGE_SIZE))
+                    : resourceRepository.findSubtreeKeysNotSynced(userIdOf(prefix), likePrefix(prefix), pass, after, Limit.of(PAGE_SIZE));
+
+            List<String> missing = keys.stream()
+                    .filter(key -> !existsInS3(key))
+                    .toList();
+            if (!missing.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> missing.forEach(resourceRepository::deleteByKey));
+            }
+
+            if (!keys.isEmpty()) {
+                after = keys.getLast();
+            }
+        } while (keys.size() == PAGE_SIZE);
+    }
+
+    private boolean existsInS3(String key) {
+        if (key.endsWith("/")) {
+            ListObjectsV2Response page = s3Repository.listKeyObjects(key, 1);
+            return !page.contents().isEmpty() || !page.commonPrefixes().isEmpty();
+        }
+
+        try {
+            s3Repository.getObject(key);
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        }
+    }
+
+    private void write(String key, Runnable update) {
+        if (!storageProperties.isCatalogEnabled()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> update.run());
+        } catch (RuntimeException e) {
+            failed(key, e);
+        }
+    }
+
+    /**
+     * Запись в S3 уже выполнена, поэтому ошибка каталога не возвращается пользователю:
+     * каталог перестаёт обслуживать чтение на всех экземплярах до следующей успешной перестройки.
+     */
+    private void failed(String key, RuntimeException e) {
+        log.error("failed to update catalog for key: " + key + ", rebuilding (" + e.getMessage() + ")", e);
+        dirty.set(true);
+        ready.set(false);
+        try {
+            redis.opsForValue().increment(FAILURES_KEY);
+        } catch (DataAccessException ex) {
+            log.error("failed to mark catalog stale for other instances: " + ex.getMessage());
+        }
+        scheduleRebuild();
+    }
+
+    private void upsertDirectories(String key, Instant now) {
+        List<String> directories = FileServiceUtils.directoriesOf(key);
+
+        Set<String> existing = new HashSet<>();
+        resourceRepository.findByKeyIn(directories).forEach(resource -> existing.add(resource.getKey()));
+
+        for (String directory : directories) {
+            if (!existing.contains(directory)) {
+                upsert(directory, Type.DIRECTORY, 0, null, null, now);
+            }
+        }
+    }
+
+    private void upsert(String key, Type type, long size, String etag, Instant modifiedAt, Instant now) {
+        resourceRepository.upsert(userIdOf(key), key, parentKeyOf(key), FileServiceUtils.extractNameFromKey(key),
+                type.name(), size, etag, modifiedAt, now);
+    }
+
+    private static StorageDTO toDTO(StoredResource resource) {
+        return StorageDTO.builder()
+                .key(resource.getKey())
+                .type(resource.getType())
+                .size(resource.getSize())
+                .etag(resource.getEtag())
+                .lastModified(resource.getModifiedAt())
+                .build();
+    }
+
+    /**
+     * "user-1-files/a/b.txt" -> "user-1-files/a/"; "user-1-files/a/" -> "user-1-files/"; "user-1-files/" -> ""
+     */
+    static String parentKeyOf(String key) {
+        int end = key.endsWith("/") ? key.length() - 1 : key.length();
+        return key.substring(0, key.lastIndexOf('/', end - 1) + 1);
+    }
+
+    /**
+     * "user-1-files/a/" -> 1; {@code null} для ключей вне пользовательских папок
+     */
+    static Long userIdOf(String key) {
+        int end = key.indexOf('-', USER_PREFIX.length());
+        if (!key.startsWith(USER_PREFIX) || end < 0) {
+            return null;
+        }
+
+        try {
+            return Long.parseLong(key, USER_PREFIX.length(), end, 10);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Префикс для LIKE с экранированием '%', '_' и '\', которые могут встречаться в именах файлов.
+     */
+    static String likePrefix(String prefix) {
+        return escapeLike(prefix) + "%";
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+}
@@ -1,35 +1,79 @@
 package edu.lcaitlyn.cloudfilestorage.service.impl;
 
+import edu.lcaitlyn.cloudfilestorage.DTO.DeleteResult;
+import edu.lcaitlyn.cloudfilestorage.DTO.DirectoryPage;
 import edu.lcaitlyn.cloudfilestorage.DTO.ResourceMetadata;
 import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
 import edu.lcaitlyn.cloudfilestorage.enums.Type;
 import edu.lcaitlyn.cloudfilestorage.exception.StorageException;
+import edu.lcaitlyn.cloudfilestorage.exception.UploadSessionsNotSupported;
+import edu.lcaitlyn.cloudfilestorage.repository.MultipartUploadRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.RenamableRepository;
 import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
 import edu.lcaitlyn.cloudfilestorage.service.StorageManager;
+import edu.lcaitlyn.cloudfilestorage.service.impl.archive.ArchiveWriter;
+import edu.lcaitlyn.cloudfilestorage.utils.FileServiceUtils;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.model.*;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Service
 @AllArgsConstructor
 public class StorageManagerImpl implements StorageManager {
 
+    // U+10FFFF: в UTF-8 больше любого другого символа, поэтому "a/b/" + LAST_CHARACTER идёт после всех ключей "a/b/..."
+    private static final String LAST_CHARACTER = new String(Character.toChars(Character.MAX_CODE_POINT));
+
     private final S3Repository s3Repository;
 
+    private final ReadAheadFetcher readAheadFetcher;
+
+    private final BatchDeleter batchDeleter;
+
+    private final CopyEngine copyEngine;
+
+    private final DirectoryMarkers directoryMarkers;
+
+    private final MetadataCache metadataCache;
+
+    private final DirectoryListingCache listingCache;
+
+    private final ResourceCatalog catalog;
+
+    private final DownloadCache downloadCache;
+
     @Override
     public StorageDTO getResourceMetadata(String key) {
+        return metadataCache.getMetadata(key, this::loadResourceMetadata);
+    }
+
+    private StorageDTO loadResourceMetadata(String key) {
+        if (catalog.isReady()) {
+            return catalog.find(key);
+        }
+
         try {
             HeadObjectResponse response = s3Repository.getObject(key);
             boolean isDirectory = isDirectory(key);
@@ -38,6 +82,8 @@ public class StorageManagerImpl implements StorageManager {
                     .key(key)
                     .type((isDirectory) ? Type.DIRECTORY : Type.FILE)
                     .size(response.contentLength())
+                    .etag(response.eTag())
+                    .lastModified(response.lastModified())
                     .build();
         } catch (NoSuchKeyException e) {
             return null;
@@ -46,61 +92,269 @@ public class StorageManagerImpl implements StorageManager {
         }
     }
 
+    private void invalidate(String key) {
+        metadataCache.invalidate(key);
+        listingCache.invalidate(key);
+        downloadCache.invalidate(key);
+    }
+
     @Override
     public boolean exists(String key) {
         return getResourceMetadata(key) != null;
     }
 
     @Override
-    public void save(String key, byte[] data, String contentType) {
+    public Set<String> findExisting(Collection<String> keys) {
+        if (catalog.isReady()) {
+            return catalog.findExisting(keys);
+        }
+
+        Map<String, Set<String>> byParent = new HashMap<>();
+        for (String key : keys) {
+            byParent.computeIfAbsent(ResourceCatalog.parentKeyOf(key), parent -> new HashSet<>()).add(key);
+        }
+
+        Set<String> existing = new HashSet<>();
         try {
-            createDirectory(key);
-            s3Repository.putObject(key, data, contentType);
-            log.info("saved key: " + key);
+            byParent.forEach((parent, wanted) -> listExisting(parent, wanted, existing));
         } catch (S3Exception e) {
+            throw new StorageException("Error while checking keys in: " + byParent.keySet(), e);
+        }
+        return existing;
+    }
+
+    /**
+     * Листает папку до последнего из искомых ключей (S3 отдаёт ключи по возрастанию их байтов в UTF-8),
+     * поэтому в большой папке читаются только страницы, где искомые ключи могут быть.
+     */
+    private void listExisting(String parent, Set<String> wanted, Set<String> existing) {
+        byte[] last = wanted.stream()
+                .map(key -> key.getBytes(StandardCharsets.UTF_8))
+                .max(Arrays::compareUnsigned)
+                .orElseThrow();
+
+        String continuationToken = null;
+        do {
+            ListObjectsV2Response page = s3Repository.listKeyObjects(parent, null, continuationToken, null);
+            for (S3Object object : page.contents()) {
+                if (wanted.contains(object.key())) {
+                    existing.add(object.key());
+                }
+            }
+
+            if (!page.contents().isEmpty()
+                    && Arrays.compareUnsigned(page.contents().getLast().key().getBytes(StandardCharsets.UTF_8), last) >= 0) {
+                return;
+            }
+            continuationToken = page.nextContinuationToken();
+        } while (continuationToken != null);
+    }
+
+    @Override
+    public StorageDTO save(String key, InputStream data, long size, String contentType) {
+        return save(key, data, size, contentType, new HashSet<>());
+    }
+
+    @Override
+    public StorageDTO save(String key, InputStream data, long size, String contentType, Set<String> confirmedDirectories) {
+        try {
+            createDirectory(key, confirmedDirectories);
+            String etag = s3Repository.putObject(key, data, size, contentType);
+            log.info("saved key: " + key);
+
+            StorageDTO saved = StorageDTO.builder()
+                    .key(key)
+                    .type(Type.FILE)
+                    .size(size)
+                    .etag(etag)
+                    .lastModified(Instant.now())
+                    .build();
+            catalog.recordFile(saved);
+            return saved;
+        } catch (S3Exception | UncheckedIOException e) {
             throw new StorageException("Error while saving data for key: " + key, e);
+        } finally {
+            invalidate(key);
         }
     }
 
     @Override
-    public List<StorageDTO> getDirectory(String key) {
+    public String startUpload(String key, String contentType) {
         try {
-            List<StorageDTO> list = new ArrayList<>();
+            String uploadId = multipart().createMultipartUpload(key, contentType);
+            log.info("started multipart upload for key: " + key);
+            return uploadId;
+        } catch (S3Exception | UncheckedIOException e) {
+            throw new StorageException("Error while starting upload for key: " + key, e);
+        }
+    }
 
-            ListObjectsV2Response response = s3Repository.listKeyObjects(key);
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream data, long size) {
+        try {
+            return multipart().uploadPart(key, uploadId, partNumber, data, size);
+        } catch (NoSuchUploadException e) {
+            // сессия истекла или закрыта параллельно
+            throw e;
+        } catch (S3Exception | UncheckedIOException e) {
+            throw new StorageException("Error while uploading part " + partNumber + " for key: " + key, e);
+        }
+    }
 
-            List<StorageDTO> files = response.contents().stream()
-                    .filter(obj -> !obj.key().equals(key))
-                    .map(obj -> StorageDTO.builder()
-                            .key(obj.key())
-                            .size(obj.size())
-                            .type(Type.FILE)
-                            .build())
-                    .toList();
+    @Override
+    public StorageDTO completeUpload(String key, String uploadId, Map<Integer, String> parts, long size) {
+        List<CompletedPart> completedParts = parts.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(part -> CompletedPart.builder().partNumber(part.getKey()).eTag(part.getValue()).build())
+                .toList();
 
-            List<StorageDTO> directories = response.commonPrefixes().stream()
-                    .map(obj -> StorageDTO.builder()
-                            .key(obj.prefix())
-                            .size(0L)
-                            .type(Type.DIRECTORY)
-                            .build())
-                    .toList();
+        try {
+            createDirectory(key);
+            String etag = multipart().completeMultipartUpload(key, uploadId, completedParts);
+            log.info("saved key: " + key + " from " + parts.size() + " parts");
 
-            list.addAll(files);
-            list.addAll(directories);
+            StorageDTO saved = StorageDTO.builder()
+                    .key(key)
+                    .type(Type.FILE)
+                    .size(size)
+                    .etag(etag)
+                    .lastModified(Instant.now())
+                    .build();
+            catalog.recordFile(saved);
+            return saved;
+        } catch (S3Exception | UncheckedIOException e) {
+            throw new StorageException("Error while completing upload for key: " + key, e);
+        } finally {
+            invalidate(key);
+        }
+    }
 
-            return list;
+    @Override
+    public void abortUpload(String key, String uploadId) {
+        try {
+            multipart().abortMultipartUpload(key, uploadId);
+            log.info("aborted multipart upload for key: " + key);
+        } catch (NoSuchUploadException e) {
+            // уже завершена или отменена
+        } catch (S3Exception | UncheckedIOException e) {
+            throw new StorageException("Error while aborting upload for key: " + key, e);
+        }
+    }
+
+    private MultipartUploadRepository multipart() {
+        if (s3Repository instanceof MultipartUploadRepository multipart) {
+            return multipart;
+        }
+        throw new UploadSessionsNotSupported();
+    }
+
+    @Override
+    public List<StorageDTO> getDirectory(String key) {
+        DirectoryPage page = getDirectory(key, null, null);
+        return (page == null) ? null : page.getItems();
+    }
+
+    @Override
+    public DirectoryPage getDirectory(String key, Integer limit, String cursor) {
+        return listingCache.get(key, limit, cursor, () -> loadDirectory(key, limit, cursor));
+    }
+
+    private DirectoryPage loadDirectory(String key, Integer limit, String cursor) {
+        String after = (cursor == null) ? null : key + decodeCursor(cursor);
+        // на один элемент больше, чтобы знать, есть ли следующая страница
+        Integer max = (limit == null) ? null : limit + 1;
+
+        List<StorageDTO> items = catalog.isReady()
+                ? catalog.listDirectory(key, after, max)
+                : listDirectory(key, after, max);
+
+        return (items == null) ? null : toPage(key, items, limit);
+    }
+
+    /**
+     * @param items до {@code limit + 1} элементов; лишний элемент означает, что есть следующая страница
+     */
+    private static DirectoryPage toPage(String key, List<StorageDTO> items, Integer limit) {
+        if (limit == null || items.size() <= limit) {
+            return DirectoryPage.builder().items(items).build();
+        }
+
+        items = items.subList(0, limit);
+        return DirectoryPage.builder()
+                .items(items)
+                .nextCursor(encodeCursor(items.getLast().getKey().substring(key.length())))
+                .build();
+    }
+
+    /**
+     * Читает страницы ListObjectsV2, пока не наберётся {@code max} элементов (или до конца папки, если {@code max == null}).
+     * Вложенные папки приходят как common prefixes; вместе с объектами они образуют один отсортированный по ключу поток.
+     */
+    private List<StorageDTO> listDirectory(String key, String after, Integer max) {
+        try {
+            List<StorageDTO> list = new ArrayList<>();
+            boolean exists = false;
+            String continuationToken = null;
+
+            // после папки "a/b/" S3 снова вернул бы её как common prefix для ключей "a/b/..."
+            String startAfter = (after != null && after.endsWith("/")) ? after + LAST_CHARACTER : after;
+
+            do {
+                ListObjectsV2Response response = s3Repository.listKeyObjects(key, startAfter, continuationToken,
+                        (max == null) ? null : max - list.size() + 1);
+                exists |= !response.contents().isEmpty() || !response.commonPrefixes().isEmpty();
+
+                List<StorageDTO> page = new ArrayList<>();
+                response.contents().stream()
+                        .filter(obj -> !obj.key().equals(key))
+                        .forEach(obj -> page.add(StorageDTO.builder()
+                                .key(obj.key())
+                                .size(obj.size())
+                                .type(Type.FILE)
+                                .build()));
+                response.commonPrefixes().forEach(obj -> page.add(StorageDTO.builder()
+                        .key(obj.prefix())
+                        .size(0L)
+                        .type(Type.DIRECTORY)
+                        .build()));
+                page.sort(Comparator.comparing(StorageDTO::getKey));
+                list.addAll(page);
+
+                continuationToken = response.nextContinuationToken();
+            } while (continuationToken != null && (max == null || list.size() < max));
+
+            if (!exists && after == null) {
+                return null;
+            }
+
+            return (max == null || list.size() <= max) ? list : list.subList(0, max);
         } catch (S3Exception e) {
             throw new StorageException("Error while getting metadata for key: " + key, e);
         }
     }
 
+    private static String encodeCursor(String name) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
     @Override
     public List<StorageDTO> getFullDirectory(String key) {
         if (!isDirectory(key)) {
             return null;
         }
 
+        if (catalog.isReady()) {
+            return catalog.listSubtree(key);
+        }
+
         try {
             List<StorageDTO> list = new ArrayList<>();
 
@@ -123,39 +377,68 @@ public class StorageManagerImpl implements StorageManager {
         }
     }
 
-    private String deleteFilenameForKey(String key) {
-        if (!key.endsWith("/")) {
-            return key.substring(0, key.lastIndexOf("/") + 1);
-        }
-        return key;
+    @Override
+    public List<StorageDTO> search(String key, String query, boolean prefix, int limit) {
+        return search(key, query, prefix, limit, null).getItems();
     }
 
-    private List<String> splitToDirectories(String dirKey) {
-        if (dirKey.isEmpty()) {
-            return Collections.emptyList();
-        }
-        return Arrays.stream(dirKey.split("/"))
-                .filter(s -> !s.isEmpty())
-                .toList();
+    @Override
+    public DirectoryPage search(String key, String query, boolean prefix, int limit, String cursor) {
+        String after = (cursor == null) ? null : key + decodeCursor(cursor);
+
+        List<StorageDTO> items = catalog.isReady()
+                ? catalog.search(key, query, prefix, after, limit + 1)
+                : scan(key, query, prefix, after, limit + 1);
+
+        return toPage(key, items, limit);
     }
 
-    @Override
-    public void createDirectory(String key) {
+    /**
+     * Без каталога остаётся только просмотр бакета, но страницы читаются до первых {@code max} совпадений.
+     */
+    private List<StorageDTO> scan(String key, String query, boolean prefix, String after, int max) {
         try {
-            key = deleteFilenameForKey(key);
+            List<StorageDTO> found = new ArrayList<>();
+            String continuationToken = null;
 
-            StringBuilder builder = new StringBuilder();
-            for (String dir : splitToDirectories(key)) {
-                builder.append(dir).append("/");
+            do {
+                ListObjectsV2Response page = s3Repository.listObjects(key, after, continuationToken);
+                for (S3Object obj : page.contents()) {
+                    String name = FileServiceUtils.extractNameFromKey(obj.key());
+                    if (obj.key().equals(key) || !(prefix ? name.startsWith(query) : name.contains(query))) continue;
 
-                String curDir = builder.toString();
-                if (!isDirectory(curDir)) {
-                    s3Repository.createDirectory(curDir);
-                    log.info("createdDirectory: " + curDir);
+                    found.add(StorageDTO.builder()
+                            .key(obj.key())
+                            .size(obj.size())
+                            .type(obj.key().endsWith("/") && obj.size() == 0 ? Type.DIRECTORY : Type.FILE)
+                            .build());
+                    if (found.size() >= max) {
+                        return found;
+                    }
                 }
-            }
+                continuationToken = page.nextContinuationToken();
+            } while (continuationToken != null);
+
+            return found;
+        } catch (S3Exception e) {
+            throw new StorageException("Error while searching in key: " + key, e);
+        }
+    }
+
+    @Override
+    public void createDirectory(String key) {
+        createDirectory(key, new HashSet<>());
+    }
+
+    @Override
+    public void createDirectory(String key, Set<String> confirmedDirectories) {
+        try {
+            directoryMarkers.ensure(key, confirmedDirectories);
+            catalog.recordDirectories(key);
         } catch (S3Exception e) {
             throw new StorageException("Error while creating directory for key: " + key, e);
+        } finally {
+            invalidate(key);
         }
     }
 
@@ -163,37 +446,50 @@ public class StorageManagerImpl implements StorageManager {
     public void deleteFile(String key) {
         try {
             s3Repository.deleteObject(key);
+            catalog.remove(key);
             log.info("deleted object key: " + key);
         } catch (S3Exception e) {
             throw new StorageException("Error while deleting key: " + key, e);
+        } finally {
+            invalidate(key);
         }
     }
 
     @Override
     public void deleteDirectory(String key) {
         try {
-            List<S3Object> objects = s3Repository.listAllObjects(key);
-            for (S3Object obj : objects) {
-                s3Repository.deleteObject(obj.key());
-                log.info("deleted key: " + obj.key());
+            DeleteResult result = batchDeleter.deletePrefix(key);
+            log.info("deleted " + result.getDeleted() + " objects under key: " + key);
+
+            if (result.getFailures().isEmpty()) {
+                catalog.removeSubtree(key);
+            } else {
+                catalog.refresh(key);
+                result.getFailures().forEach((failedKey, reason) -> log.error("failed to delete key: " + failedKey + " (" + reason + ")"));
+                throw new StorageException("Error while deleting key: " + key + ". "
+                        + result.getFailures().size() + " objects were not deleted, e.g. " + result.getFailures().keySet().iterator().next());
             }
         } catch (S3Exception e) {
+            // часть объектов могла быть удалена до ошибки листинга
+            catalog.refresh(key);
             throw new StorageException("Error while deleting key: " + key, e);
+        } finally {
+            invalidate(key);
         }
     }
 
-//    todo разбить на 2 метода -> copyFile, copyFolder. Проверка на папку должна происходить в FileService
-
-    //    todo Тут вся логика неправильная
-//    Мы должны сперва насоздавать папки когда копируем и туда раскидать файлы, потому что
     @Override
     public void copyFile(String sourceKey, String targetKey) {
         try {
             createDirectory(targetKey);
-            s3Repository.copyObject(sourceKey, targetKey);
+            long size = s3Repository.getObject(sourceKey).contentLength();
+            s3Repository.copyObject(sourceKey, targetKey, size);
+            catalog.refresh(targetKey);
             log.info("copied key: " + sourceKey + " to target key: " + targetKey);
         } catch (S3Exception e) {
             throw new StorageException("Error while copying file. Key: " + sourceKey, e);
+        } finally {
+            invalidate(targetKey);
         }
     }
 
@@ -201,23 +497,23 @@ public class StorageManagerImpl implements StorageManager {
     public void copyDirectory(String sourceKey, String targetKey) {
         try {
             createDirectory(targetKey);
-
-            List<S3Object> objects = s3Repository.listAllObjects(sourceKey);
-            for (S3Object obj : objects) {
-                String destination = targetKey + obj.key().substring(sourceKey.length());
-                if (destination.endsWith("/")) {
-                    createDirectory(destination);
-                } else {
-                    copyFile(obj.key(), destination);
-                }
-            }
+            copyEngine.copyPrefix(sourceKey, targetKey, false);
         } catch (S3Exception e) {
             throw new StorageException("Error while copying directory. Key: " + sourceKey, e);
+        } finally {
+            // и после частичного копирования каталог должен совпадать с бакетом
+            catalog.refresh(targetKey);
+            invalidate(targetKey);
         }
     }
 
     @Override
     public void moveFile(String sourceKey, String targetKey) {
+        if (s3Repository instanceof RenamableRepository renamable) {
+            rename(renamable, sourceKey, targetKey);
+            return;
+        }
+
         try {
             copyFile(sourceKey, targetKey);
             deleteFile(sourceKey);
@@ -229,68 +525,126 @@ public class StorageManagerImpl implements StorageManager {
 
     @Override
     public void moveDirectory(String sourceKey, String targetKey) {
+        if (s3Repository instanceof RenamableRepository renamable
+                && !targetKey.startsWith(sourceKey) && !sourceKey.startsWith(targetKey)) {
+            rename(renamable, sourceKey, targetKey);
+            return;
+        }
+
         try {
-            copyDirectory(sourceKey, targetKey);
-            deleteDirectory(sourceKey);
+            createDirectory(targetKey);
+            copyEngine.copyPrefix(sourceKey, targetKey, true);
             log.info("moved directory with key: " + sourceKey + " to target directory with key: " + targetKey);
         } catch (S3Exception e) {
             throw new StorageException("Error while moving key: " + sourceKey, e);
+        } finally {
+            catalog.refresh(sourceKey);
+            catalog.refresh(targetKey);
+            invalidate(sourceKey);
+            invalidate(targetKey);
+        }
+    }
+
+    /**
+     * Перенос без копирования: хранилище переписывает ключи одной транзакцией, объекты в S3 не меняются.
+     */
+    private void rename(RenamableRepository renamable, String sourceKey, String targetKey) {
+        try {
+            createDirectory(ResourceCatalog.parentKeyOf(targetKey));
+            long renamed = renamable.rename(sourceKey, targetKey);
+            catalog.move(sourceKey, targetKey);
+            log.info("renamed " + renamed + " keys from key: " + sourceKey + " to target key: " + targetKey);
+        } catch (S3Exception | DataAccessException e) {
+            throw new StorageException("Error while moving key: " + sourceKey, e);
+        } finally {
+            invalidate(sourceKey);
+            invalidate(targetKey);
         }
     }
 
     @Override
     public ResourceMetadata downloadFile(String key) {
-        try (ResponseInputStream<GetObjectResponse> rIS = s3Repository.downloadObject(key)) {
+        return downloadFile(key, null, null);
+    }
+
+    @Override
+    public ResourceMetadata downloadFile(String key, long rangeStart, long rangeEnd) {
+        return downloadFile(key, Long.valueOf(rangeStart), Long.valueOf(rangeEnd));
+    }
+
+    private ResourceMetadata downloadFile(String key, Long rangeStart, Long rangeEnd) {
+        try {
+            DownloadCache.Entry cached = downloadCache.find(key);
+            if (cached != null) {
+                return cachedFile(cached, rangeStart, rangeEnd);
+            }
+
+            String range = (rangeStart == null) ? null : "bytes=" + rangeStart + "-" + rangeEnd;
+            ResponseInputStream<GetObjectResponse> rIS = s3Repository.downloadObject(key, range);
             GetObjectResponse response = rIS.response();
 
             return ResourceMetadata.builder()
-                    .data(rIS.readAllBytes())
+                    // в кэш попадают только полные скачивания
+                    .data((range == null) ? downloadCache.fill(key, rIS) : rIS)
                     .contentType(response.contentType())
                     .contentLength(response.contentLength())
+                    .contentRange(response.contentRange())
                     .build();
-        } catch (S3Exception | IOException e) {
+        } catch (S3Exception e) {
             throw new StorageException("Error while downloading file with key: " + key, e);
         }
     }
 
+    private ResourceMetadata cachedFile(DownloadCache.Entry cached, Long rangeStart, Long rangeEnd) {
+        if (rangeStart == null) {
+            return ResourceMetadata.builder()
+                    .file(cached.file())
+                    .release(() -> downloadCache.release(cached))
+                    .contentType(cached.contentType())
+                    .contentLength(cached.size())
+                    .build();
+        }
+
+        long end = Math.min(rangeEnd, cached.size() - 1);
+        return ResourceMetadata.builder()
+                .file(cached.file())
+                .fileOffset(rangeStart)
+                .release(() -> downloadCache.release(cached))
+                .contentType(cached.contentType())
+                .contentLength(end - rangeStart + 1)
+                .contentRange("bytes " + rangeStart + "-" + end + "/" + cached.size())
+                .build();
+    }
+
     @Override
     public boolean isDirectory(String key) {
         if (!key.endsWith("/")) {
             key += "/";
         }
 
-        ListObjectsV2Response response = s3Repository.listKeyObjects(key, 1);
-        return !response.contents().isEmpty();
+        return metadataCache.isDirectory(key, k -> catalog.isReady()
+                ? catalog.isDirectory(k)
+                : !s3Repository.listKeyObjects(k, 1).contents().isEmpty());
     }
 
     @Override
-    public ResourceMetadata downloadDirectory(String key, String directoryName) {
-        if (!isDirectory(key)) {
-            throw new StorageException("Error while downloading folder with key. No such directory: " + key);
-        }
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (ZipOutputStream zos = new ZipOutputStream(baos)) {
-
-            List<S3Object> response = s3Repository.listAllObjects(key);
+    public void downloadDirectory(String key, String directoryName, ArchiveFormat format, int level, OutputStream out) {
+        // Архив пишется прямо в ответ: в памяти только буферы архиватора, независимо от размера папки
+        try {
+            ArchiveWriter archive = ArchiveWriter.create(format, level, out);
 
-            for (S3Object o : response) {
-                String name = o.key().substring(key.length());
+            List<S3Object> objects = s3Repository.listAllObjects(key).stream()
+                    .filter(o -> !o.key().equals(key))
+                    .toList();
 
-                if (name.isEmpty() || o.key().equals(key)) continue;
+            readAheadFetcher.forEach(objects, object -> {
+                archive.write(directoryName + "/" + object.getKey().substring(key.length()), object);
+                log.info("downloaded key: " + object.getKey());
+            });
 
-                try (ResponseInputStream<GetObjectResponse> rIS = s3Repository.downloadObject(o.key())) {
-                    zos.putNextEntry(new ZipEntry(directoryName + "/" + name));
-                    rIS.transferTo(zos);
-                    zos.closeEntry();
-                }
-                log.info("downloaded key: " + o.key());
-            }
+            archive.finish();
         } catch (S3Exception | IOException e) {
             throw new StorageException("Error while downloading folder with key: " + key, e);
         }
-        return ResourceMetadata.builder()
-                .data(baos.toByteArray())
-                .build();
     }
 }
@@ -0,0 +1,140 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Метрики передачи данных между клиентами и сервисом: активные загрузки и скачивания
+ * ({@code storage.transfers.active}), переданные байты ({@code storage.transfer.bytes}), время сборки
+ * и размер архивов папок ({@code storage.archive.build}, {@code storage.archive.bytes}; отношение их скоростей —
+ * пропускная способность сборки архива).
+ */
+@Component
+public class TransferMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    private final Counter uploadedBytes;
+
+    private final Counter downloadedBytes;
+
+    public TransferMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("storage.transfers.active", activeUploads, AtomicInteger::get)
+                .description("Uploads and downloads in progress")
+                .tag("direction", "upload")
+                .register(meterRegistry);
+        Gauge.builder("storage.transfers.active", activeDownloads, AtomicInteger::get)
+                .description("Uploads and downloads in progress")
+                .tag("direction", "download")
+                .register(meterRegistry);
+        this.uploadedBytes = transferBytes("upload");
+        this.downloadedBytes = transferBytes("download");
+    }
+
+    private Counter transferBytes(String direction) {
+        return Counter.builder("storage.transfer.bytes")
+                .description("Bytes received from and sent to clients")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param size размер загружаемого файла; засчитывается, если загрузка прошла успешно
+     */
+    public <T> T upload(long size, Supplier<T> upload) {
+        activeUploads.incrementAndGet();
+        try {
+            T result = upload.get();
+            uploadedBytes.increment(size);
+            return result;
+        } finally {
+            activeUploads.decrementAndGet();
+        }
+    }
+
+    public StreamingResponseBody download(StreamingResponseBody body) {
+        return download(body, null);
+    }
+
+    /**
+     * Учитывает файл, который контейнер отдаёт сам через sendfile, минуя {@link #download(StreamingResponseBody)}.
+     */
+    public void sendFile(long bytes) {
+        downloadedBytes.increment(bytes);
+    }
+
+    public StreamingResponseBody downloadArchive(ArchiveFormat format, StreamingResponseBody body) {
+        return download(body, format);
+    }
+
+    private StreamingResponseBody download(StreamingResponseBody body, ArchiveFormat format) {
+        return out -> {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            activeDownloads.incrementAndGet();
+            long start = System.nanoTime();
+            String outcome = "error";
+            try {
+                body.writeTo(counting);
+                outcome = "success";
+            } finally {
+                activeDownloads.decrementAndGet();
+                downloadedBytes.increment(counting.count);
+
+                if (format != null) {
+                    Timer.builder("storage.archive.build")
+                            .description("Time to build and send a folder archive")
+                            .tag("format", format.getValue())
+                            .tag("outcome", outcome)
+                            .register(meterRegistry)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    Counter.builder("storage.archive.bytes")
+                            .description("Archive bytes sent to clients")
+                            .baseUnit("bytes")
+                            .tag("format", format.getValue())
+                            .register(meterRegistry)
+                            .increment(counting.count);
+                }
+            }
+        };
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import org.springframework.data.redis.connection.RedisZSetCommands.ZAddArgs;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Хранение сессий {@link UploadSessions} в Redis: хеш {@code storage:upload:session:<id>} с полями сессии
+ * и сроки сессий весами в {@code storage:upload:deadlines}. Ошибки Redis пробрасываются как
+ * {@link org.springframework.dao.DataAccessException}.
+ */
+@Component
+public class UploadSessionStore {
+
+    public static final String PART_FIELD = "part:";
+
+    private static final String SESSION_KEY = "storage:upload:session:";
+
+    private static final String DEADLINES_KEY = "storage:upload:deadlines";
+
+    private final StringRedisTemplate redis;
+
+    public UploadSessionStore(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * @param keep сколько хранить поля сессии, даже если её срок потерян
+     */
+    public void create(String id, Map<String, String> fields, Instant deadline, Duration keep) {
+        redis.opsForHash().putAll(SESSION_KEY + id, fields);
+        redis.expire(SESSION_KEY + id, keep);
+        redis.opsForZSet().add(DEADLINES_KEY, id, deadline.toEpochMilli());
+    }
+
+    /**
+     * @return поля сессии; ETag частей — в полях {@link #PART_FIELD}{@code <номер>}
+     */
+    public Map<String, String> fields(String id) {
+        Map<String, String> fields = new HashMap<>();
+        redis.opsForHash().entries(SESSION_KEY + id).forEach((field, value) -> fields.put(field.toString(), value.toString()));
+        return fields;
+    }
+
+    /**
+     * @return срок сессии или {@code null}, если её нет или она уже забрана
+     */
+    public Instant deadline(String id) {
+        Double deadline = redis.opsForZSet().score(DEADLINES_KEY, id);
+        return (deadline == null) ? null : Instant.ofEpochMilli(deadline.longValue());
+    }
+
+    /**
+     * Записывает часть и переносит срок, если сессия ещё не забрана.
+     *
+     * @return {@code false}, если сессия забрана: срок не возвращается
+     */
+    public boolean putPart(String id, int partNumber, String etag, Instant deadline, Duration keep) {
+        redis.opsForHash().put(SESSION_KEY + id, PART_FIELD + partNumber, etag);
+        redis.expire(SESSION_KEY + id, keep);
+        // XX: забранную сессию не возвращаем
+        redis.execute((RedisCallback<Boolean>) connection -> connection.zSetCommands().zAdd(
+                DEADLINES_KEY.getBytes(StandardCharsets.UTF_8), deadline.toEpochMilli(),
+                id.getBytes(StandardCharsets.UTF_8), ZAddArgs.ifExists()));
+        return deadline(id) != null;
+    }
+
+    /**
+     * @return {@code true} только для одного из конкурирующих вызовов
+     */
+    public boolean removeDeadline(String id) {
+        Long removed = redis.opsForZSet().remove(DEADLINES_KEY, id);
+        return removed != null && removed > 0;
+    }
+
+    public void putDeadline(String id, Instant deadline) {
+        redis.opsForZSet().add(DEADLINES_KEY, id, deadline.toEpochMilli());
+    }
+
+    public void delete(String id) {
+        redis.delete(SESSION_KEY + id);
+    }
+
+    /**
+     * @return до {@code limit} сессий со сроком не позже {@code now}
+     */
+    public List<String> expired(Instant now, int limit) {
+        Set<String> expired = redis.opsForZSet().rangeByScore(DEADLINES_KEY, 0, now.toEpochMilli(), 0, limit);
+        return (expired == null) ? List.of() : List.copyOf(expired);
+    }
+}
@@ -0,0 +1,233 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl;
+
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.exception.StorageException;
+import edu.lcaitlyn.cloudfilestorage.service.StorageManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Сессии загрузки файла частями. Состояние хранится в Redis ({@link UploadSessionStore}) и общее для всех
+ * инстансов, поэтому части одного файла могут приходить на разные инстансы параллельно и в любом порядке.
+ * <p>
+ * Сессия — владелец, ключ, multipart upload, размеры и ETag полученных частей. Каждая часть продлевает срок
+ * сессии на {@code storage.upload-session.ttl}. Просроченные сессии отменяются вместе с multipart upload раз в
+ * {@code storage.upload-session.sweep-interval}. Завершение, отмена и очистка сначала забирают сессию
+ * ({@link #claim}), поэтому каждую сессию закрывает ровно один инстанс.
+ */
+@Slf4j
+@Component
+public class UploadSessions {
+
+    // ограничения S3 multipart upload
+    public static final long MIN_CHUNK_SIZE = 5L * 1024 * 1024;
+
+    public static final int MAX_CHUNKS = 10_000;
+
+    public static final long MAX_SIZE = 5L * 1024 * 1024 * 1024 * 1024;
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private static final int SWEEP_BATCH = 100;
+
+    /**
+     * @param parts ETag полученных частей по номерам частей S3 (номер фрагмента + 1)
+     */
+    public record Session(String id, long userId, String key, String uploadId, long size, long chunkSize,
+                          String contentType, Map<Integer, String> parts, Instant expiresAt) {
+
+        public int chunkCount() {
+            return (int) ((size + chunkSize - 1) / chunkSize);
+        }
+
+        /**
+         * @param chunk номер фрагмента, от 0
+         */
+        public long chunkLength(int chunk) {
+            return Math.min(chunkSize, size - chunk * chunkSize);
+        }
+    }
+
+    private final UploadSessionStore store;
+
+    private final StorageManager storageManager;
+
+    private final StorageProperties storageProperties;
+
+    public UploadSessions(UploadSessionStore store, StorageManager storageManager, StorageProperties storageProperties) {
+        this.store = store;
+        this.storageManager = storageManager;
+        this.storageProperties = storageProperties;
+    }
+
+    public Session create(long userId, String key, long size, String contentType) {
+        long chunkSize = chunkSizeFor(size);
+        String uploadId = storageManager.startUpload(key, contentType);
+        String id = UUID.randomUUID().toString();
+        Instant expiresAt = deadline();
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("user", Long.toString(userId));
+        fields.put("key", key);
+        fields.put("upload", uploadId);
+        fields.put("size", Long.toString(size));
+        fields.put("chunk", Long.toString(chunkSize));
+        if (contentType != null) {
+            fields.put("type", contentType);
+        }
+
+        try {
+            store.create(id, fields, expiresAt, keep());
+        } catch (DataAccessException e) {
+            storageManager.abortUpload(key, uploadId);
+            throw new StorageException("Upload sessions are unavailable", e);
+        }
+
+        return new Session(id, userId, key, uploadId, size, chunkSize, contentType, Map.of(), expiresAt);
+    }
+
+    /**
+     * @return сессия или {@code null}, если её нет, она истекла или уже закрывается
+     */
+    public Session find(String id) {
+        try {
+            Map<String, String> fields = store.fields(id);
+            Instant deadline = store.deadline(id);
+            // просроченная, но ещё не отменённая сессия тоже истекла: часть не должна её продлить
+            if (fields.get("upload") == null || deadline == null || deadline.isBefore(Instant.now())) {
+                return null;
+            }
+
+            Map<Integer, String> parts = new TreeMap<>();
+            fields.forEach((field, value) -> {
+                if (field.startsWith(UploadSessionStore.PART_FIELD)) {
+                    parts.put(Integer.parseInt(field.substring(UploadSessionStore.PART_FIELD.length())), value);
+                }
+            });
+
+            return new Session(id,
+                    Long.parseLong(fields.get("user")),
+                    fields.get("key"),
+                    fields.get("upload"),
+                    Long.parseLong(fields.get("size")),
+                    Long.parseLong(fields.get("chunk")),
+                    fields.get("type"),
+                    parts,
+                    deadline);
+        } catch (DataAccessException e) {
+            throw new StorageException("Upload sessions are unavailable", e);
+        }
+    }
+
+    /**
+     * Запоминает полученную часть и продлевает сессию.
+     *
+     * @return {@code false}, если сессия тем временем истекла или закрывается: часть уже никуда не попадёт
+     */
+    public boolean recordPart(Session session, int partNumber, String etag) {
+        try {
+            return store.putPart(session.id(), partNumber, etag, deadline(), keep());
+        } catch (DataAccessException e) {
+            throw new StorageException("Upload sessions are unavailable", e);
+        }
+    }
+
+    /**
+     * Забирает сессию для завершения или отмены.
+     *
+     * @return {@code true} только для одного из конкурирующих вызовов
+     */
+    public boolean claim(String id) {
+        try {
+            return store.removeDeadline(id);
+        } catch (DataAccessException e) {
+            throw new StorageException("Upload sessions are unavailable", e);
+        }
+    }
+
+    /**
+     * Возвращает забранную сессию, если завершить её не удалось: клиент может повторить попытку.
+     */
+    public void release(Session session) {
+        try {
+            store.putDeadline(session.id(), deadline());
+        } catch (DataAccessException e) {
+            log.warn("failed to release upload session: " + session.id() + " (" + e.getMessage() + ")");
+        }
+    }
+
+    public void delete(String id) {
+        try {
+            store.delete(id);
+        } catch (DataAccessException e) {
+            log.warn("failed to delete upload session: " + id + " (" + e.getMessage() + ")");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.upload-session.sweep-interval}")
+    public void abortExpired() {
+        long aborted = 0;
+        try {
+            List<String> expired;
+            do {
+                expired = store.expired(Instant.now(), SWEEP_BATCH);
+                for (String id : expired) {
+                    if (claim(id)) {
+                        abort(id);
+                        aborted++;
+                    }
+                }
+            } while (expired.size() == SWEEP_BATCH);
+        } catch (DataAccessException | StorageException e) {
+            log.warn("failed to abort expired upload sessions: " + e.getMessage());
+        }
+
+        if (aborted > 0) {
+            log.info("aborted " + aborted + " expired upload sessions");
+        }
+    }
+
+    private void abort(String id) {
+        Map<String, String> fields = store.fields(id);
+        if (fields.get("upload") != null) {
+            try {
+                storageManager.abortUpload(fields.get("key"), fields.get("upload"));
+            } catch (StorageException e) {
+                log.warn("failed to abort upload session: " + id + " (" + e.getMessage() + ")");
+            }
+        }
+        delete(id);
+    }
+
+    /**
+     * {@code storage.upload-session.chunk-size}, но не меньше 5MB и не меньше, чем нужно, чтобы уложиться
+     * в 10000 частей (тогда — с округлением вверх до мегабайта).
+     */
+    private long chunkSizeFor(long size) {
+        long chunkSize = Math.max(storageProperties.getUploadSessionChunkSize().toBytes(), MIN_CHUNK_SIZE);
+        long needed = (size + MAX_CHUNKS - 1) / MAX_CHUNKS;
+        if (needed > chunkSize) {
+            chunkSize = (needed + MEGABYTE - 1) / MEGABYTE * MEGABYTE;
+        }
+        return chunkSize;
+    }
+
+    private Instant deadline() {
+        return Instant.now().plus(storageProperties.getUploadSessionTtl());
+    }
+
+    // страховка на случай потери срока в deadlines: поля сессии не живут вечно
+    private Duration keep() {
+        return storageProperties.getUploadSessionTtl().multipliedBy(2);
+    }
+}
@@ -0,0 +1,29 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl.archive;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.FetchedObject;
+import edu.lcaitlyn.cloudfilestorage.enums.ArchiveFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Пишет архив папки в поток ответа по одной записи, не закрывая сам поток.
+ */
+public interface ArchiveWriter {
+
+    void write(String entryName, FetchedObject object) throws IOException;
+
+    void finish() throws IOException;
+
+    /**
+     * @param level уровень сжатия 0-9 или {@code -1} для уровня по умолчанию
+     */
+    static ArchiveWriter create(ArchiveFormat format, int level, OutputStream out) throws IOException {
+        return switch (format) {
+            case ZIP_STORE -> new ZipArchiveWriter(out, true, level);
+            case ZIP_DEFLATE -> new ZipArchiveWriter(out, false, level);
+            case TAR -> new TarArchiveWriter(out, false, level);
+            case TAR_GZ -> new TarArchiveWriter(out, true, level);
+        };
+    }
+}
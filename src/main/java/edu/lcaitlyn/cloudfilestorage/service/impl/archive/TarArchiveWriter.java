@@ -0,0 +1,53 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl.archive;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.FetchedObject;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class TarArchiveWriter implements ArchiveWriter {
+
+    private final GzipCompressorOutputStream gzip;
+
+    private final TarArchiveOutputStream tar;
+
+    public TarArchiveWriter(OutputStream out, boolean gzipped, int level) throws IOException {
+        if (gzipped) {
+            GzipParameters parameters = new GzipParameters();
+            parameters.setCompressionLevel(level);
+            this.gzip = new GzipCompressorOutputStream(out, parameters);
+            out = gzip;
+        } else {
+            this.gzip = null;
+        }
+
+        this.tar = new TarArchiveOutputStream(out);
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    }
+
+    @Override
+    public void write(String entryName, FetchedObject object) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(entryName);
+        if (!entry.isDirectory()) {
+            entry.setSize(object.getSize());
+        }
+
+        tar.putArchiveEntry(entry);
+        object.getData().transferTo(tar);
+        tar.closeArchiveEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        tar.finish();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        tar.flush();
+    }
+}
@@ -0,0 +1,60 @@
+package edu.lcaitlyn.cloudfilestorage.service.impl.archive;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.FetchedObject;
+import edu.lcaitlyn.cloudfilestorage.utils.ArchiveUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipArchiveWriter implements ArchiveWriter {
+
+    private final ZipOutputStream zos;
+
+    private final boolean storeOnly;
+
+    private final int level;
+
+    public ZipArchiveWriter(OutputStream out, boolean storeOnly, int level) {
+        this.zos = new ZipOutputStream(out);
+        this.storeOnly = storeOnly;
+        this.level = level;
+    }
+
+    @Override
+    public void write(String entryName, FetchedObject object) throws IOException {
+        ZipEntry entry = new ZipEntry(entryName);
+        boolean store = storeOnly || ArchiveUtils.isPrecompressed(entryName, object.getContentType());
+
+        if (!store) {
+            entry.setMethod(ZipEntry.DEFLATED);
+            zos.setLevel(level);
+        } else if (object.getBytes() != null) {
+            CRC32 crc = new CRC32();
+            crc.update(object.getBytes());
+
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(object.getBytes().length);
+            entry.setCompressedSize(object.getBytes().length);
+            entry.setCrc(crc.getValue());
+        } else {
+            // STORED требует CRC до начала записи, а у потокового объекта его ещё нет.
+            // Deflate без сжатия только нарезает байты на блоки и стоит почти столько же, сколько копирование.
+            entry.setMethod(ZipEntry.DEFLATED);
+            zos.setLevel(Deflater.NO_COMPRESSION);
+        }
+
+        zos.putNextEntry(entry);
+        object.getData().transferTo(zos);
+        zos.closeEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        zos.finish();
+        zos.flush();
+    }
+}
@@ -0,0 +1,49 @@
+package edu.lcaitlyn.cloudfilestorage.utils;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.Locale;
+import java.util.Set;
+
+@UtilityClass
+public class ArchiveUtils {
+
+    private static final Set<String> PRECOMPRESSED_EXTENSIONS = Set.of(
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif",
+            "mp4", "m4v", "mkv", "mov", "avi", "webm", "wmv",
+            "mp3", "m4a", "aac", "ogg", "oga", "opus", "flac", "wma",
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4", "br",
+            "jar", "war", "apk", "ipa", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub"
+    );
+
+    private static final Set<String> PRECOMPRESSED_CONTENT_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+            "application/x-xz", "application/x-7z-compressed", "application/vnd.rar",
+            "application/x-rar-compressed", "application/zstd", "application/java-archive",
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/heic", "image/avif"
+    );
+
+    /**
+     * Проверяет, сжато ли содержимое уже само по себе (медиа, архивы), т.е. повторное сжатие только тратит CPU.
+     */
+    public static boolean isPrecompressed(String name, String contentType) {
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            int params = type.indexOf(';');
+            if (params >= 0) {
+                type = type.substring(0, params).trim();
+            }
+
+            if (PRECOMPRESSED_CONTENT_TYPES.contains(type) || type.startsWith("video/")
+                    || (type.startsWith("audio/") && !type.contains("wav"))) {
+                return true;
+            }
+        }
+
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || dot < name.lastIndexOf('/')) {
+            return false;
+        }
+        return PRECOMPRESSED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -3,6 +3,7 @@ package edu.lcaitlyn.cloudfilestorage.utils;
 import edu.lcaitlyn.cloudfilestorage.DTO.response.ErrorResponseDTO;
 import lombok.experimental.UtilityClass;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
 @UtilityClass
@@ -10,6 +11,9 @@ public class ErrorResponseUtils {
     public static ResponseEntity<ErrorResponseDTO> print(String message, HttpStatusCode status) {
         ErrorResponseDTO errorResponseDTO = new ErrorResponseDTO();
         errorResponseDTO.setMessage(message);
-        return new ResponseEntity<>(errorResponseDTO, status);
+        // тип задан явно, чтобы ошибка отдавалась JSON и для запросов с Accept: application/x-ndjson
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(errorResponseDTO);
     }
 }
@@ -2,6 +2,9 @@ package edu.lcaitlyn.cloudfilestorage.utils;
 
 import edu.lcaitlyn.cloudfilestorage.service.impl.FileServiceImpl;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class FileServiceUtils {
     public static String createKey(Long userId, String path) {
         String prefix = String.format(FileServiceImpl.KEY_PREFIX, userId);
@@ -50,4 +53,20 @@ public class FileServiceUtils {
     public static boolean isRootPath(String path) {
         return path.length() == 1 && path.startsWith("/");
     }
+
+    /**
+     * Все папки, в которых лежит ключ, от корня вглубь (для папки включая её саму).
+     * "a/b/c.txt" -> ["a/", "a/b/"]; "a/b/" -> ["a/", "a/b/"]
+     */
+    public static List<String> directoriesOf(String key) {
+        List<String> directories = new ArrayList<>();
+        int slash = key.indexOf('/');
+        while (slash >= 0) {
+            if (slash > 0 && key.charAt(slash - 1) != '/') {
+                directories.add(key.substring(0, slash + 1));
+            }
+            slash = key.indexOf('/', slash + 1);
+        }
+        return directories;
+    }
 }
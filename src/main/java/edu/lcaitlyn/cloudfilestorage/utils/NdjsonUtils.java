@@ -0,0 +1,38 @@
+package edu.lcaitlyn.cloudfilestorage.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.service.FileService;
+import lombok.experimental.UtilityClass;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+
+@UtilityClass
+public class NdjsonUtils {
+
+    /**
+     * Пишет по JSON-объекту на строку, сбрасывая ответ клиенту после каждой страницы:
+     * в памяти одна страница, а клиент начинает получать данные, пока читаются следующие.
+     */
+    public static ResponseEntity<StreamingResponseBody> stream(ObjectMapper objectMapper, FileService.ResourceStream resources) {
+        StreamingResponseBody body = out -> resources.forEach(new FileService.ResourceConsumer() {
+            @Override
+            public void accept(ResourceResponseDTO resource) throws IOException {
+                out.write(objectMapper.writeValueAsBytes(resource));
+                out.write('\n');
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+}
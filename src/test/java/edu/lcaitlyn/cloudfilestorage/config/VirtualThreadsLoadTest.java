@@ -0,0 +1,113 @@
+package edu.lcaitlyn.cloudfilestorage.config;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.AbstractProtocol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Потолок одновременных запросов Tomcat на пуле платформенных потоков и на виртуальных потоках
+ * ({@code spring.threads.virtual.enabled}). Обработчик блокируется на время, имитирующее ответ S3,
+ * как скачивание или листинг; тест считает пик запросов, одновременно находящихся в обработке.
+ * <pre>
+ * LOAD_TEST=true LOAD_TEST_REQUESTS=2000 LOAD_TEST_LATENCY_MS=200 mvn test -Dtest=VirtualThreadsLoadTest
+ * </pre>
+ */
+@Slf4j
+@EnabledIfEnvironmentVariable(named = "LOAD_TEST", matches = "true")
+class VirtualThreadsLoadTest {
+
+	private static final int REQUESTS = Integer.parseInt(env("LOAD_TEST_REQUESTS", "2000"));
+
+	private static final long LATENCY_MS = Long.parseLong(env("LOAD_TEST_LATENCY_MS", "200"));
+
+	// server.tomcat.threads.max по умолчанию
+	private static final int PLATFORM_THREADS = 200;
+
+	@Test
+	void virtualThreadsRaiseConcurrencyCeiling() throws Exception {
+		int platformPeak = run("platform", false);
+		int virtualPeak = run("virtual", true);
+
+		assertTrue(platformPeak <= PLATFORM_THREADS);
+		assertTrue(virtualPeak > PLATFORM_THREADS);
+	}
+
+	private static int run(String label, boolean virtual) throws Exception {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+
+		TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+		factory.addConnectorCustomizers(connector -> {
+			AbstractProtocol<?> protocol = (AbstractProtocol<?>) connector.getProtocolHandler();
+			protocol.setMaxThreads(PLATFORM_THREADS);
+			protocol.setAcceptCount(REQUESTS);
+		});
+		if (virtual) {
+			factory.addProtocolHandlerCustomizers(protocol -> protocol.setExecutor(Executors.newVirtualThreadPerTaskExecutor()));
+		}
+
+		WebServer server = factory.getWebServer(context -> context.addServlet("s3", new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+				peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(LATENCY_MS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					inFlight.decrementAndGet();
+				}
+				response.getWriter().write("ok");
+			}
+		}).addMapping("/s3"));
+		server.start();
+
+		try (HttpClient client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.executor(Executors.newVirtualThreadPerTaskExecutor())
+				.build()) {
+			URI uri = URI.create("http://localhost:" + server.getPort() + "/s3");
+			List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(REQUESTS);
+
+			long start = System.nanoTime();
+			for (int i = 0; i < REQUESTS; i++) {
+				responses.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.discarding()));
+			}
+			for (CompletableFuture<HttpResponse<Void>> response : responses) {
+				assertEquals(200, response.join().statusCode());
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			log.info(String.format("%-8s %d requests in %.2f s: peak in flight %d, %.0f req/s",
+					label, REQUESTS, seconds, peak.get(), REQUESTS / seconds));
+			return peak.get();
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static String env(String name, String defaultValue) {
+		String value = System.getenv(name);
+		return (value == null) ? defaultValue : value;
+	}
+}
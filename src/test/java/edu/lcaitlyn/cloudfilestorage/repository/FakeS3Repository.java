@@ -0,0 +1,232 @@
+package edu.lcaitlyn.cloudfilestorage.repository;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * S3 в памяти для тестов: ключи упорядочены по байтам UTF-8, как в S3, листинги постраничные
+ * (до 1000 ключей и папок) с delimiter, startAfter и continuation token.
+ */
+public class FakeS3Repository implements S3Repository {
+
+	private static final int MAX_KEYS = 1000;
+
+	private static final String LAST_CHARACTER = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+	private final NavigableMap<String, Stored> objects = new ConcurrentSkipListMap<>(FakeS3Repository::compareCodePoints);
+
+	public void put(String key, String content) {
+		put(key, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void put(String key, byte[] data) {
+		objects.put(key, new Stored(data));
+	}
+
+	public boolean contains(String key) {
+		return objects.containsKey(key);
+	}
+
+	@Override
+	public HeadObjectResponse getObject(String key) {
+		Stored stored = find(key);
+		return HeadObjectResponse.builder()
+				.contentLength((long) stored.data().length)
+				.eTag(stored.etag())
+				.lastModified(Instant.EPOCH)
+				.build();
+	}
+
+	@Override
+	public String putObject(String key, InputStream data, long contentLength, String contentType) {
+		try {
+			Stored stored = new Stored(data.readAllBytes());
+			objects.put(key, stored);
+			return stored.etag();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void deleteObject(String key) {
+		objects.remove(key);
+	}
+
+	@Override
+	public List<S3Error> deleteObjects(List<String> keys) {
+		keys.forEach(objects::remove);
+		return List.of();
+	}
+
+	@Override
+	public ResponseInputStream<GetObjectResponse> downloadObject(String key) {
+		return downloadObject(key, null);
+	}
+
+	@Override
+	public ResponseInputStream<GetObjectResponse> downloadObject(String key, String range) {
+		Stored stored = find(key);
+		byte[] data = stored.data();
+		int start = 0;
+		int end = data.length - 1;
+		if (range != null) {
+			String[] bounds = range.substring("bytes=".length()).split("-");
+			start = Integer.parseInt(bounds[0]);
+			end = Math.min(end, Integer.parseInt(bounds[1]));
+		}
+
+		GetObjectResponse response = GetObjectResponse.builder()
+				.contentLength((long) (end - start + 1))
+				.contentRange(range == null ? null : "bytes " + start + "-" + end + "/" + data.length)
+				.eTag(stored.etag())
+				.lastModified(Instant.EPOCH)
+				.build();
+		return new ResponseInputStream<>(response,
+				AbortableInputStream.create(new ByteArrayInputStream(Arrays.copyOfRange(data, start, end + 1))));
+	}
+
+	@Override
+	public void createDirectory(String key) {
+		put(key, new byte[0]);
+	}
+
+	@Override
+	public List<S3Object> listAllObjects(String key) {
+		List<S3Object> all = new ArrayList<>();
+		String token = null;
+		do {
+			ListObjectsV2Response page = listObjects(key, token);
+			all.addAll(page.contents());
+			token = page.nextContinuationToken();
+		} while (token != null);
+		return all;
+	}
+
+	@Override
+	public ListObjectsV2Response listKeyObjects(String key) {
+		return listKeyObjects(key, null, null, null);
+	}
+
+	@Override
+	public ListObjectsV2Response listKeyObjects(String key, int maxKeys) {
+		return listKeyObjects(key, null, null, maxKeys);
+	}
+
+	@Override
+	public ListObjectsV2Response listKeyObjects(String key, String startAfter, String continuationToken, Integer maxKeys) {
+		return list(key, "/", startAfter, continuationToken, maxKeys);
+	}
+
+	@Override
+	public ListObjectsV2Response listObjects(String key, String continuationToken) {
+		return listObjects(key, null, continuationToken);
+	}
+
+	@Override
+	public ListObjectsV2Response listObjects(String key, String startAfter, String continuationToken) {
+		return list(key, null, startAfter, continuationToken, null);
+	}
+
+	@Override
+	public void copyObject(String fromKey, String toKey, long size) {
+		objects.put(toKey, find(fromKey));
+	}
+
+	private ListObjectsV2Response list(String prefix, String delimiter, String startAfter, String continuationToken, Integer maxKeys) {
+		int max = (maxKeys == null) ? MAX_KEYS : maxKeys;
+		String after = (continuationToken != null) ? continuationToken : startAfter;
+		NavigableMap<String, Stored> range = (after == null) ? objects.tailMap(prefix, true) : objects.tailMap(after, false);
+
+		List<S3Object> contents = new ArrayList<>();
+		TreeSet<String> commonPrefixes = new TreeSet<>(FakeS3Repository::compareCodePoints);
+		String last = null;
+		boolean truncated = false;
+
+		for (Map.Entry<String, Stored> entry : range.entrySet()) {
+			String key = entry.getKey();
+			if (!key.startsWith(prefix)) break;
+
+			int slash = (delimiter == null) ? -1 : key.indexOf(delimiter, prefix.length());
+			String commonPrefix = (slash < 0) ? null : key.substring(0, slash + 1);
+			if (commonPrefix != null && commonPrefixes.contains(commonPrefix)) {
+				continue;
+			}
+			if (contents.size() + commonPrefixes.size() == max) {
+				truncated = true;
+				break;
+			}
+
+			if (commonPrefix != null) {
+				commonPrefixes.add(commonPrefix);
+			} else {
+				contents.add(S3Object.builder()
+						.key(key)
+						.size((long) entry.getValue().data().length)
+						.eTag(entry.getValue().etag())
+						.lastModified(Instant.EPOCH)
+						.build());
+			}
+			// следующая страница начнётся после всех ключей уже отданной папки
+			last = (commonPrefix != null) ? commonPrefix + LAST_CHARACTER : key;
+		}
+
+		return ListObjectsV2Response.builder()
+				.prefix(prefix)
+				.contents(contents)
+				.commonPrefixes(commonPrefixes.stream().map(p -> CommonPrefix.builder().prefix(p).build()).toList())
+				.keyCount(contents.size() + commonPrefixes.size())
+				.isTruncated(truncated)
+				.nextContinuationToken(truncated ? last : null)
+				.build();
+	}
+
+	private Stored find(String key) {
+		Stored stored = objects.get(key);
+		if (stored == null) {
+			throw NoSuchKeyException.builder().message("The specified key does not exist: " + key).build();
+		}
+		return stored;
+	}
+
+	private record Stored(byte[] data, String etag) {
+		Stored(byte[] data) {
+			this(data, "\"" + HexFormat.of().toHexDigits(Arrays.hashCode(data)) + "\"");
+		}
+	}
+
+	/**
+	 * Порядок байтов UTF-8 совпадает с порядком кодовых точек; сравнение без перекодирования строк,
+	 * чтобы фейк не искажал замеры аллокаций в бенчмарках.
+	 */
+	private static int compareCodePoints(String a, String b) {
+		int i = 0;
+		int j = 0;
+		while (i < a.length() && j < b.length()) {
+			int x = a.codePointAt(i);
+			int y = b.codePointAt(j);
+			if (x != y) {
+				return Integer.compare(x, y);
+			}
+			i += Character.charCount(x);
+			j += Character.charCount(y);
+		}
+		return Integer.compare(a.length() - i, b.length() - j);
+	}
+}
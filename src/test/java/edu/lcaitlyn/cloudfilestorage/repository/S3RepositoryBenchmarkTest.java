@@ -0,0 +1,165 @@
+package edu.lcaitlyn.cloudfilestorage.repository;
+
+import edu.lcaitlyn.cloudfilestorage.config.S3Properties;
+import edu.lcaitlyn.cloudfilestorage.repository.impl.S3AsyncRepositoryImpl;
+import edu.lcaitlyn.cloudfilestorage.repository.impl.S3RepositoryImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение синхронного и асинхронного репозиториев на PUT/GET/COPY одного большого объекта.
+ * Запускается только против живого S3-совместимого хранилища, например локального MinIO:
+ * <pre>
+ * S3_BENCHMARK_ENDPOINT=http://localhost:9000 S3_BENCHMARK_SIZE_MB=1024 mvn test -Dtest=S3RepositoryBenchmarkTest
+ * </pre>
+ */
+@Slf4j
+@EnabledIfEnvironmentVariable(named = "S3_BENCHMARK_ENDPOINT", matches = ".+")
+class S3RepositoryBenchmarkTest {
+
+	private static final String BUCKET = env("S3_BENCHMARK_BUCKET", "cloudfilestorage");
+
+	private static final long SIZE = DataSize.ofMegabytes(Long.parseLong(env("S3_BENCHMARK_SIZE_MB", "512"))).toBytes();
+
+	private static S3Client syncClient;
+
+	private static S3AsyncClient asyncClient;
+
+	private static S3TransferManager transferManager;
+
+	private static S3Properties properties;
+
+	@BeforeAll
+	static void setUp() {
+		StaticCredentialsProvider credentials = StaticCredentialsProvider.create(AwsBasicCredentials.create(
+				env("S3_BENCHMARK_ACCESS_KEY", "minioadmin"), env("S3_BENCHMARK_SECRET_KEY", "minioadmin")));
+		URI endpoint = URI.create(System.getenv("S3_BENCHMARK_ENDPOINT"));
+
+		properties = new S3Properties();
+		properties.setBucket(BUCKET);
+		properties.setPartSize(DataSize.ofMegabytes(8));
+		properties.setCopyPartSize(DataSize.ofMegabytes(512));
+
+		syncClient = S3Client.builder()
+				.credentialsProvider(credentials)
+				.endpointOverride(endpoint)
+				.region(Region.EU_CENTRAL_1)
+				.forcePathStyle(true)
+				.build();
+
+		asyncClient = S3AsyncClient.crtBuilder()
+				.credentialsProvider(credentials)
+				.endpointOverride(endpoint)
+				.region(Region.EU_CENTRAL_1)
+				.forcePathStyle(true)
+				.minimumPartSizeInBytes(properties.getPartSize().toBytes())
+				.build();
+
+		transferManager = S3TransferManager.builder().s3Client(asyncClient).build();
+
+		if (syncClient.listBuckets().buckets().stream().noneMatch(b -> b.name().equals(BUCKET))) {
+			syncClient.createBucket(b -> b.bucket(BUCKET));
+		}
+	}
+
+	@AfterAll
+	static void tearDown() {
+		transferManager.close();
+		asyncClient.close();
+		syncClient.close();
+	}
+
+	@Test
+	void compareSyncAndAsync() throws IOException {
+		S3AsyncRepositoryImpl asyncRepository = new S3AsyncRepositoryImpl(asyncClient, transferManager, properties);
+		try {
+			run("sync", new S3RepositoryImpl(syncClient, properties, new SimpleMeterRegistry()));
+			run("async", asyncRepository);
+		} finally {
+			asyncRepository.shutdown();
+		}
+	}
+
+	private static void run(String name, S3Repository repository) throws IOException {
+		String key = "benchmark/" + name + "/object";
+		String copyKey = "benchmark/" + name + "/copy";
+
+		long start = System.nanoTime();
+		repository.putObject(key, new PatternInputStream(SIZE), SIZE, "application/octet-stream");
+		report(name, "PUT", start);
+
+		start = System.nanoTime();
+		long read;
+		try (ResponseInputStream<GetObjectResponse> rIS = repository.downloadObject(key)) {
+			read = rIS.transferTo(OutputStream.nullOutputStream());
+		}
+		report(name, "GET", start);
+		assertEquals(SIZE, read);
+
+		start = System.nanoTime();
+		repository.copyObject(key, copyKey, SIZE);
+		report(name, "COPY", start);
+
+		repository.deleteObjects(List.of(key, copyKey));
+	}
+
+	private static void report(String name, String operation, long startNanos) {
+		double seconds = (System.nanoTime() - startNanos) / 1e9;
+		log.info(String.format("%-5s %-4s %8.2f s %8.1f MB/s", name, operation, seconds, SIZE / 1024.0 / 1024.0 / seconds));
+	}
+
+	private static String env(String name, String defaultValue) {
+		String value = System.getenv(name);
+		return (value == null || value.isEmpty()) ? defaultValue : value;
+	}
+
+	/**
+	 * Поток заданной длины без буфера на весь объект.
+	 */
+	private static class PatternInputStream extends InputStream {
+		private long remaining;
+
+		PatternInputStream(long size) {
+			this.remaining = size;
+		}
+
+		@Override
+		public int read() {
+			return (remaining-- > 0) ? (int) (remaining & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int n = (int) Math.min(len, remaining);
+			for (int i = 0; i < n; i++) {
+				b[off + i] = (byte) (remaining - i);
+			}
+			remaining -= n;
+			return n;
+		}
+	}
+}
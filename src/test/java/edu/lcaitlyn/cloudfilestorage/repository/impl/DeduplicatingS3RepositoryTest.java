@@ -0,0 +1,171 @@
+package edu.lcaitlyn.cloudfilestorage.repository.impl;
+
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link DeduplicatingS3Repository} поверх {@link FakeS3Repository} и {@link InMemoryBlobIndex}.
+ */
+class DeduplicatingS3RepositoryTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	private FakeS3Repository blobs;
+
+	private InMemoryBlobIndex index;
+
+	private DeduplicatingS3Repository repository;
+
+	private boolean failBlobDeletes;
+
+	private boolean failIndexDeletes;
+
+	@BeforeEach
+	void setUp() {
+		blobs = new FakeS3Repository() {
+			@Override
+			public List<S3Error> deleteObjects(List<String> keys) {
+				if (failBlobDeletes) {
+					return keys.stream().map(key -> S3Error.builder().key(key).code("AccessDenied").message("Access Denied").build()).toList();
+				}
+				return super.deleteObjects(keys);
+			}
+		};
+		index = new InMemoryBlobIndex() {
+			@Override
+			public synchronized void deleteBlobs(Collection<String> blobKeys) {
+				if (failIndexDeletes) {
+					throw new IllegalStateException("commit failed");
+				}
+				super.deleteBlobs(blobKeys);
+			}
+		};
+		repository = new DeduplicatingS3Repository(blobs, index, InMemoryBlobIndex.TRANSACTIONS, new SimpleMeterRegistry());
+
+		repository.createDirectory(ROOT);
+		put(repository, ROOT + "a.txt", "a");
+		put(repository, ROOT + "report", "report");
+	}
+
+	@Test
+	void identicalUploadsStoredOnce() throws IOException {
+		put(repository, ROOT + "copy.txt", "a");
+
+		assertEquals(2, blobs.listAllObjects(DeduplicatingS3Repository.BLOB_PREFIX).size());
+		assertEquals("a", read(ROOT + "copy.txt"));
+	}
+
+	@Test
+	void renameFileToSamePrefix() throws IOException {
+		assertEquals(1, repository.rename(ROOT + "a.txt", ROOT + "a.txt.bak"));
+		assertEquals(1, repository.rename(ROOT + "report", ROOT + "report.pdf"));
+		assertEquals(1, repository.rename(ROOT + "report.pdf", ROOT + "report"));
+
+		assertEquals(List.of(ROOT, ROOT + "a.txt.bak", ROOT + "report"), keys(repository.listObjects(ROOT, null).contents()));
+		assertEquals("a", read(ROOT + "a.txt.bak"));
+		assertThrows(NoSuchKeyException.class, () -> repository.getObject(ROOT + "a.txt"));
+	}
+
+	@Test
+	void multipartUploadStagedAndDeduplicated(@TempDir Path root) throws IOException {
+		FileSystemS3Repository files = new FileSystemS3Repository(root);
+		repository = new DeduplicatingS3Repository(files, index, InMemoryBlobIndex.TRANSACTIONS, new SimpleMeterRegistry());
+		put(repository, ROOT + "whole.txt", "first-second");
+
+		String uploadId = repository.createMultipartUpload(ROOT + "parts.txt", "text/plain");
+		String etag2 = repository.uploadPart(ROOT + "parts.txt", uploadId, 2, stream("second"), 6);
+		String etag1 = repository.uploadPart(ROOT + "parts.txt", uploadId, 1, stream("first-"), 6);
+		String etag = repository.completeMultipartUpload(ROOT + "parts.txt", uploadId, List.of(
+				CompletedPart.builder().partNumber(1).eTag(etag1).build(),
+				CompletedPart.builder().partNumber(2).eTag(etag2).build()));
+
+		assertEquals(repository.getObject(ROOT + "whole.txt").eTag(), etag);
+		assertEquals("first-second", read(ROOT + "parts.txt"));
+		assertEquals("text/plain", repository.getObject(ROOT + "parts.txt").contentType());
+		assertEquals(1, files.listAllObjects(DeduplicatingS3Repository.BLOB_PREFIX).size());
+		assertEquals(2, index.refCount(files.listAllObjects(DeduplicatingS3Repository.BLOB_PREFIX).getFirst().key()));
+		assertTrue(files.listAllObjects(DeduplicatingS3Repository.STAGING_PREFIX).isEmpty());
+
+		String aborted = repository.createMultipartUpload(ROOT + "aborted.txt", null);
+		repository.uploadPart(ROOT + "aborted.txt", aborted, 1, stream("x"), 1);
+		repository.abortMultipartUpload(ROOT + "aborted.txt", aborted);
+		try (var temp = Files.list(root.resolve(".uploads"))) {
+			assertEquals(0, temp.count());
+		}
+	}
+
+	@Test
+	void renameDirectoryIntoItselfRejected() {
+		repository.createDirectory(ROOT + "docs/");
+
+		assertThrows(IllegalArgumentException.class, () -> repository.rename(ROOT + "docs/", ROOT + "docs/inner/"));
+		assertThrows(IllegalArgumentException.class, () -> repository.rename(ROOT + "docs/", ROOT));
+	}
+
+	private String read(String key) throws IOException {
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(key)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<String> keys(List<S3Object> objects) {
+		return objects.stream().map(S3Object::key).toList();
+	}
+
+	@Test
+	void collectedBlobUploadedAgainIfIndexNotUpdated() throws IOException {
+		repository.deleteObject(ROOT + "a.txt");
+		failIndexDeletes = true;
+
+		assertThrows(IllegalStateException.class, () -> repository.collectGarbage(Duration.ZERO));
+		assertEquals(1, blobs.listAllObjects(DeduplicatingS3Repository.BLOB_PREFIX).size());
+
+		// блоб удалён из S3, а строка осталась: новая ссылка должна загрузить его заново
+		put(repository, ROOT + "again.txt", "a");
+		assertEquals("a", read(ROOT + "again.txt"));
+	}
+
+	@Test
+	void collectionStopsWhenBlobsCannotBeDeleted() {
+		for (int i = 0; i < 1500; i++) {
+			index.acquire("blobs/stuck-" + i, 1);
+			index.release("blobs/stuck-" + i, 1);
+		}
+		failBlobDeletes = true;
+
+		assertEquals(0, assertTimeoutPreemptively(Duration.ofSeconds(10), () -> repository.collectGarbage(Duration.ZERO)));
+
+		failBlobDeletes = false;
+		assertEquals(1500, repository.collectGarbage(Duration.ZERO));
+	}
+
+	private static void put(S3Repository s3, String key, String content) {
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		s3.putObject(key, new ByteArrayInputStream(data), data.length, "text/plain");
+	}
+}
@@ -0,0 +1,238 @@
+package edu.lcaitlyn.cloudfilestorage.repository.impl;
+
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * {@link FileSystemS3Repository} должен вести себя как S3: сравнивается с {@link FakeS3Repository}
+ * на одних и тех же операциях.
+ */
+class FileSystemS3RepositoryTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	@TempDir
+	Path root;
+
+	private FileSystemS3Repository repository;
+
+	private FakeS3Repository expected;
+
+	@BeforeEach
+	void setUp() {
+		repository = new FileSystemS3Repository(root);
+		expected = new FakeS3Repository();
+
+		for (S3Repository s3 : List.of(repository, expected)) {
+			s3.createDirectory(ROOT);
+			s3.createDirectory(ROOT + "docs/");
+			put(s3, ROOT + "docs/a.txt", "a");
+			put(s3, ROOT + "docs/b.txt", "bb");
+			put(s3, ROOT + "docs/b.txt.bak", "b");
+			put(s3, ROOT + "docs/old/c.txt", "ccc");
+			put(s3, ROOT + "docs/%weird/d.txt", "dddd");
+		}
+	}
+
+	@Test
+	void headAndDownload() throws IOException {
+		HeadObjectResponse head = repository.getObject(ROOT + "docs/b.txt");
+		assertEquals(2L, head.contentLength());
+
+		assertThrows(NoSuchKeyException.class, () -> repository.getObject(ROOT + "docs/missing.txt"));
+		assertThrows(NoSuchKeyException.class, () -> repository.getObject(ROOT + "docs/old"));
+		assertThrows(S3Exception.class, () -> repository.getObject(ROOT + "../escape"));
+	}
+
+	@Test
+	void nonAsciiKeys() throws IOException {
+		assumeTrue("UTF-8".equalsIgnoreCase(System.getProperty("sun.jnu.encoding")), "needs a UTF-8 locale");
+
+		put(repository, ROOT + "docs/пример.txt", "eeeee");
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(ROOT + "docs/пример.txt")) {
+			assertEquals("eeeee", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertEquals(List.of(ROOT + "docs/пример.txt"), keys(repository.listObjects(ROOT + "docs/п", null).contents()));
+	}
+
+	@Test
+	void rangedDownload() throws IOException {
+		put(repository, ROOT + "range.bin", "0123456789");
+
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(ROOT + "range.bin", "bytes=2-5")) {
+			assertEquals("bytes 2-5/10", in.response().contentRange());
+			assertEquals("2345", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(ROOT + "range.bin", "bytes=7-")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			in.transferTo(out);
+			assertEquals("789", out.toString(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void listDirectoryMatchesS3() {
+		assertListing(ROOT + "docs/", null, null);
+		assertListing(ROOT + "docs/b", null, null);
+		assertListing(ROOT, null, null);
+		assertListing(ROOT + "missing/", null, null);
+	}
+
+	@Test
+	void listDirectoryPages() {
+		List<String> pages = new ArrayList<>();
+		String token = null;
+		do {
+			ListObjectsV2Response page = repository.listKeyObjects(ROOT + "docs/", null, token, 2);
+			page.contents().forEach(o -> pages.add(o.key()));
+			page.commonPrefixes().forEach(p -> pages.add(p.prefix()));
+			token = page.nextContinuationToken();
+		} while (token != null);
+
+		assertEquals(names(expected.listKeyObjects(ROOT + "docs/")).size(), pages.size());
+		assertTrue(pages.containsAll(names(expected.listKeyObjects(ROOT + "docs/"))));
+	}
+
+	@Test
+	void pagesKeepKeyOrderWhenFolderSortsAfterSiblingFiles() {
+		for (S3Repository s3 : List.of(repository, expected)) {
+			put(s3, ROOT + "docs/x/y.txt", "y");
+			put(s3, ROOT + "docs/x.txt", "x");
+			put(s3, ROOT + "docs/x-1", "x");
+			put(s3, ROOT + "docs/x0", "x");
+		}
+
+		for (int maxKeys = 1; maxKeys <= 3; maxKeys++) {
+			assertEquals(pages(expected, ROOT + "docs/", maxKeys), pages(repository, ROOT + "docs/", maxKeys));
+		}
+		assertEquals(keys(expected.listAllObjects(ROOT)), keys(repository.listAllObjects(ROOT)));
+		assertEquals(keys(expected.listObjects(ROOT, ROOT + "docs/x.txt", null).contents()), keys(repository.listObjects(ROOT, ROOT + "docs/x.txt", null).contents()));
+		assertEquals(keys(expected.listObjects(ROOT, ROOT + "docs/x/", null).contents()), keys(repository.listObjects(ROOT, ROOT + "docs/x/", null).contents()));
+	}
+
+	@Test
+	void listSubtreeMatchesS3() {
+		assertEquals(keys(expected.listAllObjects(ROOT)), keys(repository.listAllObjects(ROOT)));
+		assertEquals(keys(expected.listObjects(ROOT + "docs/b", null).contents()), keys(repository.listObjects(ROOT + "docs/b", null).contents()));
+		assertEquals(keys(expected.listObjects(ROOT, ROOT + "docs/b.txt", null).contents()), keys(repository.listObjects(ROOT, ROOT + "docs/b.txt", null).contents()));
+	}
+
+	@Test
+	void copyAndDelete() throws IOException {
+		repository.copyObject(ROOT + "docs/old/c.txt", ROOT + "archive/c.txt", 3);
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(ROOT + "archive/c.txt")) {
+			assertEquals("ccc", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+
+		repository.deleteObject(ROOT + "docs/old/c.txt");
+		assertTrue(repository.listKeyObjects(ROOT + "docs/old/").contents().isEmpty());
+		assertFalse(Files.exists(root.resolve("user-1-files/docs/old")));
+
+		assertTrue(repository.deleteObjects(List.of(ROOT + "archive/c.txt", ROOT + "docs/")).isEmpty());
+		assertEquals(List.of(ROOT + "docs/%weird/d.txt"), keys(repository.listObjects(ROOT + "docs/%", null).contents()));
+		assertFalse(Files.exists(root.resolve("user-1-files/docs/%")));
+	}
+
+	@Test
+	void putReplacesAtomically() throws IOException {
+		put(repository, ROOT + "docs/a.txt", "replaced");
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(ROOT + "docs/a.txt")) {
+			assertEquals("replaced", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+
+		try (var temp = Files.list(root.resolve(".uploads"))) {
+			assertEquals(0, temp.count());
+		}
+	}
+
+	@Test
+	void fileAndFolderWithSameName() throws IOException {
+		S3Exception fileOverFolder = assertThrows(S3Exception.class, () -> put(repository, ROOT + "docs/old", "x"));
+		assertEquals(409, fileOverFolder.statusCode());
+		S3Exception folderOverFile = assertThrows(S3Exception.class, () -> repository.createDirectory(ROOT + "docs/a.txt/"));
+		assertEquals(409, folderOverFile.statusCode());
+		S3Exception fileUnderFile = assertThrows(S3Exception.class, () -> put(repository, ROOT + "docs/a.txt/b.txt", "x"));
+		assertEquals(409, fileUnderFile.statusCode());
+
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(ROOT + "docs/old/c.txt")) {
+			assertEquals("ccc", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		try (var temp = Files.list(root.resolve(".uploads"))) {
+			assertEquals(0, temp.count());
+		}
+	}
+
+	@Test
+	void multipartUploadOutOfOrder() throws IOException {
+		String key = ROOT + "docs/big.txt";
+		String uploadId = repository.createMultipartUpload(key, "text/plain");
+
+		byte[] second = "second".getBytes(StandardCharsets.UTF_8);
+		byte[] first = "first-".getBytes(StandardCharsets.UTF_8);
+		String etag2 = repository.uploadPart(key, uploadId, 2, new ByteArrayInputStream(second), second.length);
+		String etag1 = repository.uploadPart(key, uploadId, 1, new ByteArrayInputStream(first), first.length);
+		assertThrows(NoSuchKeyException.class, () -> repository.getObject(key));
+
+		repository.completeMultipartUpload(key, uploadId, List.of(
+				CompletedPart.builder().partNumber(1).eTag(etag1).build(),
+				CompletedPart.builder().partNumber(2).eTag(etag2).build()));
+		try (ResponseInputStream<GetObjectResponse> in = repository.downloadObject(key)) {
+			assertEquals("first-second", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertEquals("text/plain", repository.getObject(key).contentType());
+
+		assertThrows(NoSuchUploadException.class, () -> repository.abortMultipartUpload(key, uploadId));
+		try (var temp = Files.list(root.resolve(".uploads"))) {
+			assertEquals(0, temp.count());
+		}
+	}
+
+	private void assertListing(String key, String startAfter, Integer maxKeys) {
+		assertEquals(names(expected.listKeyObjects(key, startAfter, null, maxKeys)),
+				names(repository.listKeyObjects(key, startAfter, null, maxKeys)), key);
+	}
+
+	private static List<String> pages(S3Repository s3, String key, int maxKeys) {
+		List<String> pages = new ArrayList<>();
+		String token = null;
+		do {
+			ListObjectsV2Response page = s3.listKeyObjects(key, null, token, maxKeys);
+			pages.addAll(names(page));
+			token = page.nextContinuationToken();
+		} while (token != null);
+		return pages;
+	}
+
+	private static List<String> names(ListObjectsV2Response response) {
+		List<String> names = new ArrayList<>(keys(response.contents()));
+		response.commonPrefixes().forEach(p -> names.add(p.prefix()));
+		return names;
+	}
+
+	private static List<String> keys(List<S3Object> objects) {
+		return objects.stream().map(S3Object::key).toList();
+	}
+
+	private static void put(S3Repository s3, String key, String content) {
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		s3.putObject(key, new ByteArrayInputStream(data), data.length, "text/plain");
+	}
+}
@@ -0,0 +1,176 @@
+package edu.lcaitlyn.cloudfilestorage.repository.impl;
+
+import edu.lcaitlyn.cloudfilestorage.models.BlobReference;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * {@link BlobIndex} в памяти для {@link DeduplicatingS3Repository} без Postgres: ключи по порядку байтов,
+ * как {@code order by object_key}, ключ папки переносится со всем содержимым, ключ файла — только сам.
+ */
+public class InMemoryBlobIndex extends BlobIndex {
+
+	/**
+	 * Транзакции не нужны: все операции индекса синхронизированы.
+	 */
+	public static final TransactionTemplate TRANSACTIONS = new TransactionTemplate(new PlatformTransactionManager() {
+		@Override
+		public TransactionStatus getTransaction(TransactionDefinition definition) {
+			return new SimpleTransactionStatus();
+		}
+
+		@Override
+		public void commit(TransactionStatus status) {
+		}
+
+		@Override
+		public void rollback(TransactionStatus status) {
+		}
+	});
+
+	private final TreeMap<String, BlobReference> references = new TreeMap<>();
+
+	private final Map<String, Long> refCounts = new HashMap<>();
+
+	private final Set<String> stored = new HashSet<>();
+
+	public InMemoryBlobIndex() {
+		super(null);
+	}
+
+	public synchronized long refCount(String blobKey) {
+		return refCounts.getOrDefault(blobKey, 0L);
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return references.isEmpty();
+	}
+
+	@Override
+	public synchronized BlobReference find(String key) {
+		return references.get(key);
+	}
+
+	@Override
+	public synchronized BlobReference lock(String key) {
+		return references.get(key);
+	}
+
+	@Override
+	public synchronized List<BlobReference> list(String prefix, String after, int limit) {
+		return references.tailMap((after == null) ? "" : after, false).values().stream()
+				.filter(reference -> reference.getKey().startsWith(prefix))
+				.limit(limit)
+				.toList();
+	}
+
+	@Override
+	public synchronized void put(BlobReference reference) {
+		references.put(reference.getKey(), reference);
+	}
+
+	@Override
+	public synchronized Map<String, Long> remove(Collection<String> keys) {
+		Map<String, Long> released = new HashMap<>();
+		for (String key : keys) {
+			BlobReference reference = references.remove(key);
+			if (reference != null && reference.getBlobKey() != null) {
+				released.merge(reference.getBlobKey(), 1L, Long::sum);
+			}
+		}
+		return released;
+	}
+
+	@Override
+	public synchronized Map<String, Long> removeRenameTargets(String fromKey, String toKey) {
+		List<String> targets = matching(fromKey).stream()
+				.map(key -> toKey + key.substring(fromKey.length()))
+				.toList();
+		return remove(targets);
+	}
+
+	@Override
+	public synchronized int rename(String fromKey, String toKey) {
+		List<String> keys = matching(fromKey);
+		for (String key : keys) {
+			BlobReference reference = references.remove(key);
+			reference.setKey(toKey + key.substring(fromKey.length()));
+			references.put(reference.getKey(), reference);
+		}
+		return keys.size();
+	}
+
+	@Override
+	public synchronized boolean acquire(String blobKey, long size) {
+		refCounts.merge(blobKey, 1L, Long::sum);
+		return stored.contains(blobKey);
+	}
+
+	@Override
+	public synchronized void markStored(String blobKey) {
+		stored.add(blobKey);
+	}
+
+	@Override
+	public synchronized void release(String blobKey, long references) {
+		refCounts.merge(blobKey, -references, Long::sum);
+	}
+
+	@Override
+	public synchronized List<String> lockUnreferenced(Instant before, int limit) {
+		return refCounts.entrySet().stream()
+				.filter(entry -> entry.getValue() <= 0)
+				.map(Map.Entry::getKey)
+				.sorted()
+				.limit(limit)
+				.toList();
+	}
+
+	@Override
+	public synchronized List<String> lockUnreferenced(Collection<String> blobKeys) {
+		return blobKeys.stream()
+				.filter(blobKey -> refCounts.containsKey(blobKey) && refCounts.get(blobKey) <= 0)
+				.sorted()
+				.toList();
+	}
+
+	@Override
+	public synchronized void unmarkStored(Collection<String> blobKeys) {
+		stored.removeAll(blobKeys);
+	}
+
+	@Override
+	public synchronized void deleteBlobs(Collection<String> blobKeys) {
+		blobKeys.forEach(blobKey -> {
+			refCounts.remove(blobKey);
+			stored.remove(blobKey);
+		});
+	}
+
+	@Override
+	public synchronized void importObjects(List<BlobReference> imported) {
+		for (BlobReference reference : imported) {
+			if (reference.getBlobKey() != null && !refCounts.containsKey(reference.getBlobKey())) {
+				refCounts.put(reference.getBlobKey(), 1L);
+				stored.add(reference.getBlobKey());
+			}
+			references.putIfAbsent(reference.getKey(), reference);
+		}
+	}
+
+	private List<String> matching(String key) {
+		if (!key.endsWith("/")) {
+			return references.containsKey(key) ? List.of(key) : List.of();
+		}
+		return references.tailMap(key, true).keySet().stream()
+				.takeWhile(candidate -> candidate.startsWith(key))
+				.toList();
+	}
+}
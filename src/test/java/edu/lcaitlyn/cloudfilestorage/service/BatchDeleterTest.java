@@ -0,0 +1,98 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.DeleteResult;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.service.impl.BatchDeleter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Удаление папки пачками через {@link BatchDeleter}; бакет — {@link FakeS3Repository} на 1500 объектов (две страницы).
+ */
+class BatchDeleterTest {
+
+	private static final String ROOT = "user-1-files/docs/";
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	private final AtomicInteger listings = new AtomicInteger();
+
+	private final AtomicInteger deleting = new AtomicInteger();
+
+	private boolean failSecondPage;
+
+	private FakeS3Repository s3;
+
+	private BatchDeleter batchDeleter;
+
+	@BeforeEach
+	void setUp() {
+		s3 = new FakeS3Repository() {
+			@Override
+			public ListObjectsV2Response listObjects(String key, String continuationToken) {
+				if (listings.incrementAndGet() == 2 && failSecondPage) {
+					throw S3Exception.builder().statusCode(500).message("listing failed").build();
+				}
+				return super.listObjects(key, continuationToken);
+			}
+
+			@Override
+			public List<S3Error> deleteObjects(List<String> keys) {
+				deleting.incrementAndGet();
+				try {
+					// пачка ещё удаляется, когда листинг уже вернул ошибку
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				List<S3Error> errors = super.deleteObjects(keys);
+				deleting.decrementAndGet();
+				return errors;
+			}
+		};
+		for (int i = 0; i < 1500; i++) {
+			s3.putObject(ROOT + String.format("%04d.txt", i), new ByteArrayInputStream(new byte[0]), 0, "text/plain");
+		}
+
+		StorageProperties properties = new StorageProperties();
+		properties.setDeleteParallelism(2);
+		batchDeleter = new BatchDeleter(s3, executor, properties);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void deletesAllPages() {
+		DeleteResult result = batchDeleter.deletePrefix(ROOT);
+
+		assertEquals(1500, result.getDeleted());
+		assertTrue(result.getFailures().isEmpty());
+		assertTrue(s3.listAllObjects(ROOT).isEmpty());
+	}
+
+	@Test
+	void listingFailureWaitsForSubmittedBatches() {
+		failSecondPage = true;
+
+		assertThrows(S3Exception.class, () -> batchDeleter.deletePrefix(ROOT));
+
+		assertEquals(0, deleting.get());
+		assertEquals(500, s3.listAllObjects(ROOT).size());
+	}
+}
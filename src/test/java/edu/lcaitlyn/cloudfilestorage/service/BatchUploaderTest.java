@@ -0,0 +1,58 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.exception.StorageException;
+import edu.lcaitlyn.cloudfilestorage.service.impl.BatchUploader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link BatchUploader} на пуле из одного потока без очереди: вторая задача отклоняется, пока идёт первая.
+ */
+class BatchUploaderTest {
+
+	private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+	private final AtomicInteger finished = new AtomicInteger();
+
+	private BatchUploader batchUploader;
+
+	@BeforeEach
+	void setUp() {
+		StorageProperties properties = new StorageProperties();
+		properties.setUploadParallelism(4);
+		batchUploader = new BatchUploader(executor, properties);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void rejectedUploadWaitsForRunningOnes() {
+		BatchUploader.Upload slow = confirmedDirectories -> {
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finished.incrementAndGet();
+			return StorageDTO.builder().key("a.txt").build();
+		};
+
+		assertThrows(StorageException.class, () -> batchUploader.uploadAll(List.of(slow, slow)));
+
+		assertEquals(1, finished.get());
+	}
+}
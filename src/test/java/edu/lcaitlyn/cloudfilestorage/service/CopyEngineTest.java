@@ -0,0 +1,118 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3AsyncRepository;
+import edu.lcaitlyn.cloudfilestorage.service.impl.BatchDeleter;
+import edu.lcaitlyn.cloudfilestorage.service.impl.CopyEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Копирование и перемещение папки через {@link CopyEngine}; бакет — {@link FakeS3Repository} на 1500 объектов
+ * (две страницы), копии и удаления идут медленно.
+ */
+class CopyEngineTest {
+
+	private static final String SOURCE = "user-1-files/docs/";
+
+	private static final String TARGET = "user-1-files/moved/";
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+	private final AtomicInteger listings = new AtomicInteger();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private boolean failSecondPage;
+
+	private FakeS3Repository s3;
+
+	private CopyEngine copyEngine;
+
+	@BeforeEach
+	void setUp() {
+		s3 = new FakeS3Repository() {
+			@Override
+			public ListObjectsV2Response listObjects(String key, String continuationToken) {
+				if (listings.incrementAndGet() == 2 && failSecondPage) {
+					throw S3Exception.builder().statusCode(500).message("listing failed").build();
+				}
+				return super.listObjects(key, continuationToken);
+			}
+
+			@Override
+			public void copyObject(String fromKey, String toKey, long size) {
+				running.incrementAndGet();
+				pause(1);
+				super.copyObject(fromKey, toKey, size);
+				running.decrementAndGet();
+			}
+
+			@Override
+			public List<S3Error> deleteObjects(List<String> keys) {
+				running.incrementAndGet();
+				// пачка ещё удаляется, когда листинг уже вернул ошибку
+				pause(200);
+				List<S3Error> errors = super.deleteObjects(keys);
+				running.decrementAndGet();
+				return errors;
+			}
+		};
+		for (int i = 0; i < 1500; i++) {
+			s3.putObject(SOURCE + String.format("%04d.txt", i), new ByteArrayInputStream(new byte[0]), 0, "text/plain");
+		}
+
+		StorageProperties properties = new StorageProperties();
+		properties.setCopyParallelism(4);
+		properties.setDeleteParallelism(2);
+		copyEngine = new CopyEngine(s3, new StaticListableBeanFactory().getBeanProvider(S3AsyncRepository.class),
+				new BatchDeleter(s3, executor, properties), executor, properties);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void movesAllPages() {
+		copyEngine.copyPrefix(SOURCE, TARGET, true);
+
+		assertTrue(s3.listAllObjects(SOURCE).isEmpty());
+		assertEquals(1500, s3.listAllObjects(TARGET).size());
+	}
+
+	@Test
+	void listingFailureWaitsForCopiesAndDeletes() {
+		failSecondPage = true;
+
+		assertThrows(S3Exception.class, () -> copyEngine.copyPrefix(SOURCE, TARGET, true));
+
+		assertEquals(0, running.get());
+		// первая страница перемещена целиком, вторая не тронута
+		assertEquals(1000, s3.listAllObjects(TARGET).size());
+		assertEquals(500, s3.listAllObjects(SOURCE).size());
+	}
+
+	private static void pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.service.impl.DownloadCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Допуск в {@link DownloadCache} по полным скачиваниям, сброс записей по ключу и удаление файлов вытесненных записей.
+ */
+class DownloadCacheTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	@TempDir
+	Path directory;
+
+	private FakeS3Repository s3;
+
+	private DownloadCache cache;
+
+	@BeforeEach
+	void setUp() {
+		StorageProperties properties = new StorageProperties();
+		properties.setDownloadCacheEnabled(true);
+		properties.setDownloadCacheDirectory(directory.toString());
+		properties.setDownloadCacheBudget(DataSize.ofMegabytes(1));
+		properties.setDownloadCacheMaxObjectSize(DataSize.ofKilobytes(64));
+		properties.setDownloadCacheAdmitAfter(2);
+		properties.setDownloadCacheAdmissionWindow(Duration.ofHours(1));
+
+		s3 = new FakeS3Repository();
+		cache = new DownloadCache(s3, properties, new SimpleMeterRegistry());
+
+		for (String key : new String[]{ROOT + "docs/a.txt", ROOT + "docs/a.txt.bak", ROOT + "docs/old/c.txt", ROOT + "other/d.txt"}) {
+			byte[] data = key.getBytes(StandardCharsets.UTF_8);
+			s3.putObject(key, new ByteArrayInputStream(data), data.length, "text/plain");
+		}
+	}
+
+	@Test
+	void admitsAfterCompletedDownloadsOnly() throws IOException {
+		String key = ROOT + "docs/a.txt";
+
+		for (int i = 0; i < 3; i++) {
+			try (InputStream in = cache.fill(key, s3.downloadObject(key))) {
+				in.read();
+			}
+		}
+		assertNull(cache.find(key));
+
+		download(key);
+		assertNull(cache.find(key));
+
+		download(key);
+		DownloadCache.Entry entry = cache.find(key);
+		assertNotNull(entry);
+		assertEquals(key.length(), entry.size());
+	}
+
+	@Test
+	void invalidatesKeyAndFolderSubtree() throws IOException {
+		for (String key : new String[]{ROOT + "docs/a.txt", ROOT + "docs/a.txt.bak", ROOT + "docs/old/c.txt", ROOT + "other/d.txt"}) {
+			download(key);
+			download(key);
+			assertNotNull(cache.find(key), key);
+		}
+
+		cache.invalidate(ROOT + "docs/a.txt");
+		assertNull(cache.find(ROOT + "docs/a.txt"));
+		assertNotNull(cache.find(ROOT + "docs/a.txt.bak"));
+
+		cache.invalidate(ROOT + "docs/");
+		assertNull(cache.find(ROOT + "docs/a.txt.bak"));
+		assertNull(cache.find(ROOT + "docs/old/c.txt"));
+		assertNotNull(cache.find(ROOT + "other/d.txt"));
+	}
+
+	@Test
+	void evictedFileKeptUntilLastRelease() throws IOException {
+		String key = ROOT + "docs/a.txt";
+		download(key);
+		download(key);
+
+		DownloadCache.Entry first = cache.find(key);
+		DownloadCache.Entry second = cache.find(key);
+		assertNotNull(first);
+
+		cache.invalidate(key);
+		assertTrue(Files.exists(first.file()));
+
+		cache.release(first);
+		assertTrue(Files.exists(first.file()));
+
+		cache.release(second);
+		assertFalse(Files.exists(first.file()));
+	}
+
+	@Test
+	void unusedFileDeletedOnEviction() throws IOException {
+		String key = ROOT + "docs/a.txt";
+		download(key);
+		download(key);
+
+		DownloadCache.Entry entry = cache.find(key);
+		cache.release(entry);
+
+		cache.invalidate(key);
+		assertFalse(Files.exists(entry.file()));
+	}
+
+	private void download(String key) throws IOException {
+		try (InputStream in = cache.fill(key, s3.downloadObject(key))) {
+			assertEquals(key, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+	}
+}
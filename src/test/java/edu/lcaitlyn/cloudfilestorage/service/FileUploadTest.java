@@ -0,0 +1,70 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.exception.ResourceAlreadyExists;
+import edu.lcaitlyn.cloudfilestorage.models.User;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Загрузка нескольких файлов одним запросом через {@link FileService}.
+ */
+class FileUploadTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	private final User user = new User("user", "password");
+
+	private FakeS3Repository s3;
+
+	private InMemoryStorage storage;
+
+	@BeforeEach
+	void setUp() {
+		user.setId(1L);
+
+		s3 = new FakeS3Repository();
+		storage = new InMemoryStorage(s3);
+		s3.createDirectory(ROOT);
+	}
+
+	@AfterEach
+	void tearDown() {
+		storage.close();
+	}
+
+	@Test
+	void uploadsAllFiles() {
+		assertEquals(2, storage.fileService.uploadFile(request(file("a.txt", "a"), file("b.txt", "b"))).size());
+
+		assertTrue(storage.storageManager.exists(ROOT + "a.txt"));
+		assertTrue(storage.storageManager.exists(ROOT + "b.txt"));
+	}
+
+	@Test
+	void duplicateNamesInOneRequestRejected() {
+		assertThrows(ResourceAlreadyExists.class,
+				() -> storage.fileService.uploadFile(request(file("a.txt", "first"), file("b.txt", "b"), file("a.txt", "second"))));
+
+		assertFalse(storage.storageManager.exists(ROOT + "a.txt"));
+		assertFalse(storage.storageManager.exists(ROOT + "b.txt"));
+	}
+
+	private ResourceRequestDTO request(MultipartFile... files) {
+		return ResourceRequestDTO.builder()
+				.user(user)
+				.path("/")
+				.files(files)
+				.build();
+	}
+
+	private static MockMultipartFile file(String name, String content) {
+		return new MockMultipartFile("files", name, "text/plain", content.getBytes());
+	}
+}
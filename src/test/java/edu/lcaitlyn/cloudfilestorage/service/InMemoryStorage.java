@@ -0,0 +1,91 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3AsyncRepository;
+import edu.lcaitlyn.cloudfilestorage.repository.S3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.trace.S3CallTracing;
+import edu.lcaitlyn.cloudfilestorage.repository.trace.TracePropagatingExecutor;
+import edu.lcaitlyn.cloudfilestorage.service.impl.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * {@link StorageManagerImpl} и {@link FileServiceImpl}, собранные вручную поверх {@link FakeS3Repository}
+ * или любого другого {@link S3Repository}, например {@code FileSystemS3Repository} во временной папке
+ * (с учётом вызовов через {@link S3CallTracing}), без каталога, кэша листингов и кэша скачиваний: каталог не готов,
+ * поэтому все чтения идут в хранилище, как сразу после старта. Сессии загрузки частями хранятся
+ * в {@link InMemoryUploadSessionStore}.
+ */
+public class InMemoryStorage implements AutoCloseable {
+
+	public final S3Repository s3;
+
+	public final StorageManager storageManager;
+
+	public final FileService fileService;
+
+	public final InMemoryUploadSessionStore uploadSessionStore = new InMemoryUploadSessionStore();
+
+	public final UploadSessions uploadSessions;
+
+	private final ExecutorService executor = new TracePropagatingExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+	public InMemoryStorage() {
+		this(new FakeS3Repository());
+	}
+
+	public InMemoryStorage(S3Repository s3) {
+		this.s3 = s3;
+
+		StorageProperties properties = new StorageProperties();
+		properties.setExecutorThreads(4);
+		properties.setReadAheadObjects(16);
+		properties.setReadAheadBudget(DataSize.ofMegabytes(64));
+		properties.setReadAheadMaxObjectSize(DataSize.ofMegabytes(4));
+		properties.setDeleteParallelism(2);
+		properties.setCopyParallelism(2);
+		properties.setUploadParallelism(2);
+		properties.setMetadataCacheMaxSize(DataSize.ofMegabytes(16));
+		properties.setMetadataCacheTtl(Duration.ofSeconds(30));
+		properties.setListingCacheEnabled(false);
+		properties.setDownloadCacheEnabled(false);
+		properties.setDownloadCacheBudget(DataSize.ofMegabytes(64));
+		properties.setDownloadCacheMaxObjectSize(DataSize.ofMegabytes(16));
+		properties.setDownloadCacheAdmitAfter(2);
+		properties.setDownloadCacheAdmissionWindow(Duration.ofHours(1));
+		properties.setUploadSessionChunkSize(DataSize.ofMegabytes(5));
+		properties.setUploadSessionTtl(Duration.ofHours(1));
+
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		S3Repository traced = S3CallTracing.trace(s3, meterRegistry);
+		BatchDeleter batchDeleter = new BatchDeleter(traced, executor, properties);
+
+		storageManager = new StorageManagerImpl(
+				traced,
+				new ReadAheadFetcher(traced, executor, properties, meterRegistry),
+				batchDeleter,
+				new CopyEngine(traced, new StaticListableBeanFactory().getBeanProvider(S3AsyncRepository.class), batchDeleter, executor, properties),
+				new DirectoryMarkers(traced),
+				new MetadataCache(properties, meterRegistry),
+				new DirectoryListingCache(null, properties),
+				mock(ResourceCatalog.class),
+				new DownloadCache(traced, properties, meterRegistry));
+
+		uploadSessions = new UploadSessions(uploadSessionStore, storageManager, properties);
+		fileService = new FileServiceImpl(storageManager, new PreflightChecks(executor), new BatchUploader(executor, properties), new TransferMetrics(meterRegistry),
+				uploadSessions);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
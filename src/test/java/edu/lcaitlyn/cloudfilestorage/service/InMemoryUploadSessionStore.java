@@ -0,0 +1,78 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.service.impl.UploadSessionStore;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link UploadSessionStore} в памяти вместо Redis. Срок хранения полей не учитывается,
+ * срок сессии можно сдвинуть в прошлое через {@link #expire(String)}.
+ */
+public class InMemoryUploadSessionStore extends UploadSessionStore {
+
+	private final Map<String, Map<String, String>> sessions = new HashMap<>();
+
+	private final Map<String, Instant> deadlines = new HashMap<>();
+
+	public InMemoryUploadSessionStore() {
+		super(null);
+	}
+
+	public synchronized void expire(String id) {
+		deadlines.computeIfPresent(id, (key, deadline) -> Instant.EPOCH);
+	}
+
+	public synchronized boolean contains(String id) {
+		return sessions.containsKey(id);
+	}
+
+	@Override
+	public synchronized void create(String id, Map<String, String> fields, Instant deadline, Duration keep) {
+		sessions.computeIfAbsent(id, key -> new HashMap<>()).putAll(fields);
+		deadlines.put(id, deadline);
+	}
+
+	@Override
+	public synchronized Map<String, String> fields(String id) {
+		return new HashMap<>(sessions.getOrDefault(id, Map.of()));
+	}
+
+	@Override
+	public synchronized Instant deadline(String id) {
+		return deadlines.get(id);
+	}
+
+	@Override
+	public synchronized boolean putPart(String id, int partNumber, String etag, Instant deadline, Duration keep) {
+		sessions.computeIfAbsent(id, key -> new HashMap<>()).put(PART_FIELD + partNumber, etag);
+		return deadlines.computeIfPresent(id, (key, previous) -> deadline) != null;
+	}
+
+	@Override
+	public synchronized boolean removeDeadline(String id) {
+		return deadlines.remove(id) != null;
+	}
+
+	@Override
+	public synchronized void putDeadline(String id, Instant deadline) {
+		deadlines.put(id, deadline);
+	}
+
+	@Override
+	public synchronized void delete(String id) {
+		sessions.remove(id);
+	}
+
+	@Override
+	public synchronized List<String> expired(Instant now, int limit) {
+		return deadlines.entrySet().stream()
+				.filter(entry -> !entry.getValue().isAfter(now))
+				.map(Map.Entry::getKey)
+				.limit(limit)
+				.toList();
+	}
+}
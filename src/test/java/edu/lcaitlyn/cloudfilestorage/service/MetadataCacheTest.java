@@ -0,0 +1,92 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.StorageDTO;
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.service.impl.MetadataCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Какие записи {@link MetadataCache} сбрасывает запись по ключу; загрузки считаются по ключам.
+ */
+class MetadataCacheTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	private final Map<String, Integer> loads = new HashMap<>();
+
+	private MetadataCache cache;
+
+	@BeforeEach
+	void setUp() {
+		StorageProperties properties = new StorageProperties();
+		properties.setMetadataCacheMaxSize(DataSize.ofMegabytes(1));
+		properties.setMetadataCacheTtl(Duration.ofMinutes(1));
+		cache = new MetadataCache(properties, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void invalidatesKeyAncestorsAndDescendantsOnly() {
+		for (String key : new String[]{ROOT, ROOT + "docs/", ROOT + "docs/a.txt", ROOT + "docs/a.txt.bak", ROOT + "docs/old/c.txt", ROOT + "other/"}) {
+			get(key);
+		}
+
+		cache.invalidate(ROOT + "docs/a.txt");
+		for (String key : new String[]{ROOT, ROOT + "docs/", ROOT + "docs/a.txt", ROOT + "docs/a.txt.bak", ROOT + "docs/old/c.txt", ROOT + "other/"}) {
+			get(key);
+		}
+
+		assertEquals(2, loads.get(ROOT));
+		assertEquals(2, loads.get(ROOT + "docs/"));
+		assertEquals(2, loads.get(ROOT + "docs/a.txt"));
+		assertEquals(1, loads.get(ROOT + "docs/a.txt.bak"));
+		assertEquals(1, loads.get(ROOT + "docs/old/c.txt"));
+		assertEquals(1, loads.get(ROOT + "other/"));
+
+		cache.invalidate(ROOT + "docs/");
+		get(ROOT + "docs/old/c.txt");
+		get(ROOT + "other/");
+		assertEquals(2, loads.get(ROOT + "docs/old/c.txt"));
+		assertEquals(1, loads.get(ROOT + "other/"));
+	}
+
+	@Test
+	void loadOverlappingInvalidationIsNotKept() {
+		cache.getMetadata(ROOT + "docs/a.txt", key -> {
+			// запись в хранилище завершилась, пока шла загрузка
+			cache.invalidate(ROOT + "docs/");
+			return dto(key);
+		});
+
+		get(ROOT + "docs/a.txt");
+		get(ROOT + "docs/a.txt");
+		assertEquals(1, loads.get(ROOT + "docs/a.txt"));
+	}
+
+	@Test
+	void directoriesInvalidatedByWritesBelow() {
+		assertEquals(false, cache.isDirectory(ROOT + "docs/", key -> false));
+
+		cache.invalidate(ROOT + "docs/new/a.txt");
+		assertEquals(true, cache.isDirectory(ROOT + "docs/", key -> true));
+	}
+
+	private void get(String key) {
+		cache.getMetadata(key, k -> {
+			loads.merge(k, 1, Integer::sum);
+			return dto(k);
+		});
+	}
+
+	private static StorageDTO dto(String key) {
+		return StorageDTO.builder().key(key).build();
+	}
+}
@@ -0,0 +1,70 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.DownloadResourceDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.controller.impl.ExceptionController;
+import edu.lcaitlyn.cloudfilestorage.exception.RangeNotSatisfiable;
+import edu.lcaitlyn.cloudfilestorage.models.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Скачивание части файла через {@link FileService} и ответ 416 на диапазон за концом файла.
+ */
+class RangeDownloadTest {
+
+	private final User user = new User("user", "password");
+
+	private InMemoryStorage storage;
+
+	@BeforeEach
+	void setUp() {
+		user.setId(1L);
+
+		storage = new InMemoryStorage();
+		storage.storageManager.createDirectory("user-1-files/");
+		byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+		storage.storageManager.save("user-1-files/range.bin", new ByteArrayInputStream(data), data.length, "application/octet-stream");
+	}
+
+	@AfterEach
+	void tearDown() {
+		storage.close();
+	}
+
+	@Test
+	void satisfiableRange() {
+		DownloadResourceDTO download = storage.fileService.downloadResource(request("bytes=2-5"));
+
+		assertEquals("bytes 2-5/10", download.getContentRange());
+		assertEquals(4L, download.getContentLength());
+	}
+
+	@Test
+	void unsatisfiableRangeReportsSize() {
+		RangeNotSatisfiable ex = assertThrows(RangeNotSatisfiable.class,
+				() -> storage.fileService.downloadResource(request("bytes=10-")));
+		assertEquals(10L, ex.getSize());
+
+		ResponseEntity<?> response = new ExceptionController().handleRangeNotSatisfiable(ex);
+		assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+		assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+	}
+
+	private ResourceRequestDTO request(String range) {
+		return ResourceRequestDTO.builder()
+				.user(user)
+				.path("/range.bin")
+				.range(range)
+				.build();
+	}
+}
@@ -0,0 +1,90 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.service.impl.ReadAheadFetcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Бюджет {@link ReadAheadFetcher} общий для всех скачиваний и возвращается при обрыве скачивания.
+ */
+class ReadAheadFetcherTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private FakeS3Repository s3;
+
+	private ReadAheadFetcher fetcher;
+
+	@BeforeEach
+	void setUp() {
+		StorageProperties properties = new StorageProperties();
+		properties.setReadAheadObjects(4);
+		properties.setReadAheadBudget(DataSize.ofBytes(10));
+		properties.setReadAheadMaxObjectSize(DataSize.ofBytes(8));
+
+		s3 = new FakeS3Repository();
+		fetcher = new ReadAheadFetcher(s3, executor, properties, meterRegistry);
+
+		for (int i = 0; i < 3; i++) {
+			byte[] data = ("obj" + i).getBytes(StandardCharsets.UTF_8);
+			s3.putObject(ROOT + "obj" + i, new ByteArrayInputStream(data), data.length, "text/plain");
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void budgetSharedBetweenDownloads() throws IOException {
+		List<String> outer = new ArrayList<>();
+		List<String> inner = new ArrayList<>();
+
+		fetcher.forEach(s3.listAllObjects(ROOT), object -> {
+			outer.add(new String(object.getData().readAllBytes(), StandardCharsets.UTF_8));
+			if (outer.size() == 1) {
+				// первое скачивание держит в буферах obj0 и obj1 (8 из 10 байт), второму остаётся потоковое чтение
+				assertEquals(2, available());
+				fetcher.forEach(s3.listAllObjects(ROOT), nested ->
+						inner.add(new String(nested.getData().readAllBytes(), StandardCharsets.UTF_8)));
+			}
+		});
+
+		assertEquals(List.of("obj0", "obj1", "obj2"), outer);
+		assertEquals(List.of("obj0", "obj1", "obj2"), inner);
+		assertEquals(10, available());
+	}
+
+	@Test
+	void budgetReturnedWhenDownloadFails() {
+		assertThrows(IOException.class, () -> fetcher.forEach(s3.listAllObjects(ROOT), object -> {
+			throw new IOException("client went away");
+		}));
+
+		assertEquals(10, available());
+	}
+
+	private int available() {
+		return (int) meterRegistry.get("storage.readahead.budget.available").gauge().value();
+	}
+}
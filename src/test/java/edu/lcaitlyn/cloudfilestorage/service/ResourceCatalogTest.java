@@ -0,0 +1,170 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.config.StorageProperties;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.StoredResourceRepository;
+import edu.lcaitlyn.cloudfilestorage.service.impl.ResourceCatalog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+
+import java.io.ByteArrayInputStream;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Перестройка {@link ResourceCatalog} по бакету и общая актуальность; строки каталога — mock репозитория,
+ * бакет — {@link FakeS3Repository}, состояние в Redis — mock.
+ */
+class ResourceCatalogTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	private final CountDownLatch listing = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final AtomicInteger passes = new AtomicInteger();
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	private FakeS3Repository s3;
+
+	private StoredResourceRepository resources;
+
+	private ValueOperations<String, String> values;
+
+	private StringRedisTemplate redis;
+
+	private ResourceCatalog catalog;
+
+	@BeforeEach
+	void setUp() {
+		s3 = new FakeS3Repository() {
+			@Override
+			public ListObjectsV2Response listObjects(String key, String continuationToken) {
+				// первый проход ждёт, пока тест не запросит перестройку ещё раз
+				if (passes.incrementAndGet() == 1) {
+					listing.countDown();
+					awaitRelease();
+				}
+				return super.listObjects(key, continuationToken);
+			}
+		};
+		s3.createDirectory(ROOT);
+		s3.putObject(ROOT + "a.txt", new ByteArrayInputStream(new byte[1]), 1, "text/plain");
+
+		StorageProperties properties = new StorageProperties();
+		properties.setCatalogEnabled(true);
+		properties.setCatalogReconcileOnStartup(true);
+
+		resources = mock(StoredResourceRepository.class);
+
+		redis = mock(StringRedisTemplate.class);
+		values = mock(ValueOperations.class);
+		when(redis.opsForValue()).thenReturn(values);
+		when(values.multiGet(any())).thenReturn(Arrays.asList(null, null));
+
+		catalog = new ResourceCatalog(resources, s3, executor, properties,
+				mock(PlatformTransactionManager.class), mock(JdbcTemplate.class), redis);
+	}
+
+	@AfterEach
+	void tearDown() {
+		release.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	void rebuildRequestedDuringRebuildRunsAnotherPass() throws Exception {
+		when(resources.findKeysNotSynced(any(), anyString(), any())).thenReturn(List.of());
+
+		Future<?> first = executor.submit(catalog::rebuild);
+		assertTrue(listing.await(5, TimeUnit.SECONDS));
+
+		// второй запрос возвращается сразу, его выполняет идущая перестройка
+		catalog.rebuild();
+		assertFalse(catalog.isReady());
+
+		release.countDown();
+		first.get(5, TimeUnit.SECONDS);
+		assertEquals(2, passes.get());
+		assertTrue(catalog.isReady());
+	}
+
+	@Test
+	void unlistedRowsRemovedOnlyIfMissingInS3() {
+		release.countDown();
+		// строки a.txt и папки записаны параллельно проходу, gone.txt и old/ остались от удалённых объектов
+		when(resources.findKeysNotSynced(any(Instant.class), eq(""), any()))
+				.thenReturn(List.of(ROOT, ROOT + "a.txt", ROOT + "gone.txt", ROOT + "old/"));
+
+		catalog.rebuild();
+
+		verify(resources).deleteByKey(ROOT + "gone.txt");
+		verify(resources).deleteByKey(ROOT + "old/");
+		verify(resources, never()).deleteByKey(ROOT);
+		verify(resources, never()).deleteByKey(ROOT + "a.txt");
+		assertTrue(catalog.isReady());
+	}
+
+	@Test
+	void failureOnAnotherInstanceStopsReads() {
+		release.countDown();
+		when(resources.findKeysNotSynced(any(), anyString(), any())).thenReturn(List.of());
+		catalog.rebuild();
+		assertTrue(catalog.isReady());
+
+		// другой экземпляр не смог обновить таблицу после этой перестройки
+		when(values.multiGet(any())).thenReturn(Arrays.asList("1", "0"));
+		assertFalse(catalog.isReady());
+	}
+
+	@Test
+	void startsReadyWithoutReconcileOnlyIfTableHasRows() {
+		StorageProperties properties = new StorageProperties();
+		properties.setCatalogEnabled(true);
+		properties.setCatalogReconcileOnStartup(false);
+		JdbcTemplate jdbc = mock(JdbcTemplate.class);
+		ExecutorService rebuilds = mock(ExecutorService.class);
+
+		ResourceCatalog filled = new ResourceCatalog(resources, s3, rebuilds, properties,
+				mock(PlatformTransactionManager.class), jdbc, redis);
+		when(jdbc.queryForObject(anyString(), eq(Boolean.class))).thenReturn(true);
+		filled.rebuildOnStartup();
+		assertTrue(filled.isReady());
+		verify(rebuilds, never()).execute(any());
+
+		ResourceCatalog empty = new ResourceCatalog(resources, s3, rebuilds, properties,
+				mock(PlatformTransactionManager.class), jdbc, redis);
+		when(jdbc.queryForObject(anyString(), eq(Boolean.class))).thenReturn(false);
+		empty.rebuildOnStartup();
+		assertFalse(empty.isReady());
+		verify(rebuilds).execute(any());
+	}
+
+	private void awaitRelease() {
+		try {
+			release.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.request.MoveResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.request.ResourceRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.models.User;
+import edu.lcaitlyn.cloudfilestorage.repository.FakeS3Repository;
+import edu.lcaitlyn.cloudfilestorage.repository.trace.S3CallTrace;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Бюджеты вызовов S3 на операции {@link FileService} без каталога и кэша листингов (худший случай:
+ * каталог ещё не построен), см. {@link InMemoryStorage}; каждая проверка сравнивает точное число вызовов по типам.
+ * Если изменение добавляет вызовы S3, тест падает — бюджет нужно поднять осознанно.
+ */
+class S3RoundTripBudgetTest {
+
+	private static final String ROOT = "user-1-files/";
+
+	private final User user = new User("user", "password");
+
+	private InMemoryStorage storage;
+
+	private FileService fileService;
+
+	@BeforeEach
+	void setUp() {
+		user.setId(1L);
+
+		FakeS3Repository s3 = new FakeS3Repository();
+		storage = new InMemoryStorage(s3);
+		fileService = storage.fileService;
+
+		s3.createDirectory(ROOT);
+		s3.createDirectory(ROOT + "docs/");
+		s3.put(ROOT + "docs/a.txt", "a");
+		s3.put(ROOT + "docs/b.txt", "bb");
+		s3.createDirectory(ROOT + "docs/old/");
+		s3.put(ROOT + "docs/old/c.txt", "ccc");
+	}
+
+	@AfterEach
+	void tearDown() {
+		storage.close();
+	}
+
+	@Test
+	void getResource() {
+		assertBudget(Map.of("HEAD", 1, "LIST", 1), () -> fileService.getResource(request("/docs/a.txt")));
+	}
+
+	@Test
+	void getDirectory() {
+		assertBudget(Map.of("LIST", 1), () -> fileService.getDirectory(request("/docs/")));
+	}
+
+	@Test
+	void createDirectory() {
+		assertBudget(Map.of("HEAD", 1, "LIST", 4, "PUT", 1), () -> fileService.createDirectory(request("/docs/new/")));
+	}
+
+	@Test
+	void uploadFilesIntoExistingDirectory() {
+		ResourceRequestDTO request = request("/docs/");
+		request.setFiles(new MultipartFile[]{file("d.txt"), file("e.txt"), file("f.txt")});
+
+		assertBudget(Map.of("LIST", 2, "PUT", 3), () -> fileService.uploadFile(request));
+	}
+
+	@Test
+	void moveFile() {
+		MoveResourceRequestDTO request = MoveResourceRequestDTO.builder()
+				.user(user)
+				.from("/docs/a.txt")
+				.to("/docs/z.txt")
+				.build();
+
+		assertBudget(Map.of("HEAD", 4, "LIST", 3, "COPY", 1, "DELETE", 1), () -> fileService.moveResource(request));
+	}
+
+	@Test
+	void deleteDirectory() {
+		assertBudget(Map.of("LIST", 2, "DELETE", 1), () -> fileService.deleteResource(request("/docs/old/")));
+	}
+
+	@Test
+	void searchByName() {
+		assertBudget(Map.of("LIST", 1), () -> {
+			ResourceRequestDTO request = request("/");
+			request.setLimit(100);
+			fileService.findResource(request, "c", false);
+		});
+	}
+
+	private void assertBudget(Map<String, Integer> budget, Runnable operation) {
+		S3CallTrace trace = S3CallTrace.begin();
+		try {
+			operation.run();
+		} finally {
+			S3CallTrace.end();
+		}
+		assertEquals(budget, trace.counts(), "S3 calls: " + trace);
+	}
+
+	private ResourceRequestDTO request(String path) {
+		return ResourceRequestDTO.builder()
+				.user(user)
+				.path(path)
+				.build();
+	}
+
+	private static MockMultipartFile file(String name) {
+		return new MockMultipartFile("files", name, "text/plain", name.getBytes());
+	}
+}
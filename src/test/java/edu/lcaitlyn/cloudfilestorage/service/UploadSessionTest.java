@@ -0,0 +1,199 @@
+package edu.lcaitlyn.cloudfilestorage.service;
+
+import edu.lcaitlyn.cloudfilestorage.DTO.request.UploadSessionRequestDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.ResourceResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.DTO.response.UploadSessionResponseDTO;
+import edu.lcaitlyn.cloudfilestorage.models.User;
+import edu.lcaitlyn.cloudfilestorage.repository.impl.FileSystemS3Repository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сессии загрузки частями через {@link FileService} поверх {@link FileSystemS3Repository}
+ * и {@link InMemoryUploadSessionStore}: фрагменты по 5MB, файл из трёх фрагментов.
+ */
+class UploadSessionTest {
+
+	private static final int CHUNK = 5 * 1024 * 1024;
+
+	private static final int SIZE = 2 * CHUNK + 100;
+
+	private final User user = new User("user", "password");
+
+	@TempDir
+	Path root;
+
+	private InMemoryStorage storage;
+
+	private FileService fileService;
+
+	private byte[] content;
+
+	@BeforeEach
+	void setUp() {
+		user.setId(1L);
+
+		storage = new InMemoryStorage(new FileSystemS3Repository(root));
+		fileService = storage.fileService;
+		storage.storageManager.createDirectory("user-1-files/");
+
+		content = new byte[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			content[i] = (byte) (i % 251);
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		storage.close();
+	}
+
+	@Test
+	void chunksInAnyOrderWithRetry() throws IOException {
+		UploadSessionResponseDTO session = create();
+		assertEquals(CHUNK, session.getChunkSize());
+		assertEquals(3, session.getChunkCount());
+
+		upload(session, 2, chunk(2));
+		byte[] garbled = chunk(0);
+		Arrays.fill(garbled, (byte) 7);
+		upload(session, 0, garbled);
+		upload(session, 1, chunk(1));
+		// повтор фрагмента заменяет его
+		upload(session, 0, chunk(0));
+		assertEquals(List.of(0, 1, 2), fileService.getUploadSession(request(session)).getReceivedChunks());
+
+		ResourceResponseDTO file = fileService.completeUploadSession(request(session));
+		assertEquals("big.bin", file.getName());
+		assertEquals(SIZE, file.getSize());
+		try (ResponseInputStream<GetObjectResponse> in = storage.s3.downloadObject("user-1-files/big.bin")) {
+			assertArrayEquals(content, in.readAllBytes());
+		}
+
+		assertStatus(HttpStatus.NOT_FOUND, () -> fileService.getUploadSession(request(session)));
+		assertFalse(storage.uploadSessionStore.contains(session.getId()));
+		assertNoStagedParts();
+	}
+
+	@Test
+	void completeWithMissingChunks() throws IOException {
+		UploadSessionResponseDTO session = create();
+		upload(session, 0, chunk(0));
+		upload(session, 2, chunk(2));
+
+		assertStatus(HttpStatus.CONFLICT, () -> fileService.completeUploadSession(request(session)));
+		assertEquals(List.of(0, 2), fileService.getUploadSession(request(session)).getReceivedChunks());
+
+		upload(session, 1, chunk(1));
+		fileService.completeUploadSession(request(session));
+		try (ResponseInputStream<GetObjectResponse> in = storage.s3.downloadObject("user-1-files/big.bin")) {
+			assertArrayEquals(content, in.readAllBytes());
+		}
+	}
+
+	@Test
+	void invalidChunks() {
+		UploadSessionResponseDTO session = create();
+
+		assertStatus(HttpStatus.BAD_REQUEST, () -> upload(session, 3, new byte[100]));
+		assertStatus(HttpStatus.BAD_REQUEST, () -> upload(session, -1, new byte[CHUNK]));
+		assertStatus(HttpStatus.BAD_REQUEST, () -> upload(session, 2, new byte[CHUNK]));
+		assertEquals(List.of(), fileService.getUploadSession(request(session)).getReceivedChunks());
+	}
+
+	@Test
+	void otherUsersSessionNotFound() {
+		UploadSessionResponseDTO session = create();
+		User other = new User("other", "password");
+		other.setId(2L);
+
+		assertStatus(HttpStatus.NOT_FOUND, () -> fileService.getUploadSession(UploadSessionRequestDTO.builder()
+				.user(other)
+				.sessionId(session.getId())
+				.build()));
+	}
+
+	@Test
+	void expiredSessionAbortedBySweeper() throws IOException {
+		UploadSessionResponseDTO session = create();
+		upload(session, 0, chunk(0));
+
+		storage.uploadSessionStore.expire(session.getId());
+		assertStatus(HttpStatus.NOT_FOUND, () -> upload(session, 1, chunk(1)));
+
+		storage.uploadSessions.abortExpired();
+		assertFalse(storage.uploadSessionStore.contains(session.getId()));
+		assertStatus(HttpStatus.NOT_FOUND, () -> fileService.completeUploadSession(request(session)));
+		assertNoStagedParts();
+	}
+
+	@Test
+	void abort() throws IOException {
+		UploadSessionResponseDTO session = create();
+		upload(session, 1, chunk(1));
+
+		fileService.abortUploadSession(request(session));
+
+		assertStatus(HttpStatus.NOT_FOUND, () -> fileService.abortUploadSession(request(session)));
+		assertFalse(storage.storageManager.exists("user-1-files/big.bin"));
+		assertNoStagedParts();
+	}
+
+	private UploadSessionResponseDTO create() {
+		return fileService.createUploadSession(UploadSessionRequestDTO.builder()
+				.user(user)
+				.path("/")
+				.name("big.bin")
+				.size((long) SIZE)
+				.contentType("application/octet-stream")
+				.build());
+	}
+
+	private void upload(UploadSessionResponseDTO session, int chunk, byte[] data) {
+		fileService.uploadChunk(UploadSessionRequestDTO.builder()
+				.user(user)
+				.sessionId(session.getId())
+				.chunk(chunk)
+				.data(new ByteArrayInputStream(data))
+				.contentLength((long) data.length)
+				.build());
+	}
+
+	private UploadSessionRequestDTO request(UploadSessionResponseDTO session) {
+		return UploadSessionRequestDTO.builder()
+				.user(user)
+				.sessionId(session.getId())
+				.build();
+	}
+
+	private byte[] chunk(int chunk) {
+		return Arrays.copyOfRange(content, chunk * CHUNK, Math.min(SIZE, (chunk + 1) * CHUNK));
+	}
+
+	private void assertNoStagedParts() throws IOException {
+		try (Stream<Path> temp = Files.list(root.resolve(".uploads"))) {
+			assertEquals(0, temp.count());
+		}
+	}
+
+	private static void assertStatus(HttpStatus status, Runnable operation) {
+		ResponseStatusException e = assertThrows(ResponseStatusException.class, operation::run);
+		assertEquals(status, e.getStatusCode());
+	}
+}